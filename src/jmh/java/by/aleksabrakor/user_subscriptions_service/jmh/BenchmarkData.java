@@ -0,0 +1,46 @@
+package by.aleksabrakor.user_subscriptions_service.jmh;
+
+import by.aleksabrakor.user_subscriptions_service.model.Subscription;
+import by.aleksabrakor.user_subscriptions_service.model.User;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Тестовые сущности для JMH-бенчмарков: набор названий и планов как у реальных подписок.
+ */
+final class BenchmarkData {
+    private static final String[] SERVICE_TITLES = {"Яндекс.Плюс", "Netflix", "Spotify", "YouTube Premium", "Кинопоиск"};
+    private static final String[] PLANS = {"Basic", "Standard", "Premium"};
+
+    private BenchmarkData() {
+    }
+
+    static User user(long id, int subscriptions) {
+        LocalDateTime now = LocalDateTime.now();
+        User user = new User(id, "Benchmark User " + id, "user" + id + "@example.com", now, now,
+                subscriptions, null);
+        List<Subscription> userSubscriptions = new ArrayList<>(subscriptions);
+        for (int i = 0; i < subscriptions; i++) {
+            userSubscriptions.add(subscription(id * subscriptions + i, user));
+        }
+        user.setSubscriptions(userSubscriptions);
+        return user;
+    }
+
+    static List<Subscription> subscriptions(int size) {
+        User user = user(1, 0);
+        List<Subscription> subscriptions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            subscriptions.add(subscription(i, user));
+        }
+        return subscriptions;
+    }
+
+    private static Subscription subscription(long id, User user) {
+        LocalDateTime now = LocalDateTime.now();
+        return new Subscription(id, SERVICE_TITLES[(int) (id % SERVICE_TITLES.length)], PLANS[(int) (id % PLANS.length)],
+                "Описание подписки " + id, now, now, user);
+    }
+}
@@ -0,0 +1,68 @@
+package by.aleksabrakor.user_subscriptions_service.jmh;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.mapper.SubscriptionMapperImpl;
+import by.aleksabrakor.user_subscriptions_service.mapper.UserMapperImpl;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson-сериализация списков UserDto (с тремя подписками у каждого) и SubscriptionDto в байты,
+ * как в ответе контроллера. ObjectMapper собирается Jackson2ObjectMapperBuilder - с настройками Spring Boot по умолчанию.
+ * Запуск: mvn -P jmh test-compile exec:exec -Djmh.includes=JsonSerializationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonSerializationBenchmark {
+    private static final int SUBSCRIPTIONS_PER_USER = 3;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    private int size;
+
+    private ObjectWriter userListWriter;
+    private ObjectWriter subscriptionListWriter;
+    private List<UserDto> users;
+    private List<SubscriptionDto> subscriptions;
+
+    @Setup
+    public void setUp() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        userListWriter = builder.build().writerFor(new TypeReference<List<UserDto>>() {
+        });
+        subscriptionListWriter = builder.build().writerFor(new TypeReference<List<SubscriptionDto>>() {
+        });
+
+        SubscriptionMapperImpl subscriptionMapper = new SubscriptionMapperImpl();
+        UserMapperImpl userMapper = new UserMapperImpl();
+        ReflectionTestUtils.setField(userMapper, "subscriptionMapper", subscriptionMapper);
+
+        users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(userMapper.entityToUserDto(BenchmarkData.user(i, SUBSCRIPTIONS_PER_USER)));
+        }
+        subscriptions = subscriptionMapper.toDtoList(BenchmarkData.subscriptions(size));
+    }
+
+    @Benchmark
+    public byte[] serializeUsers() throws JsonProcessingException {
+        return userListWriter.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public byte[] serializeSubscriptions() throws JsonProcessingException {
+        return subscriptionListWriter.writeValueAsBytes(subscriptions);
+    }
+}
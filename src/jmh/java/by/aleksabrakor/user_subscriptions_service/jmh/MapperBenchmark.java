@@ -0,0 +1,56 @@
+package by.aleksabrakor.user_subscriptions_service.jmh;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.mapper.SubscriptionMapper;
+import by.aleksabrakor.user_subscriptions_service.mapper.SubscriptionMapperImpl;
+import by.aleksabrakor.user_subscriptions_service.mapper.UserMapperImpl;
+import by.aleksabrakor.user_subscriptions_service.model.Subscription;
+import by.aleksabrakor.user_subscriptions_service.model.User;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MapStruct-маппинг: список подписок в DTO и юзер с вложенными подписками.
+ * Запуск: mvn -P jmh test-compile exec:exec -Djmh.includes=MapperBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    private int size;
+
+    private SubscriptionMapper subscriptionMapper;
+    private UserMapperImpl userMapper;
+    private List<Subscription> subscriptions;
+    private User user;
+
+    @Setup
+    public void setUp() {
+        subscriptionMapper = new SubscriptionMapperImpl();
+        userMapper = new UserMapperImpl();
+        // componentModel = "spring": зависимость UserMapper от SubscriptionMapper внедряется в поле
+        ReflectionTestUtils.setField(userMapper, "subscriptionMapper", subscriptionMapper);
+
+        subscriptions = BenchmarkData.subscriptions(size);
+        user = BenchmarkData.user(1, size);
+    }
+
+    @Benchmark
+    public List<SubscriptionDto> subscriptionsToDtoList() {
+        return subscriptionMapper.toDtoList(subscriptions);
+    }
+
+    @Benchmark
+    public UserDto userWithSubscriptionsToDto() {
+        return userMapper.entityToUserDto(user);
+    }
+}
@@ -0,0 +1,106 @@
+package by.aleksabrakor.user_subscriptions_service.jmh;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.mapper.SubscriptionMapperImpl;
+import by.aleksabrakor.user_subscriptions_service.mapper.UserMapperImpl;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Форматы ответа списочных эндпоинтов: JSON, CBOR и Smile, без сжатия и с gzip (как server.compression в Tomcat).
+ * Время - CPU на сериализацию (и сжатие) одного ответа; размер ответа в байтах печатается в конце каждого прогона.
+ * Запуск: mvn -P jmh test-compile exec:exec -Djmh.includes=WireFormatBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+    private static final int SUBSCRIPTIONS_PER_USER = 3;
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    @Param({"none", "gzip"})
+    private String compression;
+
+    @Param({"50", "1000"})
+    private int size;
+
+    private ObjectWriter userListWriter;
+    private ObjectWriter subscriptionListWriter;
+    private List<UserDto> users;
+    private List<SubscriptionDto> subscriptions;
+
+    @Setup
+    public void setUp() {
+        // как BinaryFormatsConfig: тот же билдер Spring Boot, меняется только фабрика
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json().factory(factory(format));
+        userListWriter = builder.build().writerFor(new TypeReference<List<UserDto>>() {
+        });
+        subscriptionListWriter = builder.build().writerFor(new TypeReference<List<SubscriptionDto>>() {
+        });
+
+        SubscriptionMapperImpl subscriptionMapper = new SubscriptionMapperImpl();
+        UserMapperImpl userMapper = new UserMapperImpl();
+        ReflectionTestUtils.setField(userMapper, "subscriptionMapper", subscriptionMapper);
+
+        users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(userMapper.entityToUserDto(BenchmarkData.user(i, SUBSCRIPTIONS_PER_USER)));
+        }
+        subscriptions = subscriptionMapper.toDtoList(BenchmarkData.subscriptions(size));
+    }
+
+    @TearDown
+    public void printWireSize() throws IOException {
+        System.out.printf("%n%-6s %-5s size=%-5d users: %d bytes, subscriptions: %d bytes%n", format, compression, size,
+                serializeUsers().length, serializeSubscriptions().length);
+    }
+
+    @Benchmark
+    public byte[] serializeUsers() throws IOException {
+        return encode(userListWriter, users);
+    }
+
+    @Benchmark
+    public byte[] serializeSubscriptions() throws IOException {
+        return encode(subscriptionListWriter, subscriptions);
+    }
+
+    private byte[] encode(ObjectWriter writer, Object value) throws IOException {
+        if (!"gzip".equals(compression)) {
+            return writer.writeValueAsBytes(value);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            writer.writeValue(gzip, value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static JsonFactory factory(String format) {
+        return switch (format) {
+            case "json" -> new JsonFactory();
+            case "cbor" -> new CBORFactory();
+            case "smile" -> new SmileFactory();
+            default -> throw new IllegalArgumentException("Неизвестный формат: " + format);
+        };
+    }
+}
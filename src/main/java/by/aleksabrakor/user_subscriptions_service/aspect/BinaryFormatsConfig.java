@@ -0,0 +1,30 @@
+package by.aleksabrakor.user_subscriptions_service.aspect;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Бинарные форматы тел запросов и ответов по заголовкам Accept / Content-Type: CBOR (application/cbor)
+ * и Smile (application/x-jackson-smile). Те же DTO и аннотации Jackson, что и для JSON:
+ * ObjectMapper-ы собираются из Jackson2ObjectMapperBuilder Spring Boot (spring.jackson.*), меняется только фабрика.
+ * Эндпоинты со списками перечисляют форматы в produces; JSON остается форматом по умолчанию.
+ */
+@Configuration
+public class BinaryFormatsConfig {
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
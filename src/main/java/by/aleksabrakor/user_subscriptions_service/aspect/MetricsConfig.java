@@ -0,0 +1,21 @@
+package by.aleksabrakor.user_subscriptions_service.aspect;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Таймеры методов сервисов: классы с @Timed("app.service") измеряются TimedAspect с тегами class, method, exception.
+ * Запросы репозиториев измеряет Spring Data (spring.data.repository.invocations с тегами repository, method),
+ * пул соединений - Hikari (hikaricp.connections.*), Hibernate - hibernate.* при generate_statistics.
+ * Гистограммы для перцентилей включаются в management.metrics.distribution.percentiles-histogram.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
@@ -1,17 +1,33 @@
 package by.aleksabrakor.user_subscriptions_service.controller;
 
+import by.aleksabrakor.user_subscriptions_service.dto.PopularSubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionChangeEvent;
 import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionPageDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionStatsDto;
 import by.aleksabrakor.user_subscriptions_service.dto.UpdateSubscriptionRequest;
 import by.aleksabrakor.user_subscriptions_service.exception.ErrorResponse;
+import by.aleksabrakor.user_subscriptions_service.model.StatsGranularity;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
+import static by.aleksabrakor.user_subscriptions_service.aspect.BinaryFormatsConfig.APPLICATION_SMILE_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_CBOR_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
 @RequestMapping("/subscriptions")
 @Tag(name = "Subscription Controller", description = "API c CRUD операциями для subscriptions")
 public interface SubscriptionController {
@@ -31,17 +47,53 @@ public interface SubscriptionController {
                                           @RequestBody SubscriptionDto subscriptionDto);
 
 
-    @Operation(summary = "Получение списка всех существующих подписок на сервисы")
+    @Operation(summary = "Пакетное добавление подписок на сервисы пользователю по его id (до 1000 за запрос)")
     @ApiResponse(responseCode = "200", content =
     @Content(schema = @Schema(implementation = SubscriptionDto.class),
             mediaType = "application/json"))
-    @ApiResponse(responseCode = "400", content = @Content)
+    @ApiResponse(responseCode = "400", content =
+    @Content(schema = @Schema(implementation = ErrorResponse.class),
+            mediaType = "application/json"))
     @ApiResponse(responseCode = "404", content =
     @Content(schema = @Schema(implementation = ErrorResponse.class),
             mediaType = "application/json"))
     @ApiResponse(responseCode = "500", content = @Content)
-    @GetMapping()
-    List<SubscriptionDto> findAllSubscriptions();
+    @PostMapping(value = "/users/{user_id}/batch", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    List<SubscriptionDto> addSubscriptionsToUser(@PathVariable("user_id") Long userId,
+                                                 @RequestBody List<SubscriptionDto> subscriptionDtos);
+
+
+    @Operation(summary = "Получение страницы существующих подписок на сервисы (keyset-пагинация по курсору)")
+    @ApiResponse(responseCode = "200", content =
+    @Content(schema = @Schema(implementation = SubscriptionPageDto.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "400", content =
+    @Content(schema = @Schema(implementation = ErrorResponse.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "500", content = @Content)
+    @GetMapping(produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    SubscriptionPageDto findAllSubscriptions(@RequestParam(value = "after", required = false) String after,
+                                             @RequestParam(value = "limit", defaultValue = "50") int limit);
+
+    @Operation(summary = "Потоковая выгрузка всех подписок в формате NDJSON (одна подписка на строку)")
+    @ApiResponse(responseCode = "200", content =
+    @Content(schema = @Schema(implementation = SubscriptionDto.class),
+            mediaType = "application/x-ndjson"))
+    @ApiResponse(responseCode = "500", content = @Content)
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    ResponseEntity<StreamingResponseBody> exportSubscriptions();
+
+    @Operation(summary = "SSE-поток изменений подписок (события created/updated/deleted), с фильтром по user_id и serviceTitle; "
+                         + "возобновление по заголовку Last-Event-ID")
+    @ApiResponse(responseCode = "200", content =
+    @Content(schema = @Schema(implementation = SubscriptionChangeEvent.class),
+            mediaType = "text/event-stream"))
+    @ApiResponse(responseCode = "400", content = @Content)
+    @ApiResponse(responseCode = "500", content = @Content)
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter streamSubscriptionChanges(@RequestParam(value = "userId", required = false) Long userId,
+                                         @RequestParam(value = "serviceTitle", required = false) String serviceTitle,
+                                         @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId);
 
     @Operation(summary = "Получение подписки на сервис по subscription_id")
     @ApiResponse(responseCode = "200", content =
@@ -55,17 +107,19 @@ public interface SubscriptionController {
     @GetMapping("/{subscription_id}")
     SubscriptionDto getSubscriptionById(@PathVariable("subscription_id") Long subscriptionId);
 
-    @Operation(summary = "Получение списка подписок на сервисы у пользователя по его id")
+    @Operation(summary = "Получение списка подписок на сервисы у пользователя по его id (слабый ETag, If-None-Match -> 304)")
     @ApiResponse(responseCode = "200", content =
     @Content(schema = @Schema(implementation = SubscriptionDto.class),
             mediaType = "application/json"))
+    @ApiResponse(responseCode = "304", content = @Content)
     @ApiResponse(responseCode = "400", content = @Content)
     @ApiResponse(responseCode = "404", content =
     @Content(schema = @Schema(implementation = ErrorResponse.class),
             mediaType = "application/json"))
     @ApiResponse(responseCode = "500", content = @Content)
-    @GetMapping("/users/{user_id}")
-     List<SubscriptionDto> getUserSubscriptions(@PathVariable ("user_id") Long id) ;
+    @GetMapping(value = "/users/{user_id}", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    ResponseEntity<List<SubscriptionDto>> getUserSubscriptions(@PathVariable ("user_id") Long id,
+                                                               WebRequest webRequest);
 
 
     @Operation(summary = "Обновление подписки на сервис по subscription_Id")
@@ -82,6 +136,20 @@ public interface SubscriptionController {
                                        @PathVariable("subscription_id") Long subscriptionId);
 
 
+    @Operation(summary = "Частичное обновление подписки на сервис по subscription_Id: один UPDATE только переданных полей")
+    @ApiResponse(responseCode = "200", content =
+    @Content(schema = @Schema(implementation = SubscriptionDto.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "400", content = @Content)
+    @ApiResponse(responseCode = "404", content =
+    @Content(schema = @Schema(implementation = ErrorResponse.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "500", content = @Content)
+    @PatchMapping("/{subscription_id}")
+    SubscriptionDto patchSubscription(@RequestBody UpdateSubscriptionRequest subscriptionDto,
+                                      @PathVariable("subscription_id") Long subscriptionId);
+
+
     @Operation(summary = "Удаление подписки на сервис по id у пользователя c ID")
     @ApiResponse(responseCode = "200", content = @Content)
     @ApiResponse(responseCode = "400", content = @Content)
@@ -93,15 +161,72 @@ public interface SubscriptionController {
     void deleteSubscriptionFromUser(@PathVariable ("subscription_id") Long subscriptionId, @PathVariable ("user_id") Long userId);
 
 
-    @Operation(summary = "Получение ТОП-3 популярных подписок на сервисы")
+    @Operation(summary = "Получение ТОП-N популярных подписок на сервисы (по умолчанию ТОП-3)")
+    @ApiResponse(responseCode = "200", content =
+    @Content(schema = @Schema(implementation = PopularSubscriptionDto.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "400", content =
+    @Content(schema = @Schema(implementation = ErrorResponse.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "500", content = @Content)
+    @GetMapping(value = "/top", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    List<PopularSubscriptionDto> getTopPopularSubscriptions(@RequestParam(value = "limit", defaultValue = "3") int limit);
+
+
+    @Operation(summary = "Поиск подписок по части названия сервиса без учета регистра (не меньше 3 символов)")
     @ApiResponse(responseCode = "200", content =
     @Content(schema = @Schema(implementation = SubscriptionDto.class),
             mediaType = "application/json"))
-    @ApiResponse(responseCode = "400", content = @Content)
-    @ApiResponse(responseCode = "404", content =
+    @ApiResponse(responseCode = "400", content =
+    @Content(schema = @Schema(implementation = ErrorResponse.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "500", content = @Content)
+    @GetMapping(value = "/search", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    List<SubscriptionDto> searchSubscriptions(@RequestParam("q") String q,
+                                              @RequestParam(value = "limit", defaultValue = "20") int limit);
+
+
+    @Operation(summary = "Подсказки названий сервисов по префиксу без учета регистра (по умолчанию 10)")
+    @ApiResponse(responseCode = "200", content =
+    @Content(schema = @Schema(type = "string"),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "400", content =
+    @Content(schema = @Schema(implementation = ErrorResponse.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "500", content = @Content)
+    @GetMapping(value = "/titles/suggest", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    List<String> suggestServiceTitles(@RequestParam("prefix") String prefix,
+                                      @RequestParam(value = "limit", defaultValue = "10") int limit);
+
+
+    @Operation(summary = "Количество новых подписок по часам или суткам (UTC) в диапазоне [from, to), с фильтром по сервису и плану")
+    @ApiResponse(responseCode = "200", content =
+    @Content(schema = @Schema(implementation = SubscriptionStatsDto.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "400", content =
+    @Content(schema = @Schema(implementation = ErrorResponse.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "500", content = @Content)
+    @GetMapping(value = "/stats", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    List<SubscriptionStatsDto> getSubscriptionStats(
+            @RequestParam(value = "granularity", defaultValue = "DAY") StatsGranularity granularity,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "serviceTitle", required = false) String serviceTitle,
+            @RequestParam(value = "plan", required = false) String plan);
+
+
+    @Operation(summary = "Количество новых подписок на каждый сервис и план за диапазон [from, to) (UTC)")
+    @ApiResponse(responseCode = "200", content =
+    @Content(schema = @Schema(implementation = SubscriptionStatsDto.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "400", content =
     @Content(schema = @Schema(implementation = ErrorResponse.class),
             mediaType = "application/json"))
     @ApiResponse(responseCode = "500", content = @Content)
-    @GetMapping("/top")
-    List<Object[]> getTop3PopularSubscriptions();
+    @GetMapping(value = "/stats/totals", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    List<SubscriptionStatsDto> getSubscriptionStatsTotals(
+            @RequestParam(value = "granularity", defaultValue = "DAY") StatsGranularity granularity,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to);
 }
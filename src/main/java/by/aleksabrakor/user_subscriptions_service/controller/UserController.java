@@ -2,16 +2,25 @@ package by.aleksabrakor.user_subscriptions_service.controller;
 
 import by.aleksabrakor.user_subscriptions_service.dto.UpdateUserRequest;
 import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserImportResultDto;
 import by.aleksabrakor.user_subscriptions_service.exception.ErrorResponse;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.InputStream;
 import java.util.List;
 
+import static by.aleksabrakor.user_subscriptions_service.aspect.BinaryFormatsConfig.APPLICATION_SMILE_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_CBOR_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
 
 @RequestMapping("/users")
 @Tag(name = "Users Controller", description = "API c CRUD операциями для users")
@@ -29,7 +38,23 @@ public interface UserController {
     UserDto createUser(@RequestBody UserDto userDto);
 
 
-    @Operation(summary = "Получение списка всех пользователя")
+    @Operation(summary = "Массовый импорт пользователей из CSV (заголовок name,email) или NDJSON ({\"name\":..,\"email\":..} на строку)",
+            requestBody = @io.swagger.v3.oas.annotations.parameters.RequestBody(content = {
+                    @Content(mediaType = "text/csv"),
+                    @Content(mediaType = "application/x-ndjson")}))
+    @ApiResponse(responseCode = "200", content =
+    @Content(schema = @Schema(implementation = UserImportResultDto.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "400", content =
+    @Content(schema = @Schema(implementation = ErrorResponse.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "500", content = @Content)
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    UserImportResultDto importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                    InputStream body);
+
+
+    @Operation(summary = "Получение списка всех пользователя (include=subscriptions - вместе с подписками)")
     @ApiResponse(responseCode = "200", content =
     @Content(schema = @Schema(implementation = UserDto.class),
             mediaType = "application/json"))
@@ -38,14 +63,15 @@ public interface UserController {
     @Content(schema = @Schema(implementation = ErrorResponse.class),
             mediaType = "application/json"))
     @ApiResponse(responseCode = "500", content = @Content)
-    @GetMapping()
-    List<UserDto> findAllUsers();
+    @GetMapping(produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    List<UserDto> findAllUsers(@RequestParam(value = "include", required = false) List<String> include);
 
 
-    @Operation(summary = "Получение пользователя по ID")
+    @Operation(summary = "Получение пользователя по ID (include=subscriptions - вместе с подписками; слабый ETag, If-None-Match -> 304)")
     @ApiResponse(responseCode = "200", content =
     @Content(schema = @Schema(implementation = UserDto.class),
             mediaType = "application/json"))
+    @ApiResponse(responseCode = "304", content = @Content)
     @ApiResponse(responseCode = "400", content =
     @Content(schema = @Schema(implementation = UserDto.class),
             mediaType = "application/json"))
@@ -54,7 +80,9 @@ public interface UserController {
             mediaType = "application/json"))
     @ApiResponse(responseCode = "500", content = @Content)
     @GetMapping("/{id}")
-    UserDto getUser(@PathVariable("id") Long id);
+    ResponseEntity<UserDto> getUser(@PathVariable("id") Long id,
+                                    @RequestParam(value = "include", required = false) List<String> include,
+                                    WebRequest webRequest);
 
 
     @Operation(summary = "Обновление пользователя по ID")
@@ -73,6 +101,22 @@ public interface UserController {
                        @PathVariable("id") Long id);
 
 
+    @Operation(summary = "Частичное обновление пользователя по ID: один UPDATE только переданных полей")
+    @ApiResponse(responseCode = "200", content =
+    @Content(schema = @Schema(implementation = UserDto.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "400", content =
+    @Content(schema = @Schema(implementation = ErrorResponse.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "404", content =
+    @Content(schema = @Schema(implementation = ErrorResponse.class),
+            mediaType = "application/json"))
+    @ApiResponse(responseCode = "500", content = @Content)
+    @PatchMapping("/{id}")
+    UserDto patchUser(@RequestBody UpdateUserRequest userDto,
+                      @PathVariable("id") Long id);
+
+
     @Operation(summary = "Удаление пользователя по ID")
     @ApiResponse(responseCode = "200", content = @Content)
     @ApiResponse(responseCode = "400", content = @Content)
@@ -0,0 +1,43 @@
+package by.aleksabrakor.user_subscriptions_service.controller.impl;
+
+import by.aleksabrakor.user_subscriptions_service.service.ETagged;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.function.Supplier;
+
+/**
+ * Условный GET по слабым ETag-ам. Слабый ETag общий для JSON и бинарных форматов (представления эквивалентны),
+ * поэтому ответ помечается Vary: Accept для кешей.
+ */
+final class ETagResponses {
+
+    private ETagResponses() {
+    }
+
+    /**
+     * Без If-None-Match тело загружается сразу, ETag считается по загруженным данным (без лишнего запроса).
+     * С If-None-Match сначала проверяется текущий ETag из версий: при совпадении - 304 без загрузки и сериализации тела.
+     * Иначе ответ получает ETag, прочитанный до тела, - он не новее тела, поэтому 304 по нему не скроет изменений.
+     *
+     * @return null - ответ 304 уже сформирован
+     */
+    static <T> ResponseEntity<T> conditionalGet(WebRequest webRequest, Supplier<String> currentETag,
+                                                Supplier<ETagged<T>> loader) {
+        if (webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) == null) {
+            ETagged<T> loaded = loader.get();
+            return ResponseEntity.ok()
+                    .eTag(loaded.getETag())
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .body(loaded.getBody());
+        }
+        // checkNotModified сам выставляет заголовок ETag и статус 304
+        if (webRequest.checkNotModified(currentETag.get())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(loader.get().getBody());
+    }
+}
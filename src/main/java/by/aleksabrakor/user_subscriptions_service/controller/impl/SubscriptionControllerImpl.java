@@ -1,23 +1,43 @@
 package by.aleksabrakor.user_subscriptions_service.controller.impl;
 
 import by.aleksabrakor.user_subscriptions_service.controller.SubscriptionController;
+import by.aleksabrakor.user_subscriptions_service.dto.PopularSubscriptionDto;
 import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionPageDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionStatsDto;
 import by.aleksabrakor.user_subscriptions_service.dto.UpdateSubscriptionRequest;
+import by.aleksabrakor.user_subscriptions_service.model.StatsGranularity;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionChangeBroadcaster;
 import by.aleksabrakor.user_subscriptions_service.service.SubscriptionService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
+import static by.aleksabrakor.user_subscriptions_service.aspect.BinaryFormatsConfig.APPLICATION_SMILE_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_CBOR_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
 
 @RestController
+// в профиле reactive те же пути обслуживают реактивные контроллеры (сборка -P reactive)
+@Profile("!reactive")
 @RequestMapping("/subscriptions")
 @Slf4j
 @RequiredArgsConstructor
 public class SubscriptionControllerImpl implements SubscriptionController {
     private final SubscriptionService subscriptionService;
+    private final SubscriptionChangeBroadcaster subscriptionChangeBroadcaster;
 
     @PostMapping("/users/{user_id}")
     public SubscriptionDto addSubscriptionToUser(@PathVariable ("user_id") Long userId,
@@ -27,11 +47,41 @@ public class SubscriptionControllerImpl implements SubscriptionController {
         return subscriptionService.addSubscriptionToUser(subscriptionDto, userId);
     }
 
-    @GetMapping()
-    public List<SubscriptionDto> findAllSubscriptions() {
-        log.info("GET /subscriptions — получение списка всех существующих подписок на сервисы");
+    @PostMapping(value = "/users/{user_id}/batch", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public List<SubscriptionDto> addSubscriptionsToUser(@PathVariable("user_id") Long userId,
+                                                        @RequestBody List<@Valid SubscriptionDto> subscriptionDtos) {
+        log.info("POST /subscriptions/users/{userId}/batch — пакетное добавление {} подписок пользователю по id",
+                subscriptionDtos.size());
+
+        return subscriptionService.addSubscriptionsToUser(subscriptionDtos, userId);
+    }
+
+    @GetMapping(produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public SubscriptionPageDto findAllSubscriptions(@RequestParam(value = "after", required = false) String after,
+                                                    @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        log.info("GET /subscriptions — получение страницы существующих подписок на сервисы");
+
+        return subscriptionService.findAllSubscriptions(after, limit);
+    }
+
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportSubscriptions() {
+        log.info("GET /subscriptions/export — потоковая выгрузка всех подписок в NDJSON");
 
-        return subscriptionService.findAllSubscriptions();
+        StreamingResponseBody body = subscriptionService::exportSubscriptions;
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamSubscriptionChanges(@RequestParam(value = "userId", required = false) Long userId,
+                                                @RequestParam(value = "serviceTitle", required = false) String serviceTitle,
+                                                @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        log.info("GET /subscriptions/stream — SSE-поток изменений подписок (userId = {}, serviceTitle = {}, Last-Event-ID = {})",
+                userId, serviceTitle, lastEventId);
+
+        return subscriptionChangeBroadcaster.subscribe(userId, serviceTitle, lastEventId);
     }
 
     @GetMapping("/{subscription_id}")
@@ -42,11 +92,14 @@ public class SubscriptionControllerImpl implements SubscriptionController {
     }
 
 
-    @GetMapping("/users/{user_id}")
-    public List<SubscriptionDto> getUserSubscriptions(@PathVariable ("user_id") Long userId) {
+    @GetMapping(value = "/users/{user_id}", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public ResponseEntity<List<SubscriptionDto>> getUserSubscriptions(@PathVariable ("user_id") Long userId,
+                                                                      WebRequest webRequest) {
         log.info("GET /subscriptions/users/{id} — получение списка всех  подписок на сервисы для пользователя по его id");
 
-        return subscriptionService.getUserSubscriptions(userId);
+        return ETagResponses.conditionalGet(webRequest,
+                () -> subscriptionService.getUserSubscriptionsETag(userId),
+                () -> subscriptionService.getUserSubscriptions(userId));
     }
 
     @PutMapping("/{subscription_id}")
@@ -57,6 +110,14 @@ public class SubscriptionControllerImpl implements SubscriptionController {
         return subscriptionService.updateSubscription(subscriptionDto, subscriptionId);
     }
 
+    @PatchMapping("/{subscription_id}")
+    public SubscriptionDto patchSubscription(@RequestBody @Valid UpdateSubscriptionRequest subscriptionDto,
+                                             @PathVariable("subscription_id") Long subscriptionId) {
+        log.info("PATCH /subscriptions/{subscription_id} — частичное обновление подписки на сервис");
+
+        return subscriptionService.patchSubscription(subscriptionDto, subscriptionId);
+    }
+
     @DeleteMapping("/{subscription_id}/users/{user_id}")
     public void deleteSubscriptionFromUser(@PathVariable ("subscription_id") Long subscriptionId,
                                            @PathVariable ("user_id") Long userId) {
@@ -65,10 +126,48 @@ public class SubscriptionControllerImpl implements SubscriptionController {
         subscriptionService.deleteSubscriptionFromUser(subscriptionId, userId);
     }
 
-    @GetMapping("/top")
-    public List<Object[]> getTop3PopularSubscriptions() {
-        log.info("GET /subscriptions/top — получение ТОП-3 популярных подписок");
+    @GetMapping(value = "/top", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public List<PopularSubscriptionDto> getTopPopularSubscriptions(@RequestParam(value = "limit", defaultValue = "3") int limit) {
+        log.info("GET /subscriptions/top — получение ТОП-{} популярных подписок", limit);
+
+        return subscriptionService.getTopPopularSubscriptions(limit);
+    }
+
+    @GetMapping(value = "/search", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public List<SubscriptionDto> searchSubscriptions(@RequestParam("q") String q,
+                                                     @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        log.info("GET /subscriptions/search — поиск подписок по части названия сервиса '{}'", q);
+
+        return subscriptionService.searchSubscriptions(q, limit);
+    }
+
+    @GetMapping(value = "/titles/suggest", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public List<String> suggestServiceTitles(@RequestParam("prefix") String prefix,
+                                             @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        log.info("GET /subscriptions/titles/suggest — подсказки названий сервисов по префиксу '{}'", prefix);
+
+        return subscriptionService.suggestServiceTitles(prefix, limit);
+    }
+
+    @GetMapping(value = "/stats", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public List<SubscriptionStatsDto> getSubscriptionStats(
+            @RequestParam(value = "granularity", defaultValue = "DAY") StatsGranularity granularity,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "serviceTitle", required = false) String serviceTitle,
+            @RequestParam(value = "plan", required = false) String plan) {
+        log.info("GET /subscriptions/stats — количество новых подписок по {} с {} по {}", granularity, from, to);
+
+        return subscriptionService.getSubscriptionStats(granularity, from, to, serviceTitle, plan);
+    }
+
+    @GetMapping(value = "/stats/totals", produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public List<SubscriptionStatsDto> getSubscriptionStatsTotals(
+            @RequestParam(value = "granularity", defaultValue = "DAY") StatsGranularity granularity,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        log.info("GET /subscriptions/stats/totals — количество новых подписок по сервисам с {} по {}", from, to);
 
-        return subscriptionService.getTop3PopularSubscriptions();
+        return subscriptionService.getSubscriptionStatsTotals(granularity, from, to);
     }
 }
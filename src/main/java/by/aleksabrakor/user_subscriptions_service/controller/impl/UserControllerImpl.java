@@ -3,21 +3,38 @@ package by.aleksabrakor.user_subscriptions_service.controller.impl;
 import by.aleksabrakor.user_subscriptions_service.controller.UserController;
 import by.aleksabrakor.user_subscriptions_service.dto.UpdateUserRequest;
 import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserImportResultDto;
+import by.aleksabrakor.user_subscriptions_service.service.UserImportService;
 import by.aleksabrakor.user_subscriptions_service.service.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.InputStream;
 import java.util.List;
 
+import static by.aleksabrakor.user_subscriptions_service.aspect.BinaryFormatsConfig.APPLICATION_SMILE_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_CBOR_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
 
 @RestController
+// в профиле reactive те же пути обслуживают реактивные контроллеры (сборка -P reactive)
+@Profile("!reactive")
 @RequestMapping("/users")
 @Slf4j
 @RequiredArgsConstructor
 public class UserControllerImpl implements UserController {
+    private static final String INCLUDE_SUBSCRIPTIONS = "subscriptions";
+
     private final UserService userService;
+    private final UserImportService userImportService;
 
 
     @PostMapping
@@ -27,18 +44,31 @@ public class UserControllerImpl implements UserController {
         return userService.saveUser(userDto);
     }
 
-    @GetMapping()
-    public List<UserDto> findAllUsers() {
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public UserImportResultDto importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                           InputStream body) {
+        log.info("POST /users/import — массовый импорт юзеров ({})", contentType);
+
+        return userImportService.importUsers(body, MediaType.parseMediaType(contentType));
+    }
+
+    @GetMapping(produces = {APPLICATION_JSON_VALUE, APPLICATION_CBOR_VALUE, APPLICATION_SMILE_VALUE})
+    public List<UserDto> findAllUsers(@RequestParam(value = "include", required = false) List<String> include) {
         log.info("GET /tasks — получение списка всех юзеров.");
 
-        return userService.findAllUsers();
+        return userService.findAllUsers(includesSubscriptions(include));
     }
 
     @GetMapping("/{user_id}")
-    public UserDto getUser(@PathVariable("user_id") Long userId) {
+    public ResponseEntity<UserDto> getUser(@PathVariable("user_id") Long userId,
+                                           @RequestParam(value = "include", required = false) List<String> include,
+                                           WebRequest webRequest) {
         log.info("GET /users/{user_id} — получение юзера по ID.");
 
-        return userService.findUserById(userId);
+        boolean includeSubscriptions = includesSubscriptions(include);
+        return ETagResponses.conditionalGet(webRequest,
+                () -> userService.getUserETag(userId, includeSubscriptions),
+                () -> userService.findVersionedUserById(userId, includeSubscriptions));
     }
 
     @PutMapping("/{user_id}")
@@ -49,6 +79,14 @@ public class UserControllerImpl implements UserController {
         return userService.updateUser(userDto, userId);
     }
 
+    @PatchMapping("/{user_id}")
+    public UserDto patchUser(@RequestBody @Valid UpdateUserRequest userDto,
+                             @PathVariable("user_id") Long userId) {
+        log.info("PATCH /Users/{user_id} — частичное обновление юзера.");
+
+        return userService.patchUser(userDto, userId);
+    }
+
 
     @DeleteMapping("/{user_id}")
     public void deleteUser(@PathVariable("user_id") Long userId) {
@@ -56,4 +94,16 @@ public class UserControllerImpl implements UserController {
 
         userService.deleteUser(userId);
     }
+
+    private static boolean includesSubscriptions(List<String> include) {
+        if (include == null) {
+            return false;
+        }
+        for (String value : include) {
+            if (!INCLUDE_SUBSCRIPTIONS.equals(value)) {
+                throw new IllegalArgumentException("Неизвестное значение include: " + value);
+            }
+        }
+        return !include.isEmpty();
+    }
 }
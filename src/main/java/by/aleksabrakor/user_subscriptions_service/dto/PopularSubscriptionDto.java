@@ -0,0 +1,19 @@
+package by.aleksabrakor.user_subscriptions_service.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Popular subscription DTO")
+public class PopularSubscriptionDto {
+
+    @Schema(description = "service title", example = "YouTube")
+    private String serviceTitle;
+
+    @Schema(description = "number of subscriptions to the service", example = "42")
+    private Long count;
+}
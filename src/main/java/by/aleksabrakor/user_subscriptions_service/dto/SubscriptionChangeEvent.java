@@ -0,0 +1,42 @@
+package by.aleksabrakor.user_subscriptions_service.dto;
+
+import by.aleksabrakor.user_subscriptions_service.model.SubscriptionEventType;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+@Schema(description = "Subscription change event")
+public class SubscriptionChangeEvent {
+
+    @Schema(description = "event id (outbox id)", example = "1")
+    private Long id;
+
+    @Schema(description = "event type", example = "CREATED")
+    private SubscriptionEventType type;
+
+    @Schema(description = "Subscription id", example = "1")
+    private Long subscriptionId;
+
+    @Schema(description = "user id", example = "1")
+    private Long userId;
+
+    @Schema(description = "service title", example = "YouTube")
+    private String serviceTitle;
+
+    @Schema(description = "plan", example = "Premium")
+    private String plan;
+
+    @Schema(description = "description")
+    private String description;
+
+    @Schema(description = "time of the change")
+    private LocalDateTime occurredAt;
+}
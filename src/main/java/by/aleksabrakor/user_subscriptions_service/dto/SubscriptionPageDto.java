@@ -0,0 +1,21 @@
+package by.aleksabrakor.user_subscriptions_service.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Subscription page DTO")
+public class SubscriptionPageDto {
+
+    @Schema(description = "list subscriptions")
+    private List<SubscriptionDto> items;
+
+    @Schema(description = "cursor for the next page, null if there are no more pages", example = "MTAw")
+    private String nextCursor;
+}
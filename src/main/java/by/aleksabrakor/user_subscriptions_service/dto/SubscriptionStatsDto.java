@@ -0,0 +1,29 @@
+package by.aleksabrakor.user_subscriptions_service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "New subscriptions count per bucket, service and plan")
+public class SubscriptionStatsDto {
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Schema(description = "bucket start (UTC); absent in totals", example = "2025-05-01T00:00:00")
+    private LocalDateTime bucket;
+
+    @Schema(description = "service title", example = "YouTube")
+    private String serviceTitle;
+
+    @Schema(description = "plan", example = "Premium")
+    private String plan;
+
+    @Schema(description = "number of new subscriptions", example = "42")
+    private Long count;
+}
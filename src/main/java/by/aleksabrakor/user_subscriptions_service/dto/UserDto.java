@@ -33,6 +33,9 @@ public class UserDto {
     @Schema(description = "email", example = "nataly@mail.com")
     private String email;
 
+    @Schema(description = "number of subscriptions", example = "3", accessMode = Schema.AccessMode.READ_ONLY)
+    private Integer subscriptionCount;
+
     @Schema(description = "list subscriptions")
     private List<SubscriptionDto> subscriptions;
 }
@@ -0,0 +1,39 @@
+package by.aleksabrakor.user_subscriptions_service.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "User import result DTO")
+public class UserImportResultDto {
+
+    @Schema(description = "rows received in the request body", example = "1000000")
+    private long received;
+
+    @Schema(description = "users inserted", example = "999990")
+    private long imported;
+
+    @Schema(description = "rows skipped because the email already exists or repeats in the input", example = "10")
+    private long duplicates;
+
+    @Schema(description = "first duplicate emails (at most 100)")
+    private List<String> duplicateEmails;
+
+    @Schema(description = "rows skipped because the name or email is invalid (same constraints as User DTO)", example = "2")
+    private long rejected;
+
+    @Schema(description = "numbers of the first rejected rows (at most 100), counted from 1 without the CSV header and blank lines")
+    private List<Long> rejectedRows;
+
+    @Schema(description = "import duration in milliseconds", example = "5400")
+    private long elapsedMillis;
+
+    @Schema(description = "throughput, rows per second", example = "185185.2")
+    private double rowsPerSecond;
+}
@@ -0,0 +1,103 @@
+package by.aleksabrakor.user_subscriptions_service.filter;
+
+import by.aleksabrakor.user_subscriptions_service.exception.ErrorResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulkhead перед контроллерами: одновременно обрабатывается не больше запросов, чем соединений в пуле Hikari.
+ * С виртуальными потоками Tomcat больше не ограничивает число одновременных запросов, и без этого фильтра
+ * тысячи потоков выстраиваются в очередь за соединением до connection-timeout. Лишние запросы ждут разрешения
+ * не дольше app.bulkhead.acquire-timeout, затем получают 503 (метрика http.bulkhead.rejected).
+ * Асинхронная часть потоковых ответов (GET /subscriptions/export) выполняется уже после выхода из фильтра.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "app.bulkhead.enabled", havingValue = "true")
+public class ConnectionPoolBulkheadFilter extends OncePerRequestFilter {
+    private final Semaphore permits;
+    private final Duration acquireTimeout;
+    private final ObjectMapper objectMapper;
+    private final Counter rejected;
+
+    public ConnectionPoolBulkheadFilter(DataSource dataSource,
+                                        @Value("${app.bulkhead.max-concurrent}") int maxConcurrent,
+                                        @Value("${app.bulkhead.acquire-timeout}") Duration acquireTimeout,
+                                        ObjectMapper objectMapper,
+                                        MeterRegistry meterRegistry) throws SQLException {
+        int limit = maxConcurrent > 0 ? maxConcurrent : dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+        this.permits = new Semaphore(limit, true);
+        this.acquireTimeout = acquireTimeout;
+        this.objectMapper = objectMapper;
+        this.rejected = Counter.builder("http.bulkhead.rejected")
+                .description("Запросы, отклоненные bulkhead-ом с 503")
+                .register(meterRegistry);
+        Gauge.builder("http.bulkhead.available", permits, Semaphore::availablePermits)
+                .description("Свободные разрешения bulkhead-а")
+                .register(meterRegistry);
+        log.info("Bulkhead запросов включен: не больше {} одновременных запросов", limit);
+    }
+
+    // health и метрики должны отвечать и под перегрузкой
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getRequestURI().startsWith(request.getContextPath() + "/actuator");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.increment();
+            reject(response);
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void reject(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        ErrorResponse errorResponse = new ErrorResponse(
+                "Service overloaded: все соединения с БД заняты, повторите запрос позже",
+                Timestamp.valueOf(LocalDateTime.now())
+        );
+        objectMapper.writeValue(response.getOutputStream(), errorResponse);
+    }
+}
@@ -0,0 +1,64 @@
+package by.aleksabrakor.user_subscriptions_service.filter;
+
+import by.aleksabrakor.user_subscriptions_service.repository.SqlStatementCounter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Бюджет SQL на HTTP-запрос: считает обращения к БД и время БД (SqlStatementCounter), отдает их в заголовках
+ * X-DB-Queries / X-DB-Time (кроме профиля prod) и логирует запросы сверх app.sql-budget.max-queries / max-time -
+ * так видны N+1 запросы от ленивых связей.
+ * Заголовки ставятся до записи тела (SqlBudgetResponseAdvice) и после обработки, если ответ еще не отправлен.
+ * Запросы потоковой выгрузки, которые идут в асинхронном потоке, в счетчик не попадают.
+ */
+@Slf4j
+@Component
+public class SqlBudgetFilter extends OncePerRequestFilter {
+    public static final String QUERIES_HEADER = "X-DB-Queries";
+    public static final String TIME_HEADER = "X-DB-Time";
+
+    private final boolean headersEnabled;
+    private final int maxQueries;
+    private final Duration maxTime;
+
+    public SqlBudgetFilter(@Value("${app.sql-budget.headers-enabled}") boolean headersEnabled,
+                           @Value("${app.sql-budget.max-queries}") int maxQueries,
+                           @Value("${app.sql-budget.max-time}") Duration maxTime) {
+        this.headersEnabled = headersEnabled;
+        this.maxQueries = maxQueries;
+        this.maxTime = maxTime;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        SqlStatementCounter.Statistics statistics = SqlStatementCounter.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            SqlStatementCounter.stop();
+            if (headersEnabled && !response.isCommitted()) {
+                writeHeaders(response, statistics);
+            }
+            if (statistics.getQueries() > maxQueries || statistics.getElapsedMillis() > maxTime.toMillis()) {
+                log.warn("Превышен бюджет SQL: {} {} - {} запросов, {} мс (бюджет {} запросов, {} мс)",
+                        request.getMethod(), request.getRequestURI(), statistics.getQueries(),
+                        statistics.getElapsedMillis(), maxQueries, maxTime.toMillis());
+            }
+        }
+    }
+
+    private static void writeHeaders(HttpServletResponse response, SqlStatementCounter.Statistics statistics) {
+        response.setHeader(QUERIES_HEADER, String.valueOf(statistics.getQueries()));
+        response.setHeader(TIME_HEADER, String.valueOf(statistics.getElapsedMillis()));
+    }
+}
@@ -0,0 +1,37 @@
+package by.aleksabrakor.user_subscriptions_service.filter;
+
+import by.aleksabrakor.user_subscriptions_service.repository.SqlStatementCounter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Заголовки X-DB-Queries / X-DB-Time для ответов с телом: ставятся перед записью тела,
+ * когда все запросы контроллера к БД уже выполнены, а ответ еще не отправлен клиенту.
+ */
+@RestControllerAdvice
+@ConditionalOnProperty(name = "app.sql-budget.headers-enabled", havingValue = "true")
+public class SqlBudgetResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        SqlStatementCounter.Statistics statistics = SqlStatementCounter.current();
+        if (statistics != null) {
+            response.getHeaders().set(SqlBudgetFilter.QUERIES_HEADER, String.valueOf(statistics.getQueries()));
+            response.getHeaders().set(SqlBudgetFilter.TIME_HEADER, String.valueOf(statistics.getElapsedMillis()));
+        }
+        return body;
+    }
+}
@@ -3,18 +3,31 @@ package by.aleksabrakor.user_subscriptions_service.mapper;
 
 import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
 import by.aleksabrakor.user_subscriptions_service.model.User;
+import org.mapstruct.IterableMapping;
 import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.Named;
 
 import java.util.List;
 
 @Mapper(componentModel = "spring", uses = SubscriptionMapper.class)
 public interface UserMapper {
 
+    // счетчик подписок ведет БД, из запроса он не берется
+    @Mapping(target = "subscriptionCount", ignore = true)
     User userDtoToEntity(UserDto userDto);
 
     UserDto entityToUserDto(User user);
 
     List<UserDto> toDtoList(List<User> tasks);
 
+    // Маппинг без обращения к ленивой коллекции subscriptions
+    @Named("withoutSubscriptions")
+    @Mapping(target = "subscriptions", ignore = true)
+    UserDto entityToUserDtoWithoutSubscriptions(User user);
+
+    @IterableMapping(qualifiedByName = "withoutSubscriptions")
+    List<UserDto> toDtoListWithoutSubscriptions(List<User> users);
+
     List<User> toEntityList(List<UserDto> taskDtos);
 }
@@ -0,0 +1,53 @@
+package by.aleksabrakor.user_subscriptions_service.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Событие изменения подписки в outbox-таблице (см. SubscriptionOutbox, SubscriptionOutboxRelay).
+ * Связи с подпиской нет: строка переживает удаление подписки и хранит ее состояние на момент изменения.
+ */
+@Entity
+@Table(name = "subscription_outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "subscription_outbox_id_seq")
+    @SequenceGenerator(name = "subscription_outbox_id_seq", sequenceName = "subscription_outbox_id_seq", allocationSize = 50)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false, length = 20)
+    private SubscriptionEventType eventType;
+
+    @Column(name = "subscription_id", nullable = false)
+    private Long subscriptionId;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "service_title")
+    private String serviceTitle;
+
+    @Column(name = "plan")
+    private String plan;
+
+    @Column(name = "description")
+    private String description;
+
+    @Column(name = "created_at")
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    // порядок доставки: номер выдает БД при INSERT (см. V1_0_10), приложение его не пишет и не читает
+    @Column(name = "delivery_order", insertable = false, updatable = false, columnDefinition = "bigserial")
+    private Long deliveryOrder;
+}
@@ -0,0 +1,36 @@
+package by.aleksabrakor.user_subscriptions_service.model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+/**
+ * Размер бакета rollup-а подписок (subscription_stats).
+ */
+public enum StatsGranularity {
+    HOUR(Duration.ofHours(1), ChronoUnit.HOURS),
+    DAY(Duration.ofDays(1), ChronoUnit.DAYS);
+
+    private final Duration bucketSize;
+    private final ChronoUnit truncUnit;
+
+    StatsGranularity(Duration bucketSize, ChronoUnit truncUnit) {
+        this.bucketSize = bucketSize;
+        this.truncUnit = truncUnit;
+    }
+
+    public Duration getBucketSize() {
+        return bucketSize;
+    }
+
+    // поле для date_trunc в PostgreSQL
+    public String truncField() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    // бакет времени в UTC, как date_trunc(truncField(), ...) в PostgreSQL
+    public LocalDateTime bucketOf(LocalDateTime utcTime) {
+        return utcTime.truncatedTo(truncUnit);
+    }
+}
@@ -11,13 +11,14 @@ import java.time.LocalDateTime;
 import java.util.List;
 
 @Entity
-@Table(name = "subscriptions")
+@Table(name = "subscriptions", indexes = @Index(name = "idx_subscriptions_user_id", columnList = "user_id"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Subscription {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "subscriptions_id_seq")
+    @SequenceGenerator(name = "subscriptions_id_seq", sequenceName = "subscriptions_id_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private Long id;
 
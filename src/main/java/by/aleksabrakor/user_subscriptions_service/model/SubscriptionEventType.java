@@ -0,0 +1,7 @@
+package by.aleksabrakor.user_subscriptions_service.model;
+
+public enum SubscriptionEventType {
+    CREATED,
+    UPDATED,
+    DELETED
+}
@@ -0,0 +1,49 @@
+package by.aleksabrakor.user_subscriptions_service.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Строка rollup-а новых подписок: сколько подписок на сервис с планом создано за час или сутки (bucket, UTC).
+ * Пишется и читается нативным SQL (SubscriptionStats, SubscriptionStatsBackfill), сущность описывает схему таблицы.
+ */
+@Entity
+@Table(name = "subscription_stats")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SubscriptionStat {
+    @EmbeddedId
+    private Key key;
+
+    @ColumnDefault("0")
+    @Column(name = "created_count", nullable = false)
+    private long createdCount;
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        @Enumerated(EnumType.STRING)
+        @Column(name = "granularity", nullable = false, length = 10)
+        private StatsGranularity granularity;
+
+        @Column(name = "bucket", nullable = false)
+        private LocalDateTime bucket;
+
+        @Column(name = "service_title", nullable = false)
+        private String serviceTitle;
+
+        // '' - план не указан
+        @ColumnDefault("''")
+        @Column(name = "plan", nullable = false, length = 100)
+        private String plan;
+    }
+}
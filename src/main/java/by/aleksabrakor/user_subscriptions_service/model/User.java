@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -17,7 +18,8 @@ import java.util.List;
 @AllArgsConstructor
 public class User {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_id_seq")
+    @SequenceGenerator(name = "users_id_seq", sequenceName = "users_id_seq", allocationSize = 50)
     @Column(name = "id", nullable = false)
     private Long id;
 
@@ -35,6 +37,11 @@ public class User {
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
+    // Меняется только UPDATE-ами UserRepository вместе с добавлением, удалением и переносом подписок
+    @ColumnDefault("0")
+    @Column(name = "subscription_count", nullable = false, insertable = false, updatable = false)
+    private int subscriptionCount;
+
     @OneToMany(mappedBy = "user")
     private List<Subscription> subscriptions;
 
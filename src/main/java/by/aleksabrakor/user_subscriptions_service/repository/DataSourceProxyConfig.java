@@ -0,0 +1,34 @@
+package by.aleksabrakor.user_subscriptions_service.repository;
+
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Оборачивает DataSource в datasource-proxy со счетчиком SqlStatementCounter.
+ * unwrap() прокси отдает исходный пул, поэтому метрики Hikari и bulkhead по размеру пула продолжают работать.
+ */
+@Configuration
+public class DataSourceProxyConfig {
+
+    @Bean
+    public static BeanPostProcessor sqlStatementCountingDataSourcePostProcessor() {
+        SqlStatementCounter counter = new SqlStatementCounter();
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)) {
+                    return ProxyDataSourceBuilder.create(dataSource)
+                            .name(beanName)
+                            .listener(counter)
+                            .build();
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,7 @@
+package by.aleksabrakor.user_subscriptions_service.repository;
+
+import by.aleksabrakor.user_subscriptions_service.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+}
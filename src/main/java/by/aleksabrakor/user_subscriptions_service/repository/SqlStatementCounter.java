@@ -0,0 +1,59 @@
+package by.aleksabrakor.user_subscriptions_service.repository;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+
+import java.util.List;
+
+/**
+ * Счетчик SQL-выражений и времени БД в рамках одного HTTP-запроса (см. SqlBudgetFilter).
+ * Подключен к DataSource через datasource-proxy; считаются обращения к БД: JDBC batch - одно обращение.
+ * Вне запроса (старт приложения, планировщик) ничего не считается.
+ */
+public class SqlStatementCounter implements QueryExecutionListener {
+    private static final ThreadLocal<Statistics> CURRENT = new ThreadLocal<>();
+
+    public static Statistics start() {
+        Statistics statistics = new Statistics();
+        CURRENT.set(statistics);
+        return statistics;
+    }
+
+    public static void stop() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Статистика текущего запроса или null, если поток не обрабатывает HTTP-запрос.
+     */
+    public static Statistics current() {
+        return CURRENT.get();
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Statistics statistics = CURRENT.get();
+        if (statistics != null) {
+            statistics.queries++;
+            statistics.elapsedMillis += execInfo.getElapsedTime();
+        }
+    }
+
+    public static final class Statistics {
+        private int queries;
+        private long elapsedMillis;
+
+        public int getQueries() {
+            return queries;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package by.aleksabrakor.user_subscriptions_service.repository;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UpdateSubscriptionRequest;
+import lombok.Value;
+
+import java.util.Optional;
+
+/**
+ * Частичное обновление подписки без загрузки сущности: один UPDATE только переданных колонок с RETURNING.
+ */
+public interface SubscriptionPatchRepository {
+
+    /**
+     * @param changes не-null поля - колонки, которые нужно обновить (хотя бы одно)
+     * @return обновленная подписка, ее serviceTitle и userId до обновления; пусто, если подписки с таким id нет
+     */
+    Optional<PatchedSubscription> patch(Long id, UpdateSubscriptionRequest changes);
+
+    @Value
+    class PatchedSubscription {
+        SubscriptionDto subscription;
+        String oldServiceTitle;
+        Long oldUserId;
+    }
+}
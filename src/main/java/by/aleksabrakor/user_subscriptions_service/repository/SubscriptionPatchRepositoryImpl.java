@@ -0,0 +1,68 @@
+package by.aleksabrakor.user_subscriptions_service.repository;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UpdateSubscriptionRequest;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.Tuple;
+import lombok.RequiredArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+
+@RequiredArgsConstructor
+public class SubscriptionPatchRepositoryImpl implements SubscriptionPatchRepository {
+    // Подзапрос o блокирует строку и отдает значения до обновления (нужны для индекса популярности и счетчиков подписок)
+    private static final String PATCH_SQL = """
+            UPDATE subscriptions s
+            SET %s, updated_at = CURRENT_TIMESTAMP
+            FROM (SELECT id, service_title, user_id FROM subscriptions WHERE id = :id FOR UPDATE) o
+            WHERE s.id = o.id
+            RETURNING s.id, s.service_title, s.plan, s.description, s.user_id, o.service_title AS old_service_title,
+                      o.user_id AS old_user_id
+            """;
+
+    private final EntityManager entityManager;
+
+    @Override
+    public Optional<PatchedSubscription> patch(Long id, UpdateSubscriptionRequest changes) {
+        // Имена колонок фиксированы, в SQL попадают только они; значения идут параметрами
+        Map<String, Object> columns = new LinkedHashMap<>();
+        putIfPresent(columns, "service_title", changes.getServiceTitle());
+        putIfPresent(columns, "plan", changes.getPlan());
+        putIfPresent(columns, "description", changes.getDescription());
+        putIfPresent(columns, "user_id", changes.getUserId());
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Не передано ни одного поля для обновления подписки");
+        }
+
+        StringJoiner assignments = new StringJoiner(", ");
+        columns.keySet().forEach(column -> assignments.add(column + " = :" + column));
+
+        // нативный запрос через EntityManager: Hibernate сначала сбросит в БД несохраненные изменения
+        Query query = entityManager.createNativeQuery(PATCH_SQL.formatted(assignments), Tuple.class)
+                .setParameter("id", id);
+        columns.forEach(query::setParameter);
+
+        @SuppressWarnings("unchecked")
+        List<Tuple> rows = query.getResultList();
+        return rows.stream().findFirst().map(row -> new PatchedSubscription(
+                new SubscriptionDto(
+                        row.get("id", Long.class),
+                        row.get("service_title", String.class),
+                        row.get("plan", String.class),
+                        row.get("description", String.class),
+                        row.get("user_id", Long.class)),
+                row.get("old_service_title", String.class),
+                row.get("old_user_id", Long.class)));
+    }
+
+    private static void putIfPresent(Map<String, Object> columns, String column, Object value) {
+        if (value != null) {
+            columns.put(column, value);
+        }
+    }
+}
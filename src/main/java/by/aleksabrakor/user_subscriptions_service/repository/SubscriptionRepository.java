@@ -1,18 +1,108 @@
 package by.aleksabrakor.user_subscriptions_service.repository;
 
+import by.aleksabrakor.user_subscriptions_service.dto.PopularSubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
 import by.aleksabrakor.user_subscriptions_service.model.Subscription;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
-public interface SubscriptionRepository extends JpaRepository<Subscription, Long> {
+public interface SubscriptionRepository extends JpaRepository<Subscription, Long>, SubscriptionPatchRepository {
+
+    int EXPORT_FETCH_SIZE = 1000;
 
+    // Чтение сразу в SubscriptionDto (constructor expression): без сущностей в контексте персистентности,
+    // снимков для dirty checking и маппинга. s.user.id берется из внешнего ключа, без JOIN с users
+    String SUBSCRIPTION_DTO_SELECT = "SELECT new by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto(" +
+                                     "s.id, s.serviceTitle, s.plan, s.description, s.user.id) FROM Subscription s ";
+
+    // Путь через сущности, оставлен для сравнения в SubscriptionProjectionBenchmarkTest
     List<Subscription> findByUserId(Long userId);
 
-    @Query("SELECT s.serviceTitle, COUNT(s) as count FROM Subscription s GROUP BY s.serviceTitle ORDER BY count DESC LIMIT 3")
-    List<Object[]> findTop3PopularSubscriptions();
+    // Юзер и его подписки одним запросом по индексам users_pkey и idx_subscriptions_user_id:
+    // нет строк - нет юзера; юзер без подписок дает одну строку с id = null.
+    // updated_at подписки - для ETag списка без отдельного запроса версии
+    @Query("SELECT new by.aleksabrakor.user_subscriptions_service.repository.UserSubscriptionRow(" +
+           "s.id, s.serviceTitle, s.plan, s.description, u.id, s.updatedAt) " +
+           "FROM User u LEFT JOIN u.subscriptions s WHERE u.id = :userId ORDER BY s.id")
+    List<UserSubscriptionRow> findUserSubscriptionRows(@Param("userId") Long userId);
+
+    // Keyset-пагинация: WHERE id > :afterId ORDER BY id LIMIT n — идет по индексу первичного ключа
+    @Query(SUBSCRIPTION_DTO_SELECT + "WHERE s.id > :afterId ORDER BY s.id")
+    List<SubscriptionDto> findSubscriptionDtosAfterId(@Param("afterId") Long afterId, Limit limit);
+
+    // Поиск по части названия: ILIKE '%...%' обслуживает GIN-индекс триграмм idx_subscriptions_service_title_trgm.
+    // Спецсимволы LIKE в pattern экранируются '!' (SubscriptionService.containsPattern)
+    @Query(SUBSCRIPTION_DTO_SELECT + "WHERE s.serviceTitle ILIKE :pattern ESCAPE '!' ORDER BY s.id")
+    List<SubscriptionDto> searchByServiceTitle(@Param("pattern") String pattern, Limit limit);
+
+    // Для PUT: строка блокируется, чтобы перенос подписки к другому юзеру видел актуального владельца
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Subscription s WHERE s.id = :id")
+    Optional<Subscription> findByIdForUpdate(@Param("id") Long id);
+
+    @Query(SUBSCRIPTION_DTO_SELECT + "WHERE s.id = :id")
+    Optional<SubscriptionDto> findSubscriptionDtoById(@Param("id") Long id);
+
+    // Потоковое чтение через серверный курсор: драйвер тянет строки пачками по fetchSize,
+    // а не материализует весь результат. Вызывать только внутри транзакции
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT s FROM Subscription s ORDER BY s.id")
+    Stream<Subscription> streamAllOrderById();
+
+    // Удаление подписки юзера и уменьшение users.subscription_count одним оператором; RETURNING отдает serviceTitle
+    // для индекса популярности и новое значение счетчика для копии юзера в кеше.
+    // Пустой список - подписки с таким id у этого юзера нет, счетчик не меняется
+    @Query(value = "WITH deleted AS (" +
+                   "DELETE FROM subscriptions WHERE id = :id AND user_id = :userId RETURNING service_title), " +
+                   "counted AS (" +
+                   "UPDATE users SET subscription_count = subscription_count - 1 " +
+                   "WHERE id = :userId AND EXISTS (SELECT 1 FROM deleted) RETURNING subscription_count) " +
+                   "SELECT deleted.service_title AS serviceTitle, counted.subscription_count AS subscriptionCount " +
+                   "FROM deleted CROSS JOIN counted",
+            nativeQuery = true)
+    List<DeletedSubscription> deleteByIdAndUserIdReturningServiceTitle(@Param("id") Long id,
+                                                                       @Param("userId") Long userId);
+
+    // Все подписки юзера удаляются до удаления самого юзера, а не каскадом ON DELETE CASCADE:
+    // RETURNING отдает serviceTitle каждой удаленной подписки для индекса популярности
+    @Query(value = "WITH deleted AS (DELETE FROM subscriptions WHERE user_id = :userId RETURNING service_title) " +
+                   "SELECT service_title FROM deleted",
+            nativeQuery = true)
+    List<String> deleteByUserIdReturningServiceTitle(@Param("userId") Long userId);
+
+    // Полный пересчет популярности: используется только для загрузки и сверки SubscriptionPopularityIndex
+    @Query("SELECT new by.aleksabrakor.user_subscriptions_service.dto.PopularSubscriptionDto(s.serviceTitle, COUNT(s)) " +
+           "FROM Subscription s GROUP BY s.serviceTitle")
+    List<PopularSubscriptionDto> countByServiceTitle();
+
+    // Пересчет одного названия при сверке рейтинга популярности; равенство тоже обслуживает
+    // GIN-индекс триграмм idx_subscriptions_service_title_trgm
+    @Query("SELECT count(s) FROM Subscription s WHERE s.serviceTitle = :serviceTitle")
+    long countWithServiceTitle(@Param("serviceTitle") String serviceTitle);
+
+    interface DeletedSubscription {
+        String getServiceTitle();
+
+        // счетчик подписок юзера после удаления
+        Integer getSubscriptionCount();
+    }
 }
@@ -0,0 +1,9 @@
+package by.aleksabrakor.user_subscriptions_service.repository;
+
+import by.aleksabrakor.user_subscriptions_service.model.SubscriptionStat;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SubscriptionStatRepository extends JpaRepository<SubscriptionStat, SubscriptionStat.Key> {
+}
@@ -0,0 +1,25 @@
+package by.aleksabrakor.user_subscriptions_service.repository;
+
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import lombok.Value;
+
+import java.util.Optional;
+
+/**
+ * Частичное обновление юзера без загрузки сущности: один UPDATE только переданных колонок с RETURNING.
+ */
+public interface UserPatchRepository {
+
+    /**
+     * @param name  новое имя или null, если не меняется
+     * @param email новый email или null, если не меняется (name и email не могут быть null одновременно)
+     * @return обновленный юзер (без подписок) и его email до обновления; пусто, если юзера с таким id нет
+     */
+    Optional<PatchedUser> patch(Long id, String name, String email);
+
+    @Value
+    class PatchedUser {
+        UserDto user;
+        String oldEmail;
+    }
+}
@@ -0,0 +1,59 @@
+package by.aleksabrakor.user_subscriptions_service.repository;
+
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.Tuple;
+import lombok.RequiredArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+
+@RequiredArgsConstructor
+public class UserPatchRepositoryImpl implements UserPatchRepository {
+    // Подзапрос o блокирует строку и отдает email до обновления (нужен для UserEmailFilter)
+    private static final String PATCH_SQL = """
+            UPDATE users u
+            SET %s, updated_at = CURRENT_TIMESTAMP
+            FROM (SELECT id, email FROM users WHERE id = :id FOR UPDATE) o
+            WHERE u.id = o.id
+            RETURNING u.id, u.name, u.email, u.subscription_count, o.email AS old_email
+            """;
+
+    private final EntityManager entityManager;
+
+    @Override
+    public Optional<PatchedUser> patch(Long id, String name, String email) {
+        Map<String, Object> columns = new LinkedHashMap<>();
+        if (name != null) {
+            columns.put("name", name);
+        }
+        if (email != null) {
+            columns.put("email", email);
+        }
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Не передано ни одного поля для обновления юзера");
+        }
+
+        StringJoiner assignments = new StringJoiner(", ");
+        columns.keySet().forEach(column -> assignments.add(column + " = :" + column));
+
+        Query query = entityManager.createNativeQuery(PATCH_SQL.formatted(assignments), Tuple.class)
+                .setParameter("id", id);
+        columns.forEach(query::setParameter);
+
+        @SuppressWarnings("unchecked")
+        List<Tuple> rows = query.getResultList();
+        return rows.stream().findFirst().map(row -> new PatchedUser(
+                new UserDto(
+                        row.get("id", Long.class),
+                        row.get("name", String.class),
+                        row.get("email", String.class),
+                        row.get("subscription_count", Integer.class),
+                        null),
+                row.get("old_email", String.class)));
+    }
+}
@@ -1,18 +1,72 @@
 package by.aleksabrakor.user_subscriptions_service.repository;
 
 import by.aleksabrakor.user_subscriptions_service.model.User;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserPatchRepository {
 
     Boolean existsByEmail(String email);
 
     Boolean existsByEmailAndIdNot(String email, Long id);
 
+    // Юзеры вместе с подписками одним запросом (LEFT JOIN FETCH), без N+1 при маппинге
+    @EntityGraph(attributePaths = "subscriptions")
+    @Query("SELECT u FROM User u ORDER BY u.id")
+    List<User> findAllWithSubscriptions();
+
+    @EntityGraph(attributePaths = "subscriptions")
+    Optional<User> findWithSubscriptionsById(Long id);
+
+    // Все email потоком, для построения UserEmailFilter
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT u.email FROM User u")
+    Stream<String> streamAllEmails();
+
+    // Версии юзера и его подписок для ETag, по индексам users_pkey и idx_subscriptions_user_id, без загрузки сущностей.
+    // Добавление и изменение подписки меняют последний updated_at, удаление - количество
+    @Query("SELECT u.updatedAt AS userUpdatedAt, COUNT(s.id) AS subscriptionCount, " +
+           "MAX(s.updatedAt) AS subscriptionsUpdatedAt " +
+           "FROM User u LEFT JOIN u.subscriptions s WHERE u.id = :id GROUP BY u.id, u.updatedAt")
+    Optional<UserVersion> findUserVersionById(@Param("id") Long id);
+
+    // Счетчик подписок увеличивается вместе с проверкой квоты одним UPDATE, строка юзера блокируется до конца транзакции.
+    // RETURNING отдает новое значение для копии юзера в кеше; пусто - юзера нет или квота будет превышена
+    @Query(value = "WITH counted AS (" +
+                   "UPDATE users SET subscription_count = subscription_count + :count " +
+                   "WHERE id = :id AND subscription_count + :count <= :maxCount RETURNING subscription_count) " +
+                   "SELECT subscription_count FROM counted", nativeQuery = true)
+    Optional<Integer> incrementSubscriptionCount(@Param("id") Long id, @Param("count") int count,
+                                                 @Param("maxCount") int maxCount);
+
+    @Query(value = "WITH counted AS (" +
+                   "UPDATE users SET subscription_count = subscription_count - :count WHERE id = :id " +
+                   "RETURNING subscription_count) " +
+                   "SELECT subscription_count FROM counted", nativeQuery = true)
+    Optional<Integer> decrementSubscriptionCount(@Param("id") Long id, @Param("count") int count);
+
+    interface UserVersion {
+        LocalDateTime getUserUpdatedAt();
+
+        Long getSubscriptionCount();
+
+        // null - подписок нет
+        LocalDateTime getSubscriptionsUpdatedAt();
+    }
+
 //    Optional<User> findByEmailAndIdNot(String email, Long id);
 //
 //    Optional<User> findByEmail(String email);
@@ -0,0 +1,24 @@
+package by.aleksabrakor.user_subscriptions_service.repository;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/**
+ * Строка SubscriptionRepository.findUserSubscriptionRows: подписка юзера вместе с ее updated_at.
+ * Юзер без подписок дает одну строку с id = null.
+ */
+@Value
+public class UserSubscriptionRow {
+    Long id;
+    String serviceTitle;
+    String plan;
+    String description;
+    Long userId;
+    LocalDateTime updatedAt;
+
+    public SubscriptionDto toDto() {
+        return new SubscriptionDto(id, serviceTitle, plan, description, userId);
+    }
+}
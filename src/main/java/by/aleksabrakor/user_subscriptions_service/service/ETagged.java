@@ -0,0 +1,12 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import lombok.Value;
+
+/**
+ * Результат чтения вместе со слабым ETag его версии (см. ETags).
+ */
+@Value
+public class ETagged<T> {
+    T body;
+    String eTag;
+}
@@ -0,0 +1,27 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Слабые ETag-и из версий данных (updated_at, количество подписок), а не из хеша тела ответа:
+ * совпадение с If-None-Match проверяется до загрузки сущностей и сериализации JSON.
+ */
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String weak(String resource, Long id, Object... versions) {
+        StringBuilder tag = new StringBuilder("W/\"").append(resource).append('-').append(id);
+        for (Object version : versions) {
+            tag.append('-').append(version instanceof LocalDateTime time ? toMicros(time) : version);
+        }
+        return tag.append('"').toString();
+    }
+
+    // PostgreSQL хранит микросекунды, а время в еще не перечитанной из БД сущности может быть точнее
+    private static String toMicros(LocalDateTime time) {
+        return Long.toString(time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1000, 36);
+    }
+}
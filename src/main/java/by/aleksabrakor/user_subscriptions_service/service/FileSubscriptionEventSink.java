@@ -0,0 +1,45 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionChangeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Sink для локальной проверки (профиль local) и тестов: дописывает события в файл в формате NDJSON (одна JSON-строка на событие).
+ */
+@Component
+@ConditionalOnProperty(name = "app.outbox.sink", havingValue = "file")
+public class FileSubscriptionEventSink implements SubscriptionEventSink {
+    private final Path path;
+    private final ObjectWriter writer;
+
+    public FileSubscriptionEventSink(@Value("${app.outbox.file-path}") Path path, ObjectMapper objectMapper) {
+        this.path = path;
+        this.writer = objectMapper.writerFor(SubscriptionChangeEvent.class);
+    }
+
+    @Override
+    public synchronized void publish(List<SubscriptionChangeEvent> events) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND))) {
+            for (SubscriptionChangeEvent event : events) {
+                outputStream.write(writer.writeValueAsBytes(event));
+                outputStream.write('\n');
+            }
+        }
+    }
+}
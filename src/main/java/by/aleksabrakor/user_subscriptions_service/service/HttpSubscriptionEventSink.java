@@ -0,0 +1,66 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionChangeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Sink, отправляющий пачку событий одним POST-запросом с телом в формате NDJSON (application/x-ndjson).
+ * Ответ не 2xx считается ошибкой доставки - пачка остается в outbox.
+ */
+@Component
+@ConditionalOnProperty(name = "app.outbox.sink", havingValue = "http")
+public class HttpSubscriptionEventSink implements SubscriptionEventSink {
+    private final URI uri;
+    private final Duration timeout;
+    private final ObjectWriter writer;
+    private final HttpClient httpClient;
+
+    public HttpSubscriptionEventSink(@Value("${app.outbox.http-url}") URI uri,
+                                     @Value("${app.outbox.http-timeout}") Duration timeout,
+                                     ObjectMapper objectMapper) {
+        this.uri = uri;
+        this.timeout = timeout;
+        this.writer = objectMapper.writerFor(SubscriptionChangeEvent.class);
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    @Override
+    public void publish(List<SubscriptionChangeEvent> events) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(events.size() * 256);
+        for (SubscriptionChangeEvent event : events) {
+            body.write(writer.writeValueAsBytes(event));
+            body.write('\n');
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(timeout)
+                .header("Content-Type", "application/x-ndjson")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+
+        HttpResponse<Void> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Отправка событий подписок прервана", e);
+        }
+        if (response.statusCode() / 100 != 2) {
+            throw new IOException("Получатель событий подписок ответил " + response.statusCode());
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Рассылка изменений подписок по SSE (GET /subscriptions/stream) подписчикам этого узла.
+ * События приходят из SubscriptionOutbox и рассылаются только после коммита транзакции; каждому присваивается
+ * возрастающий номер узла. id SSE-события - "эпоха-номер", где эпоха случайна для каждого запуска узла: номер после
+ * перезапуска или на другом узле начинается заново, и Last-Event-ID чужой эпохи дает resync, а не чужие события из буфера.
+ * Последние replay-size событий хранятся в кольцевом буфере: при переподключении отдаются пропущенные,
+ * а если их уже нет в буфере (или узел перезапускался) - событие resync, после которого клиент перечитывает данные.
+ * У каждого подписчика своя очередь на buffer-size событий, отправка идет в пуле sender-threads.
+ * Переполнение очереди означает медленного клиента: его соединение закрывается (очередь освобождается),
+ * а клиент переподключается с Last-Event-ID и получает пропущенное из кольцевого буфера.
+ * Под блокировкой рассылки ничего не блокируется: закрытие только ставит флаг, а emitter.complete() (он ждет
+ * монитор emitter-а, занятый отправкой зависшему клиенту) выполняется в отдельном потоке закрытия.
+ * Heartbeat и сторожевая проверка идут в собственном планировщике, а не в общем @Scheduled-потоке.
+ * Отправка дольше write-timeout считается зависшей: подписчик закрывается, а пул отправки на время зависшей
+ * записи получает дополнительный поток, так что зависшие клиенты не занимают слоты остальных. Сама блокирующая
+ * запись в сокет завершается по таймауту записи контейнера (server.tomcat.connection-timeout).
+ */
+@Slf4j
+@Component
+public class SubscriptionChangeBroadcaster {
+    private static final String RESYNC_EVENT = "resync";
+    private static final char EPOCH_SEPARATOR = '-';
+
+    private final String epoch = Long.toString(new SecureRandom().nextLong() & Long.MAX_VALUE, Character.MAX_RADIX);
+
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final ReplayEntry[] replay;
+    private final int senderThreads;
+    private final long writeTimeoutNanos;
+    private final ThreadPoolExecutor senderExecutor;
+    private final ExecutorService closeExecutor;
+    private final ScheduledExecutorService streamScheduler;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Counter slowConsumersCounter;
+
+    // номер последнего разосланного события; меняется вместе с replay под блокировкой this
+    private long lastSequence;
+
+    // потоки пула отправки, занятые зависшими записями; меняется под блокировкой senderExecutor
+    private int stalledSenders;
+
+    public SubscriptionChangeBroadcaster(@Value("${app.subscription-stream.buffer-size}") int bufferSize,
+                                         @Value("${app.subscription-stream.replay-size}") int replaySize,
+                                         @Value("${app.subscription-stream.timeout}") Duration timeout,
+                                         @Value("${app.subscription-stream.sender-threads}") int senderThreads,
+                                         @Value("${app.subscription-stream.heartbeat-interval}") Duration heartbeatInterval,
+                                         @Value("${app.subscription-stream.write-timeout}") Duration writeTimeout,
+                                         MeterRegistry meterRegistry) {
+        if (bufferSize < 1 || replaySize < 1 || senderThreads < 1
+            || heartbeatInterval.toMillis() < 1 || writeTimeout.toMillis() < 1) {
+            throw new IllegalArgumentException("Некорректные параметры потока подписок: buffer-size = " + bufferSize
+                                               + ", replay-size = " + replaySize + ", sender-threads = " + senderThreads
+                                               + ", heartbeat-interval = " + heartbeatInterval
+                                               + ", write-timeout = " + writeTimeout);
+        }
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeout.toMillis();
+        this.replay = new ReplayEntry[replaySize];
+        this.senderThreads = senderThreads;
+        this.writeTimeoutNanos = writeTimeout.toNanos();
+
+        this.senderExecutor = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("subscription-stream-"));
+        // потоков закрытия не больше, чем одновременно зависших клиентов
+        this.closeExecutor = Executors.newCachedThreadPool(daemonThreads("subscription-stream-close-"));
+        this.streamScheduler = Executors.newSingleThreadScheduledExecutor(
+                daemonThreads("subscription-stream-scheduler-"));
+        streamScheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatInterval.toMillis(),
+                heartbeatInterval.toMillis(), TimeUnit.MILLISECONDS);
+        long watchdogMillis = Math.max(1, writeTimeout.toMillis() / 2);
+        streamScheduler.scheduleWithFixedDelay(this::closeStalledSubscribers, watchdogMillis, watchdogMillis,
+                TimeUnit.MILLISECONDS);
+
+        Gauge.builder("subscriptions.stream.subscribers", subscribers, Set::size)
+                .description("Количество открытых SSE-потоков изменений подписок")
+                .register(meterRegistry);
+        this.slowConsumersCounter = Counter.builder("subscriptions.stream.slow.consumers")
+                .description("Количество SSE-потоков, закрытых из-за переполнения очереди или зависшей отправки")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Новый SSE-поток. Фильтры userId и serviceTitle необязательны; при lastEventId сначала отдаются
+     * пропущенные события из кольцевого буфера (или resync), затем живые - без разрыва между ними.
+     */
+    public SseEmitter subscribe(Long userId, String serviceTitle, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, userId, serviceTitle);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(subscriber::detach);
+        emitter.onError(error -> subscriber.detach());
+
+        synchronized (this) {
+            if (lastEventId != null) {
+                replayTo(subscriber, lastEventId);
+            }
+            subscribers.add(subscriber);
+        }
+        return emitter;
+    }
+
+    @TransactionalEventListener
+    public void onSubscriptionChange(SubscriptionChangeEvent event) {
+        synchronized (this) {
+            long sequence = ++lastSequence;
+            replay[(int) (sequence % replay.length)] = new ReplayEntry(sequence, event);
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.matches(event)) {
+                    subscriber.offer(toSseEvent(sequence, event));
+                }
+            }
+        }
+    }
+
+    /**
+     * Комментарий-heartbeat: держит соединение через прокси и выявляет отключившихся клиентов,
+     * а у зависшего клиента со временем переполняет очередь.
+     */
+    void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(SseEmitter.event().comment("heartbeat"));
+        }
+    }
+
+    // закрывает подписчиков, чья отправка идет дольше write-timeout, и возмещает пулу занятый ими поток
+    void closeStalledSubscribers() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.markStalled(now)) {
+                slowConsumersCounter.increment();
+                log.warn("SSE-поток изменений подписок закрыт: отправка клиенту идет дольше {} мс",
+                        TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos));
+                subscriber.close();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        streamScheduler.shutdownNow();
+        subscribers.forEach(Subscriber::close);
+        senderExecutor.shutdownNow();
+        closeExecutor.shutdown();
+    }
+
+    private void resizeSenderPool(int stalledDelta) {
+        synchronized (senderExecutor) {
+            stalledSenders += stalledDelta;
+            int size = senderThreads + stalledSenders;
+            // максимум не может быть меньше ядра: при росте сначала максимум, при уменьшении сначала ядро
+            if (stalledDelta > 0) {
+                senderExecutor.setMaximumPoolSize(size);
+                senderExecutor.setCorePoolSize(size);
+            } else {
+                senderExecutor.setCorePoolSize(size);
+                senderExecutor.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void replayTo(Subscriber subscriber, String lastEventIdHeader) {
+        long lastEventId = sequenceOf(lastEventIdHeader);
+        long oldestAvailable = Math.max(1, lastSequence - replay.length + 1);
+        List<SseEmitter.SseEventBuilder> missed = new ArrayList<>();
+        boolean complete = lastEventId >= 0 && lastEventId <= lastSequence && lastEventId >= oldestAvailable - 1;
+        for (long sequence = lastEventId + 1; complete && sequence <= lastSequence; sequence++) {
+            ReplayEntry entry = replay[(int) (sequence % replay.length)];
+            if (subscriber.matches(entry.event())) {
+                missed.add(toSseEvent(sequence, entry.event()));
+                complete = missed.size() <= bufferSize;
+            }
+        }
+
+        if (complete) {
+            missed.forEach(subscriber::offer);
+        } else {
+            log.debug("Last-Event-ID = {} вне буфера повтора (последнее событие {}), отправляется resync",
+                    lastEventIdHeader, eventId(lastSequence));
+            subscriber.offer(SseEmitter.event()
+                    .id(eventId(lastSequence))
+                    .name(RESYNC_EVENT)
+                    .data(""));
+        }
+    }
+
+    private String eventId(long sequence) {
+        return epoch + EPOCH_SEPARATOR + sequence;
+    }
+
+    // номер события этого запуска узла; -1 - id другой эпохи (перезапуск, другой узел) или некорректный
+    private long sequenceOf(String lastEventId) {
+        int separator = lastEventId.lastIndexOf(EPOCH_SEPARATOR);
+        if (separator < 0 || !epoch.equals(lastEventId.substring(0, separator))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private SseEmitter.SseEventBuilder toSseEvent(long sequence, SubscriptionChangeEvent event) {
+        return SseEmitter.event()
+                .id(eventId(sequence))
+                .name(event.getType().name().toLowerCase(Locale.ROOT))
+                .data(event, MediaType.APPLICATION_JSON);
+    }
+
+    private record ReplayEntry(long sequence, SubscriptionChangeEvent event) {
+    }
+
+    /**
+     * Подписчик с собственной ограниченной очередью. Очередь разбирается одной задачей в пуле отправки
+     * за раз (флаг scheduled), поэтому порядок событий сохраняется.
+     */
+    private final class Subscriber implements Runnable {
+        private final SseEmitter emitter;
+        private final Long userId;
+        private final String serviceTitle;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+
+        // начало текущей отправки и признак зависшей записи; меняются под блокировкой подписчика
+        private boolean sending;
+        private long sendStartedNanos;
+        private boolean stalled;
+
+        private Subscriber(SseEmitter emitter, Long userId, String serviceTitle) {
+            this.emitter = emitter;
+            this.userId = userId;
+            this.serviceTitle = serviceTitle;
+        }
+
+        boolean matches(SubscriptionChangeEvent event) {
+            return (userId == null || userId.equals(event.getUserId()))
+                   && (serviceTitle == null || serviceTitle.equals(event.getServiceTitle()));
+        }
+
+        void offer(SseEmitter.SseEventBuilder event) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                slowConsumersCounter.increment();
+                log.warn("SSE-поток изменений подписок закрыт: клиент не успевает читать, в очереди {} событий",
+                        bufferSize);
+                close();
+                return;
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                senderExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while (!closed && (event = queue.poll()) != null) {
+                    beginSend();
+                    try {
+                        emitter.send(event);
+                    } finally {
+                        endSend();
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // клиент отключился или поток уже завершен
+                detach();
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            // событие могло встать в очередь между последним poll и сбросом флага
+            if (!queue.isEmpty() && !closed && scheduled.compareAndSet(false, true)) {
+                senderExecutor.execute(this);
+            }
+        }
+
+        private synchronized void beginSend() {
+            sending = true;
+            sendStartedNanos = System.nanoTime();
+        }
+
+        private synchronized void endSend() {
+            sending = false;
+            if (stalled) {
+                stalled = false;
+                resizeSenderPool(-1);
+            }
+        }
+
+        synchronized boolean markStalled(long now) {
+            if (!sending || stalled || now - sendStartedNanos < writeTimeoutNanos) {
+                return false;
+            }
+            stalled = true;
+            resizeSenderPool(1);
+            return true;
+        }
+
+        // отписка без завершения emitter-а: соединение уже закрыто контейнером или клиентом
+        void detach() {
+            closed = true;
+            subscribers.remove(this);
+            queue.clear();
+        }
+
+        // не блокирует вызывающего: complete() ждет, пока отправка зависшему клиенту отпустит emitter
+        void close() {
+            detach();
+            closeExecutor.execute(emitter::complete);
+        }
+    }
+}
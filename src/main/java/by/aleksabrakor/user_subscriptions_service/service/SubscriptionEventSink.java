@@ -0,0 +1,16 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionChangeEvent;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Получатель событий изменения подписок из outbox. Реализация выбирается свойством app.outbox.sink.
+ * Пачка передается целиком в порядке id; при исключении пачка остается в outbox и будет отправлена повторно,
+ * поэтому получатель должен быть готов к дубликатам (доставка at-least-once, id события - ключ дедупликации).
+ */
+public interface SubscriptionEventSink {
+
+    void publish(List<SubscriptionChangeEvent> events) throws IOException;
+}
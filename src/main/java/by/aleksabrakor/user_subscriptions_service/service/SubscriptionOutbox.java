@@ -0,0 +1,63 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionChangeEvent;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.model.OutboxEvent;
+import by.aleksabrakor.user_subscriptions_service.model.SubscriptionEventType;
+import by.aleksabrakor.user_subscriptions_service.repository.OutboxEventRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Запись событий изменения подписок в outbox-таблицу в транзакции изменения (без транзакции вызов запрещен).
+ * Строки только регистрируются в контексте персистентности: id берутся из sequence блоками,
+ * а INSERT-ы уходят в БД JDBC batch-ем при flush перед коммитом, вместе с остальными изменениями.
+ * Доставку событий выполняет SubscriptionOutboxRelay.
+ * Каждое событие также публикуется как SubscriptionChangeEvent в контексте приложения - для подписчиков
+ * этого узла после коммита (SubscriptionChangeBroadcaster, GET /subscriptions/stream).
+ */
+@Component
+@RequiredArgsConstructor
+@Transactional(propagation = Propagation.MANDATORY)
+public class SubscriptionOutbox {
+    private final OutboxEventRepository outboxEventRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public void created(SubscriptionDto subscription) {
+        publish(outboxEventRepository.save(toEvent(SubscriptionEventType.CREATED, subscription)));
+    }
+
+    public void createdAll(List<SubscriptionDto> subscriptions) {
+        outboxEventRepository.saveAll(subscriptions.stream()
+                        .map(subscription -> toEvent(SubscriptionEventType.CREATED, subscription))
+                        .toList())
+                .forEach(this::publish);
+    }
+
+    public void updated(SubscriptionDto subscription) {
+        publish(outboxEventRepository.save(toEvent(SubscriptionEventType.UPDATED, subscription)));
+    }
+
+    public void deleted(Long subscriptionId, Long userId, String serviceTitle) {
+        publish(outboxEventRepository.save(new OutboxEvent(null, SubscriptionEventType.DELETED, subscriptionId, userId,
+                serviceTitle, null, null, null, null)));
+    }
+
+    // id уже выдан из sequence, created_at выставится только при INSERT - время события берется текущее
+    private void publish(OutboxEvent event) {
+        eventPublisher.publishEvent(new SubscriptionChangeEvent(event.getId(), event.getEventType(),
+                event.getSubscriptionId(), event.getUserId(), event.getServiceTitle(), event.getPlan(),
+                event.getDescription(), LocalDateTime.now()));
+    }
+
+    private static OutboxEvent toEvent(SubscriptionEventType type, SubscriptionDto subscription) {
+        return new OutboxEvent(null, type, subscription.getId(), subscription.getUserId(),
+                subscription.getServiceTitle(), subscription.getPlan(), subscription.getDescription(), null, null);
+    }
+}
@@ -0,0 +1,140 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionChangeEvent;
+import by.aleksabrakor.user_subscriptions_service.model.SubscriptionEventType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Фоновая доставка событий из outbox-таблицы в SubscriptionEventSink.
+ * Пачка строк забирается одним DELETE ... RETURNING по id, выбранным с FOR UPDATE SKIP LOCKED, и отдается sink-у
+ * в той же транзакции: при ошибке доставки транзакция откатывается и строки остаются в outbox.
+ * Несколько экземпляров приложения разбирают таблицу параллельно, не блокируя друг друга.
+ * Гарантия порядка: события одной подписки доставляются в порядке коммитов их транзакций (delivery_order), даже
+ * при нескольких relay - событие попадает в пачку только когда в outbox не осталось более ранних событий
+ * той же подписки, в том числе забранных, но еще не закоммиченных другим relay. Между разными подписками порядок
+ * не гарантируется. id (выдаются блоками по экземплярам) остается ключом дедупликации, но не порядком.
+ */
+@Slf4j
+@Component
+public class SubscriptionOutboxRelay {
+    private static final String DRAIN_SQL = """
+            DELETE FROM subscription_outbox
+            WHERE id IN (SELECT id FROM subscription_outbox event
+                         WHERE NOT EXISTS (SELECT 1 FROM subscription_outbox earlier
+                                           WHERE earlier.subscription_id = event.subscription_id
+                                             AND earlier.delivery_order < event.delivery_order)
+                         ORDER BY delivery_order LIMIT ? FOR UPDATE SKIP LOCKED)
+            RETURNING id, delivery_order, event_type, subscription_id, user_id, service_title, plan, description,
+                      created_at
+            """;
+
+    private static final RowMapper<SubscriptionChangeEvent> EVENT_ROW_MAPPER = (rs, rowNum) -> {
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        return new SubscriptionChangeEvent(
+                rs.getLong("id"),
+                SubscriptionEventType.valueOf(rs.getString("event_type")),
+                rs.getLong("subscription_id"),
+                rs.getObject("user_id", Long.class),
+                rs.getString("service_title"),
+                rs.getString("plan"),
+                rs.getString("description"),
+                createdAt == null ? null : createdAt.toLocalDateTime());
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SubscriptionEventSink sink;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Counter publishedCounter;
+
+    public SubscriptionOutboxRelay(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   SubscriptionEventSink sink,
+                                   @Value("${app.outbox.relay.enabled}") boolean enabled,
+                                   @Value("${app.outbox.relay.batch-size}") int batchSize,
+                                   MeterRegistry meterRegistry) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Некорректный размер пачки outbox: " + batchSize);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.sink = sink;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.publishedCounter = Counter.builder("outbox.events.published")
+                .description("Количество событий подписок, доставленных из outbox")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.outbox.relay.poll-interval}")
+    public void relay() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            log.error("Ошибка доставки событий подписок из outbox, повтор через poll-interval", e);
+        }
+    }
+
+    /**
+     * Разбор outbox пачками, пока очередная пачка не окажется пустой: в пачку берется только самое раннее событие
+     * каждой подписки, поэтому неполная пачка еще не значит, что outbox разобран.
+     *
+     * @return количество доставленных событий
+     */
+    public long drain() {
+        long published = 0;
+        int drained;
+        do {
+            drained = transactionTemplate.execute(status -> drainBatch());
+            published += drained;
+        } while (drained > 0);
+
+        if (published > 0) {
+            log.debug("Из outbox доставлено событий подписок: {}", published);
+        }
+        return published;
+    }
+
+    private int drainBatch() {
+        List<DrainedEvent> events = jdbcTemplate.query(DRAIN_SQL,
+                (rs, rowNum) -> new DrainedEvent(rs.getLong("delivery_order"), EVENT_ROW_MAPPER.mapRow(rs, rowNum)),
+                batchSize);
+        if (events.isEmpty()) {
+            return 0;
+        }
+        // RETURNING не гарантирует порядок строк
+        List<SubscriptionChangeEvent> ordered = events.stream()
+                .sorted(Comparator.comparingLong(DrainedEvent::deliveryOrder))
+                .map(DrainedEvent::event)
+                .toList();
+        try {
+            sink.publish(ordered);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось доставить " + ordered.size() + " событий подписок", e);
+        }
+        publishedCounter.increment(ordered.size());
+        return ordered.size();
+    }
+
+    private record DrainedEvent(long deliveryOrder, SubscriptionChangeEvent event) {
+    }
+}
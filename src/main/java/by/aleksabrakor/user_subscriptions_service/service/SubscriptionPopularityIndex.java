@@ -0,0 +1,297 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.PopularSubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+
+/**
+ * Инкрементально поддерживаемый рейтинг популярности подписок (количество подписок на каждый serviceTitle).
+ * Загружается из БД один раз при старте, дальше обновляется при записи подписок - только после коммита
+ * транзакции - и периодически сверяется с БД. Счетчики хранятся в ConcurrentHashMap, рейтинг - в отсортированном
+ * ConcurrentSkipListSet, поэтому ТОП-N отдается за O(N) без GROUP BY по всей таблице.
+ * Названия с ненулевым счетчиком - это различные serviceTitle, они же ведутся в префиксном дереве для подсказок.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SubscriptionPopularityIndex {
+    private static final Comparator<Entry> RANKING_ORDER = Comparator
+            .comparingLong(Entry::getCount).reversed()
+            .thenComparing(Entry::getServiceTitle);
+
+    private final SubscriptionRepository subscriptionRepository;
+
+    private final Map<String, Long> counts = new ConcurrentHashMap<>();
+    private final Set<Entry> ranking = new ConcurrentSkipListSet<>(RANKING_ORDER);
+    private final SubscriptionTitleTrie titleTrie = new SubscriptionTitleTrie();
+    // незавершенные изменения счетчика названия: их коммит может уже быть виден в БД, а изменение еще не применено
+    private final Map<String, Integer> inFlight = new ConcurrentHashMap<>();
+    // счетчик событий названия: начало и завершение каждого изменения; по его приросту сверка узнает,
+    // сколько изменений пересекалось с чтением из БД
+    private final Map<String, Long> activity = new ConcurrentHashMap<>();
+    // не дает двум загрузкам или сверкам читать БД одновременно; изменения после коммита эту блокировку не ждут
+    private final Object reconcileLock = new Object();
+    private volatile boolean loaded;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        synchronized (reconcileLock) {
+            correctFromDb(false);
+            loaded = true;
+        }
+        log.info("Рейтинг популярности подписок загружен: {} сервисов", counts.size());
+    }
+
+    public void increment(String serviceTitle) {
+        adjustInTransaction(serviceTitle, 1);
+    }
+
+    public void decrement(String serviceTitle) {
+        adjustInTransaction(serviceTitle, -1);
+    }
+
+    /**
+     * Изменения счетчиков транзакции, которой не управляет servlet-синхронизация (например, R2DBC):
+     * сверка учитывает их с момента записи, а применяются они вызовом {@link PendingChange#complete} по итогу транзакции.
+     */
+    public PendingChange beginChange() {
+        return new PendingChange();
+    }
+
+    public List<PopularSubscriptionDto> top(int limit) {
+        ensureLoaded();
+        List<PopularSubscriptionDto> result = new ArrayList<>(limit);
+        Iterator<Entry> iterator = ranking.iterator();
+        while (iterator.hasNext() && result.size() < limit) {
+            Entry entry = iterator.next();
+            result.add(new PopularSubscriptionDto(entry.getServiceTitle(), entry.getCount()));
+        }
+        return result;
+    }
+
+    /**
+     * Названия сервисов, начинающиеся с prefix без учета регистра, в алфавитном порядке.
+     */
+    public List<String> suggestTitles(String prefix, int limit) {
+        ensureLoaded();
+        return titleTrie.suggest(prefix, limit);
+    }
+
+    /**
+     * Сверка счетчиков с БД. Расхождения (например, после записей в обход сервиса) логируются
+     * и исправляются значениями из БД.
+     */
+    @Scheduled(initialDelayString = "${app.popularity.reconcile-interval}",
+            fixedDelayString = "${app.popularity.reconcile-interval}")
+    public void reconcile() {
+        int corrected;
+        synchronized (reconcileLock) {
+            corrected = correctFromDb(true);
+            loaded = true;
+        }
+        log.info("Сверка рейтинга популярности с БД завершена, исправлено расхождений: {}", corrected);
+    }
+
+    /**
+     * Исправление счетчиков по БД. GROUP BY по всей таблице читается без блокировки, под которой применяются
+     * изменения после коммита; под ней только сравнение и исправление. Каждое изменение, незавершенное к началу
+     * чтения или начатое/завершенное до сравнения, могло сдвинуть разницу с БД не больше чем на 1, поэтому
+     * исправляется только та часть разницы, которую они объяснить не могут. Остаток по названиям, которые пишутся
+     * во время сверки, уточняется повторным подсчетом одного названия: его окно - миллисекунды, и оставшаяся
+     * неопределенность доисправляется следующей сверкой.
+     *
+     * @return количество исправленных счетчиков
+     */
+    private int correctFromDb(boolean logMismatches) {
+        Map<String, Long> activityBefore = new HashMap<>(activity);
+        Map<String, Integer> inFlightBefore = new HashMap<>(inFlight);
+        Map<String, Long> actualCounts = loadCountsFromDb();
+
+        Set<String> titles = new HashSet<>(counts.keySet());
+        titles.addAll(actualCounts.keySet());
+        Set<String> corrected = new HashSet<>();
+        List<String> uncertain = new ArrayList<>();
+        synchronized (this) {
+            for (String title : titles) {
+                long expected = actualCounts.getOrDefault(title, 0L);
+                long uncertainty = uncertainty(title, activityBefore.getOrDefault(title, 0L),
+                        inFlightBefore.getOrDefault(title, 0));
+                long mismatch = expected - counts.getOrDefault(title, 0L);
+                if (correct(title, expected, uncertainty, logMismatches)) {
+                    corrected.add(title);
+                }
+                if (mismatch != 0 && uncertainty > 0) {
+                    uncertain.add(title);
+                }
+            }
+        }
+
+        for (String title : uncertain) {
+            long titleActivityBefore = activity.getOrDefault(title, 0L);
+            int titleInFlightBefore = inFlight.getOrDefault(title, 0);
+            long expected = subscriptionRepository.countWithServiceTitle(title);
+            synchronized (this) {
+                long uncertainty = uncertainty(title, titleActivityBefore, titleInFlightBefore);
+                if (correct(title, expected, uncertainty, logMismatches)) {
+                    corrected.add(title);
+                }
+            }
+        }
+        return corrected.size();
+    }
+
+    // до первой загрузки; запросы, пришедшие во время загрузки, ждут ее, а не читают БД повторно
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (reconcileLock) {
+            if (!loaded) {
+                load();
+            }
+        }
+    }
+
+    // сколько изменений могли пересечься с чтением из БД; вызывается под блокировкой this
+    private long uncertainty(String title, long activityBefore, int inFlightBefore) {
+        return inFlightBefore + activity.getOrDefault(title, 0L) - activityBefore;
+    }
+
+    // исправление на часть разницы, не объяснимую пересекшимися изменениями; вызывается под блокировкой this
+    private boolean correct(String title, long expected, long uncertainty, boolean logMismatches) {
+        long current = counts.getOrDefault(title, 0L);
+        long mismatch = expected - current;
+        if (Math.abs(mismatch) <= uncertainty) {
+            return false;
+        }
+        long correction = mismatch - Long.signum(mismatch) * uncertainty;
+        if (logMismatches) {
+            log.warn("Рейтинг популярности разошелся с БД для '{}': в индексе {}, в БД {}, исправлено на {}",
+                    title, current, expected, correction);
+        }
+        adjust(title, correction);
+        return true;
+    }
+
+    // Изменение применяется только после коммита транзакции; без транзакции - сразу
+    private void adjustInTransaction(String serviceTitle, long delta) {
+        if (serviceTitle == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            synchronized (this) {
+                adjust(serviceTitle, delta);
+                activity.merge(serviceTitle, 1L, Long::sum);
+            }
+            return;
+        }
+        PendingChange change = beginChange().add(serviceTitle, delta);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                change.complete(status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    private void adjust(String serviceTitle, long delta) {
+        counts.compute(serviceTitle, (title, current) -> {
+            long oldCount = current == null ? 0 : current;
+            return replaceRankingEntry(title, oldCount, oldCount + delta);
+        });
+    }
+
+    private void set(String serviceTitle, long count) {
+        counts.compute(serviceTitle, (title, current) ->
+                replaceRankingEntry(title, current == null ? 0 : current, count));
+    }
+
+    // Вызывается только внутри counts.compute, поэтому для одного serviceTitle изменения рейтинга сериализованы
+    private Long replaceRankingEntry(String serviceTitle, long oldCount, long newCount) {
+        if (oldCount > 0) {
+            ranking.remove(new Entry(serviceTitle, oldCount));
+        }
+        if (newCount > 0) {
+            ranking.add(new Entry(serviceTitle, newCount));
+            if (oldCount <= 0) {
+                titleTrie.add(serviceTitle);
+            }
+            return newCount;
+        }
+        if (oldCount > 0) {
+            titleTrie.remove(serviceTitle);
+        }
+        return null;
+    }
+
+    private Map<String, Long> loadCountsFromDb() {
+        return subscriptionRepository.countByServiceTitle().stream()
+                .collect(Collectors.toMap(PopularSubscriptionDto::getServiceTitle, PopularSubscriptionDto::getCount));
+    }
+
+    @Value
+    private static class Entry {
+        String serviceTitle;
+        long count;
+    }
+
+    /**
+     * Незавершенные изменения счетчиков одной транзакции.
+     */
+    public final class PendingChange {
+        private final List<Entry> deltas = new ArrayList<>();
+
+        private PendingChange() {
+        }
+
+        public PendingChange increment(String serviceTitle) {
+            return add(serviceTitle, 1);
+        }
+
+        public PendingChange decrement(String serviceTitle) {
+            return add(serviceTitle, -1);
+        }
+
+        // порядок важен для сверки: сначала inFlight, затем activity (снимок читает их в обратном порядке)
+        private PendingChange add(String serviceTitle, long delta) {
+            if (serviceTitle != null) {
+                inFlight.merge(serviceTitle, 1, Integer::sum);
+                activity.merge(serviceTitle, 1L, Long::sum);
+                deltas.add(new Entry(serviceTitle, delta));
+            }
+            return this;
+        }
+
+        public void complete(boolean committed) {
+            synchronized (SubscriptionPopularityIndex.this) {
+                for (Entry delta : deltas) {
+                    if (committed) {
+                        adjust(delta.getServiceTitle(), delta.getCount());
+                    }
+                    inFlight.computeIfPresent(delta.getServiceTitle(), (title, count) -> count > 1 ? count - 1 : null);
+                    activity.merge(delta.getServiceTitle(), 1L, Long::sum);
+                }
+            }
+        }
+    }
+}
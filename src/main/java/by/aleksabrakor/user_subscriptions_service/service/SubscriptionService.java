@@ -1,62 +1,208 @@
 package by.aleksabrakor.user_subscriptions_service.service;
 
+import by.aleksabrakor.user_subscriptions_service.dto.PopularSubscriptionDto;
 import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionPageDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionStatsDto;
 import by.aleksabrakor.user_subscriptions_service.dto.UpdateSubscriptionRequest;
 import by.aleksabrakor.user_subscriptions_service.exception.NotCreatedException;
 import by.aleksabrakor.user_subscriptions_service.exception.NotFoundException;
 import by.aleksabrakor.user_subscriptions_service.mapper.SubscriptionMapper;
+import by.aleksabrakor.user_subscriptions_service.model.StatsGranularity;
 import by.aleksabrakor.user_subscriptions_service.model.Subscription;
+import by.aleksabrakor.user_subscriptions_service.model.User;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionPatchRepository.PatchedSubscription;
 import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository.DeletedSubscription;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository.UserVersion;
+import by.aleksabrakor.user_subscriptions_service.repository.UserSubscriptionRow;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
+@Timed("app.service")
 @Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class SubscriptionService {
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int MAX_TOP_SIZE = 100;
+    public static final int MAX_BATCH_SIZE = 1000;
+    public static final int MAX_STATS_BUCKETS = 10_000;
+    // короче триграммы ILIKE '%...%' не может использовать индекс; для коротких префиксов - подсказки из памяти
+    public static final int MIN_SEARCH_LENGTH = 3;
+
     private final SubscriptionRepository subscriptionRepository;
     private final SubscriptionMapper subscriptionMapper;
     private final UserService userService;
+    private final SubscriptionPopularityIndex popularityIndex;
+    private final SubscriptionOutbox subscriptionOutbox;
+    private final SubscriptionStats subscriptionStats;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
 
 
+    /**
+     * Квота и счетчик подписок юзера проверяются одним UPDATE users (UserService.reserveSubscriptions); он же
+     * подтверждает, что юзер есть, поэтому связь ставится ссылкой без чтения юзера.
+     */
     @Transactional
     public SubscriptionDto addSubscriptionToUser(SubscriptionDto subscriptionDto, Long userId) {
         Subscription newSubscription = subscriptionMapper.subscriptionDtoToEntity(subscriptionDto);
 
-        newSubscription.setUser(userService.findUserOrThrow(userId));
-        return subscriptionMapper.entityToSubscriptionDto(subscriptionRepository.save(newSubscription));
+        userService.reserveSubscriptions(userId, 1);
+        newSubscription.setUser(entityManager.getReference(User.class, userId));
+        Subscription savedSubscription = subscriptionRepository.save(newSubscription);
+        popularityIndex.increment(savedSubscription.getServiceTitle());
+        SubscriptionDto savedSubscriptionDto = subscriptionMapper.entityToSubscriptionDto(savedSubscription);
+        subscriptionOutbox.created(savedSubscriptionDto);
+        subscriptionStats.recordCreated(List.of(savedSubscription));
+        return savedSubscriptionDto;
+    }
+
+    /**
+     * Пакетное добавление подписок пользователю. Id берутся из sequence блоками,
+     * поэтому все INSERT-ы (подписки и события outbox) уходят в БД JDBC batch-ами (hibernate.jdbc.batch_size) при коммите.
+     * Квота проверяется на весь пакет сразу, одним UPDATE счетчика подписок юзера.
+     */
+    @Transactional
+    public List<SubscriptionDto> addSubscriptionsToUser(List<SubscriptionDto> subscriptionDtos, Long userId) {
+        if (subscriptionDtos == null || subscriptionDtos.isEmpty() || subscriptionDtos.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Количество подписок в пакете должно быть от 1 до " + MAX_BATCH_SIZE);
+        }
+        userService.reserveSubscriptions(userId, subscriptionDtos.size());
+        User user = entityManager.getReference(User.class, userId);
+
+        List<Subscription> newSubscriptions = subscriptionMapper.toEntityList(subscriptionDtos);
+        for (Subscription subscription : newSubscriptions) {
+            subscription.setId(null);
+            subscription.setUser(user);
+        }
+        List<Subscription> savedSubscriptions = subscriptionRepository.saveAll(newSubscriptions);
+        savedSubscriptions.forEach(subscription -> popularityIndex.increment(subscription.getServiceTitle()));
+        List<SubscriptionDto> savedSubscriptionDtos = subscriptionMapper.toDtoList(savedSubscriptions);
+        subscriptionOutbox.createdAll(savedSubscriptionDtos);
+        subscriptionStats.recordCreated(savedSubscriptions);
+        return savedSubscriptionDtos;
     }
 
 
-    public List<SubscriptionDto> findAllSubscriptions() {
+    public SubscriptionPageDto findAllSubscriptions(String afterCursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit должен быть в диапазоне от 1 до " + MAX_PAGE_SIZE);
+        }
+        long afterId = afterCursor == null || afterCursor.isBlank() ? 0L : decodeCursor(afterCursor);
 
-        return subscriptionMapper.toDtoList(subscriptionRepository.findAll());
+        // Берем на одну запись больше, чтобы понять, есть ли следующая страница, без отдельного COUNT
+        List<SubscriptionDto> subscriptions =
+                subscriptionRepository.findSubscriptionDtosAfterId(afterId, Limit.of(limit + 1));
+
+        String nextCursor = null;
+        if (subscriptions.size() > limit) {
+            subscriptions = subscriptions.subList(0, limit);
+            nextCursor = encodeCursor(subscriptions.get(limit - 1).getId());
+        }
+        return new SubscriptionPageDto(subscriptions, nextCursor);
+    }
+
+    /**
+     * Выгрузка всех подписок в формате NDJSON (одна JSON-строка на подписку).
+     * Строки читаются курсором и пишутся в поток по мере поступления, уже записанные сущности
+     * отсоединяются от контекста персистентности - память не зависит от размера таблицы.
+     *
+     * @return количество выгруженных подписок
+     */
+    public long exportSubscriptions(OutputStream outputStream) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(SubscriptionDto.class);
+        long count = 0;
+
+        try (Stream<Subscription> subscriptions = subscriptionRepository.streamAllOrderById()) {
+            Iterator<Subscription> iterator = subscriptions.iterator();
+            while (iterator.hasNext()) {
+                Subscription subscription = iterator.next();
+                outputStream.write(writer.writeValueAsBytes(subscriptionMapper.entityToSubscriptionDto(subscription)));
+                outputStream.write('\n');
+                entityManager.detach(subscription);
+
+                // Отдаем клиенту каждую пачку сразу, не дожидаясь конца выгрузки
+                if (++count % SubscriptionRepository.EXPORT_FETCH_SIZE == 1) {
+                    outputStream.flush();
+                }
+            }
+        }
+        outputStream.flush();
+        log.info("Выгрузка подписок завершена, выгружено {} записей", count);
+        return count;
     }
 
     public SubscriptionDto findSubscriptionById(Long id) {
+        return subscriptionRepository.findSubscriptionDtoById(id)
+                .orElseThrow(() ->
+                        new NotFoundException("Подписка на сервис с id = " + id + " не найдена"));
+    }
 
-        return subscriptionMapper.entityToSubscriptionDto(findSubscriptionOrThrow(id));
+    /**
+     * Подписки юзера вместе с ETag списка, посчитанным по тем же строкам (количество и последний updated_at).
+     */
+    public ETagged<List<SubscriptionDto>> getUserSubscriptions(Long userId) {
+        List<UserSubscriptionRow> rows = subscriptionRepository.findUserSubscriptionRows(userId);
+        if (rows.isEmpty()) {
+            throw new NotFoundException("Юзер с id = " + userId + " не найден");
+        }
+        List<UserSubscriptionRow> subscriptionRows = rows.stream()
+                .filter(row -> row.getId() != null)
+                .toList();
+        LocalDateTime lastUpdatedAt = subscriptionRows.stream()
+                .map(UserSubscriptionRow::getUpdatedAt)
+                .filter(Objects::nonNull)
+                .max(Comparator.naturalOrder())
+                .orElse(null);
+        return new ETagged<>(subscriptionRows.stream().map(UserSubscriptionRow::toDto).toList(),
+                userSubscriptionsETag(userId, subscriptionRows.size(), lastUpdatedAt));
     }
 
-    public List<SubscriptionDto> getUserSubscriptions(Long userId) {
-        userService.findUserOrThrow(userId);
-        return subscriptionMapper.toDtoList(subscriptionRepository.findByUserId(userId));
+    /**
+     * Текущий ETag списка подписок юзера одним запросом версий, без загрузки и сериализации подписок.
+     */
+    public String getUserSubscriptionsETag(Long userId) {
+        UserVersion version = userService.findUserVersionOrThrow(userId);
+        return userSubscriptionsETag(userId, version.getSubscriptionCount(), version.getSubscriptionsUpdatedAt());
     }
 
 
     @Transactional
     public SubscriptionDto updateSubscription(UpdateSubscriptionRequest subscriptionDto, Long subscriptionId) {
-        Subscription subscription = findSubscriptionOrThrow(subscriptionId);
+        Subscription subscription = findSubscriptionForUpdateOrThrow(subscriptionId);
 
-        if (subscriptionDto.getUserId() != null) {
-            subscription.setUser(userService.findUserOrThrow(subscriptionDto.getUserId()));
+        Long oldUserId = subscription.getUser().getId();
+        if (subscriptionDto.getUserId() != null && !subscriptionDto.getUserId().equals(oldUserId)) {
+            userService.moveSubscription(oldUserId, subscriptionDto.getUserId());
+            subscription.setUser(entityManager.getReference(User.class, subscriptionDto.getUserId()));
         }
-        if (subscriptionDto.getServiceTitle() != null) {
+        if (subscriptionDto.getServiceTitle() != null
+            && !subscriptionDto.getServiceTitle().equals(subscription.getServiceTitle())) {
+            popularityIndex.decrement(subscription.getServiceTitle());
+            popularityIndex.increment(subscriptionDto.getServiceTitle());
             subscription.setServiceTitle(subscriptionDto.getServiceTitle());
         }
         if (subscriptionDto.getDescription() != null) {
@@ -66,31 +212,163 @@ public class SubscriptionService {
             subscription.setPlan(subscriptionDto.getPlan());
         }
 
-        return subscriptionMapper.entityToSubscriptionDto(subscriptionRepository.save(subscription));
+        SubscriptionDto updatedSubscriptionDto = subscriptionMapper.entityToSubscriptionDto(subscriptionRepository.save(subscription));
+        subscriptionOutbox.updated(updatedSubscriptionDto);
+        return updatedSubscriptionDto;
+    }
+
+    /**
+     * PATCH: один UPDATE только переданных полей (RETURNING отдает результат), без загрузки сущности.
+     * updated_at выставляется в том же UPDATE.
+     */
+    @Transactional
+    public SubscriptionDto patchSubscription(UpdateSubscriptionRequest changes, Long subscriptionId) {
+        if (changes.getServiceTitle() == null && changes.getPlan() == null
+            && changes.getDescription() == null && changes.getUserId() == null) {
+            return findSubscriptionById(subscriptionId);
+        }
+
+        PatchedSubscription patched = patchOrThrow(subscriptionId, changes);
+
+        Long newUserId = patched.getSubscription().getUserId();
+        if (!newUserId.equals(patched.getOldUserId())) {
+            userService.moveSubscription(patched.getOldUserId(), newUserId);
+        }
+        String newServiceTitle = patched.getSubscription().getServiceTitle();
+        if (!newServiceTitle.equals(patched.getOldServiceTitle())) {
+            popularityIndex.decrement(patched.getOldServiceTitle());
+            popularityIndex.increment(newServiceTitle);
+        }
+        subscriptionOutbox.updated(patched.getSubscription());
+        return patched.getSubscription();
     }
 
     @Transactional
     public void deleteSubscriptionFromUser(Long subscriptionId, Long userId) {
-        Subscription subscription = findSubscriptionOrThrow(subscriptionId);
+        List<DeletedSubscription> deleted = subscriptionRepository.deleteByIdAndUserIdReturningServiceTitle(subscriptionId, userId);
+        if (!deleted.isEmpty()) {
+            String serviceTitle = deleted.get(0).getServiceTitle();
+            userService.subscriptionCountChanged(userId, deleted.get(0).getSubscriptionCount());
+            popularityIndex.decrement(serviceTitle);
+            subscriptionOutbox.deleted(subscriptionId, userId, serviceTitle);
+            return;
+        }
+
+        // Ничего не удалено - дополнительные запросы только чтобы вернуть прежние 404/400
+        if (!subscriptionRepository.existsById(subscriptionId)) {
+            throw new NotFoundException("Подписка на сервис с id = " + subscriptionId + " не найдена");
+        }
         userService.findUserOrThrow(userId);
+        throw new IllegalArgumentException("У  подписки другой пользователь");
+    }
+
+
+    public List<PopularSubscriptionDto> getTopPopularSubscriptions(int limit) {
+        if (limit < 1 || limit > MAX_TOP_SIZE) {
+            throw new IllegalArgumentException("limit должен быть в диапазоне от 1 до " + MAX_TOP_SIZE);
+        }
+        return popularityIndex.top(limit);
+    }
 
-        if (subscription.getUser().getId().equals(userId)) {
-            subscriptionRepository.delete(subscription);
+    /**
+     * Подписки, в названии сервиса которых есть q (без учета регистра), по возрастанию id.
+     */
+    public List<SubscriptionDto> searchSubscriptions(String q, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit должен быть в диапазоне от 1 до " + MAX_PAGE_SIZE);
         }
-        else {
-            throw new IllegalArgumentException("У  подписки другой пользователь");
+        return subscriptionRepository.searchByServiceTitle(containsPattern(q), Limit.of(limit));
+    }
+
+    public List<String> suggestServiceTitles(String prefix, int limit) {
+        if (limit < 1 || limit > MAX_TOP_SIZE) {
+            throw new IllegalArgumentException("limit должен быть в диапазоне от 1 до " + MAX_TOP_SIZE);
+        }
+        return popularityIndex.suggestTitles(prefix, limit);
+    }
+
+    /**
+     * Количество новых подписок по бакетам [from, to) из rollup-а subscription_stats.
+     */
+    public List<SubscriptionStatsDto> getSubscriptionStats(StatsGranularity granularity, LocalDateTime from,
+                                                           LocalDateTime to, String serviceTitle, String plan) {
+        checkStatsRange(granularity, from, to);
+        return subscriptionStats.findSeries(granularity, from, to, serviceTitle, plan);
+    }
+
+    public List<SubscriptionStatsDto> getSubscriptionStatsTotals(StatsGranularity granularity, LocalDateTime from,
+                                                                 LocalDateTime to) {
+        checkStatsRange(granularity, from, to);
+        return subscriptionStats.findTotals(granularity, from, to);
+    }
+
+
+    public static String encodeCursor(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastId.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static long decodeCursor(String cursor) {
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор страницы: " + cursor);
         }
     }
 
+    private static String userSubscriptionsETag(Long userId, long subscriptionCount, LocalDateTime lastUpdatedAt) {
+        return ETags.weak("subscriptions", userId, subscriptionCount, lastUpdatedAt);
+    }
 
-    public List<Object[]> getTop3PopularSubscriptions() {
-        return subscriptionRepository.findTop3PopularSubscriptions();
+    /**
+     * Шаблон ILIKE '%q%' с экранированием спецсимволов LIKE ('!' - символ экранирования); общий с реактивным стеком.
+     */
+    public static String containsPattern(String q) {
+        if (q == null || q.strip().length() < MIN_SEARCH_LENGTH) {
+            throw new IllegalArgumentException("Строка поиска должна содержать не меньше " + MIN_SEARCH_LENGTH
+                                               + " символов");
+        }
+        StringBuilder pattern = new StringBuilder(q.length() + 2).append('%');
+        for (char c : q.strip().toCharArray()) {
+            if (c == '%' || c == '_' || c == '!') {
+                pattern.append('!');
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
     }
 
+    /**
+     * Диапазон [from, to) непустой и не длиннее MAX_STATS_BUCKETS бакетов; общий с реактивным стеком.
+     */
+    public static void checkStatsRange(StatsGranularity granularity, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Начало диапазона статистики должно быть раньше конца");
+        }
+        if (Duration.between(from, to).dividedBy(granularity.getBucketSize()) > MAX_STATS_BUCKETS) {
+            throw new IllegalArgumentException("Диапазон статистики не может содержать больше " + MAX_STATS_BUCKETS
+                                               + " бакетов " + granularity);
+        }
+    }
 
-    private Subscription findSubscriptionOrThrow(Long id) {
-        return subscriptionRepository.findById(id)
+    private Subscription findSubscriptionForUpdateOrThrow(Long id) {
+        return subscriptionRepository.findByIdForUpdate(id)
                 .orElseThrow(() ->
                         new NotFoundException("Подписка на сервис с id = " + id + " не найдена"));
     }
+
+    // юзер, к которому переносится подписка, не проверяется отдельным запросом: его отсутствие - нарушение
+    // внешнего ключа subscriptions.user_id в том же UPDATE
+    private PatchedSubscription patchOrThrow(Long subscriptionId, UpdateSubscriptionRequest changes) {
+        try {
+            return subscriptionRepository.patch(subscriptionId, changes)
+                    .orElseThrow(() ->
+                            new NotFoundException("Подписка на сервис с id = " + subscriptionId + " не найдена"));
+        } catch (DataIntegrityViolationException e) {
+            if (changes.getUserId() == null) {
+                throw e;
+            }
+            throw new NotFoundException("Юзер с id = " + changes.getUserId() + " не найден");
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionStatsDto;
+import by.aleksabrakor.user_subscriptions_service.model.StatsGranularity;
+import by.aleksabrakor.user_subscriptions_service.model.Subscription;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Rollup новых подписок subscription_stats: счетчики по часам и суткам (UTC) в разрезе serviceTitle и plan.
+ * Добавление подписок увеличивает счетчики текущих бакетов upsert-ом в той же транзакции, поэтому откат
+ * добавления откатывает и счетчики. Запросы по диапазону читают только rollup - за год это тысячи строк
+ * вместо сканирования subscriptions. Изменение и удаление подписки счетчики новых подписок не меняют.
+ */
+@Component
+@RequiredArgsConstructor
+public class SubscriptionStats {
+    // бакет считается от created_at подписки в UTC, как в SubscriptionStatsBackfill
+    private static final String UPSERT_SQL = """
+            INSERT INTO subscription_stats (granularity, bucket, service_title, plan, created_count)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (granularity, bucket, service_title, plan)
+            DO UPDATE SET created_count = subscription_stats.created_count + EXCLUDED.created_count
+            """;
+
+    private static final String TOTALS_SQL = """
+            SELECT service_title, NULLIF(plan, '') AS plan, SUM(created_count) AS created_count
+            FROM subscription_stats
+            WHERE granularity = ? AND bucket >= ? AND bucket < ?
+            GROUP BY service_title, plan
+            ORDER BY created_count DESC, service_title, plan
+            """;
+
+    private static final RowMapper<SubscriptionStatsDto> SERIES_ROW_MAPPER = (rs, rowNum) -> new SubscriptionStatsDto(
+            rs.getObject("bucket", LocalDateTime.class),
+            rs.getString("service_title"),
+            rs.getString("plan"),
+            rs.getLong("created_count"));
+
+    private static final RowMapper<SubscriptionStatsDto> TOTALS_ROW_MAPPER = (rs, rowNum) -> new SubscriptionStatsDto(
+            null,
+            rs.getString("service_title"),
+            rs.getString("plan"),
+            rs.getLong("created_count"));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Upsert счетчиков по новым подпискам: пакет сворачивается в одну строку на бакет, serviceTitle и plan.
+     * Бакет берется из created_at подписки (время JVM, в котором его выставил Hibernate и в котором драйвер
+     * передает его в БД), переведенного в UTC. Строки обновляются в порядке ключа, чтобы параллельные транзакции
+     * не взаимоблокировались на горячих бакетах.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordCreated(List<Subscription> subscriptions) {
+        Map<StatKey, Long> counts = new TreeMap<>();
+        for (Subscription subscription : subscriptions) {
+            LocalDateTime createdAtUtc = subscription.getCreatedAt().atZone(ZoneId.systemDefault())
+                    .withZoneSameInstant(ZoneOffset.UTC)
+                    .toLocalDateTime();
+            for (StatsGranularity granularity : StatsGranularity.values()) {
+                counts.merge(new StatKey(granularity, granularity.bucketOf(createdAtUtc),
+                        subscription.getServiceTitle(), Objects.requireNonNullElse(subscription.getPlan(), "")),
+                        1L, Long::sum);
+            }
+        }
+
+        List<Object[]> batchArgs = new ArrayList<>(counts.size());
+        counts.forEach((key, count) -> batchArgs.add(new Object[]{
+                key.granularity().name(), key.bucket(), key.serviceTitle(), key.plan(), count}));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, batchArgs);
+    }
+
+    /**
+     * Ряд по бакетам [from, to), необязательный фильтр по serviceTitle и plan.
+     */
+    public List<SubscriptionStatsDto> findSeries(StatsGranularity granularity, LocalDateTime from, LocalDateTime to,
+                                                 String serviceTitle, String plan) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT bucket, service_title, NULLIF(plan, '') AS plan, created_count
+                FROM subscription_stats
+                WHERE granularity = ? AND bucket >= ? AND bucket < ?""");
+        List<Object> args = new ArrayList<>(List.of(granularity.name(), from, to));
+        if (serviceTitle != null) {
+            sql.append(" AND service_title = ?");
+            args.add(serviceTitle);
+        }
+        if (plan != null) {
+            sql.append(" AND plan = ?");
+            args.add(plan);
+        }
+        // по столбцу таблицы, а не по NULLIF: подписки без плана идут первыми
+        sql.append(" ORDER BY bucket, service_title, subscription_stats.plan");
+        return jdbcTemplate.query(sql.toString(), SERIES_ROW_MAPPER, args.toArray());
+    }
+
+    /**
+     * Сумма по бакетам [from, to) на каждую пару serviceTitle и plan, по убыванию количества.
+     */
+    public List<SubscriptionStatsDto> findTotals(StatsGranularity granularity, LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query(TOTALS_SQL, TOTALS_ROW_MAPPER,
+                granularity.name(), from, to);
+    }
+
+    // порядок первичного ключа subscription_stats
+    private record StatKey(StatsGranularity granularity, LocalDateTime bucket, String serviceTitle, String plan)
+            implements Comparable<StatKey> {
+        private static final Comparator<StatKey> ORDER = Comparator.comparing((StatKey key) -> key.granularity().name())
+                .thenComparing(StatKey::bucket)
+                .thenComparing(StatKey::serviceTitle)
+                .thenComparing(StatKey::plan);
+
+        @Override
+        public int compareTo(StatKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.model.StatsGranularity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Построение rollup-а subscription_stats по существующим подпискам. Пересчитываются только бакеты до границы
+ * (по умолчанию - начало текущих суток UTC), а текущие бакеты ведет SubscriptionStats при добавлении подписок,
+ * поэтому живые счетчики не задваиваются. Подписки, удаленные до пересчета, в истории не учитываются.
+ * Таблица subscriptions делится на диапазоны id по chunk-size, диапазоны агрегируются параллельно
+ * (parallelism потоков), каждый - одним INSERT ... SELECT ... GROUP BY ... ON CONFLICT в своей транзакции
+ * в промежуточную таблицу subscription_stats_staging. Готовая история подменяет старую одной транзакцией,
+ * так что до ее коммита /subscriptions/stats отдает прежние бакеты, а не пустую или частичную историю.
+ */
+@Slf4j
+@Component
+public class SubscriptionStatsBackfill {
+    private static final int MAX_CHUNK_ATTEMPTS = 3;
+
+    // UNLOGGED: промежуточные строки не пишутся в WAL, после сбоя пересчет все равно начинается заново
+    private static final String CREATE_STAGING_SQL =
+            "CREATE UNLOGGED TABLE IF NOT EXISTS subscription_stats_staging (LIKE subscription_stats INCLUDING ALL)";
+
+    private static final String TRUNCATE_STAGING_SQL = "TRUNCATE subscription_stats_staging";
+
+    private static final String DELETE_SQL = "DELETE FROM subscription_stats WHERE bucket < ?";
+
+    // пересчитанная строка замещает ту, что живой upsert успел вставить в прошлый бакет после DELETE_SQL
+    private static final String SWAP_SQL = """
+            INSERT INTO subscription_stats (granularity, bucket, service_title, plan, created_count)
+            SELECT granularity, bucket, service_title, plan, created_count
+            FROM subscription_stats_staging
+            ORDER BY granularity, bucket, service_title, plan
+            ON CONFLICT (granularity, bucket, service_title, plan)
+            DO UPDATE SET created_count = EXCLUDED.created_count
+            """;
+
+    private static final String HAS_HISTORY_SQL = "SELECT EXISTS (SELECT 1 FROM subscription_stats WHERE bucket < ?)";
+
+    private static final String ID_RANGE_SQL = "SELECT MIN(id), MAX(id) FROM subscriptions";
+
+    // строки вставляются в порядке ключа, чтобы параллельные диапазоны не взаимоблокировались на общих бакетах;
+    // created_at приводится к timestamptz, чтобы бакет считался в UTC и для схемы без часового пояса (ddl-auto в тестах)
+    private static final String CHUNK_SQL = """
+            INSERT INTO subscription_stats_staging (granularity, bucket, service_title, plan, created_count)
+            SELECT ?, date_trunc(?, created_at::timestamptz AT TIME ZONE 'UTC'), service_title, COALESCE(plan, ''), COUNT(*)
+            FROM subscriptions
+            WHERE id BETWEEN ? AND ? AND created_at::timestamptz AT TIME ZONE 'UTC' < ?
+            GROUP BY 2, 3, 4
+            ORDER BY 2, 3, 4
+            ON CONFLICT (granularity, bucket, service_title, plan)
+            DO UPDATE SET created_count = subscription_stats_staging.created_count + EXCLUDED.created_count
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean onStartup;
+    private final long chunkSize;
+    private final int parallelism;
+
+    public SubscriptionStatsBackfill(JdbcTemplate jdbcTemplate,
+                                     PlatformTransactionManager transactionManager,
+                                     @Value("${app.subscription-stats.backfill.on-startup}") boolean onStartup,
+                                     @Value("${app.subscription-stats.backfill.chunk-size}") long chunkSize,
+                                     @Value("${app.subscription-stats.backfill.parallelism}") int parallelism) {
+        if (chunkSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("Некорректные параметры пересчета статистики подписок: chunk-size = "
+                                               + chunkSize + ", parallelism = " + parallelism);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.onStartup = onStartup;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * При старте история строится в фоне, только если ее еще нет (первый запуск после миграции).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        LocalDateTime before = startOfTodayUtc();
+        if (!onStartup || Boolean.TRUE.equals(jdbcTemplate.queryForObject(HAS_HISTORY_SQL, Boolean.class, before))) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                backfill(before, parallelism);
+            } catch (RuntimeException e) {
+                log.error("Пересчет статистики подписок при старте не выполнен", e);
+            }
+        }, "subscription-stats-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int backfill() {
+        return backfill(startOfTodayUtc(), parallelism);
+    }
+
+    /**
+     * Пересчет бакетов раньше before (UTC). Одновременно выполняется не больше одного пересчета:
+     * они делят промежуточную таблицу.
+     *
+     * @return количество обработанных диапазонов id
+     */
+    public synchronized int backfill(LocalDateTime before, int parallelism) {
+        long start = System.nanoTime();
+        jdbcTemplate.execute(CREATE_STAGING_SQL);
+        jdbcTemplate.execute(TRUNCATE_STAGING_SQL);
+
+        List<long[]> chunks = jdbcTemplate.query(ID_RANGE_SQL, rs -> {
+            List<long[]> ranges = new ArrayList<>();
+            if (rs.next() && rs.getObject(1) != null) {
+                for (long from = rs.getLong(1), maxId = rs.getLong(2); from <= maxId; from += chunkSize) {
+                    ranges.add(new long[]{from, Math.min(from + chunkSize - 1, maxId)});
+                }
+            }
+            return ranges;
+        });
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable ->
+                new Thread(runnable, "subscription-stats-backfill-" + threadNumber.incrementAndGet()));
+        try {
+            List<Future<?>> futures = new ArrayList<>(chunks.size());
+            for (long[] chunk : chunks) {
+                futures.add(executor.submit(() -> aggregateChunk(chunk[0], chunk[1], before)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Пересчет статистики подписок прерван", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Пересчет статистики подписок не выполнен", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(DELETE_SQL, before);
+            jdbcTemplate.update(SWAP_SQL);
+        });
+        jdbcTemplate.execute(TRUNCATE_STAGING_SQL);
+
+        log.info("Статистика подписок до {} пересчитана: {} диапазонов id по {}, {} потоков, {} мс",
+                before, chunks.size(), chunkSize, parallelism, (System.nanoTime() - start) / 1_000_000);
+        return chunks.size();
+    }
+
+    // при взаимоблокировке параллельных диапазонов на общем бакете диапазон повторяется: его транзакция откатилась целиком
+    private void aggregateChunk(long fromId, long toId, LocalDateTime before) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (StatsGranularity granularity : StatsGranularity.values()) {
+                        jdbcTemplate.update(CHUNK_SQL, granularity.name(), granularity.truncField(), fromId, toId, before);
+                    }
+                });
+                return;
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt == MAX_CHUNK_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("Диапазон id {}..{} статистики подписок повторяется после блокировки: {}",
+                        fromId, toId, e.getMessage());
+            }
+        }
+    }
+
+    private static LocalDateTime startOfTodayUtc() {
+        return LocalDate.now(ZoneOffset.UTC).atStartOfDay();
+    }
+}
@@ -0,0 +1,130 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Префиксное дерево различных serviceTitle для подсказок GET /subscriptions/titles/suggest.
+ * Ключ - название в нижнем регистре, поэтому поиск по префиксу и порядок подсказок без учета регистра;
+ * в узле хранятся исходные названия (разные варианты регистра - разные названия). Подсказки отдаются обходом
+ * поддерева префикса до limit названий, без просмотра остальных. Запись (новое или исчезнувшее название) редкая,
+ * чтение частое, поэтому дерево под ReadWriteLock.
+ */
+final class SubscriptionTitleTrie {
+    private final Node root = new Node();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+
+    void add(String title) {
+        lock.writeLock().lock();
+        try {
+            Node node = root;
+            for (char c : normalize(title).toCharArray()) {
+                node = node.children.computeIfAbsent(c, key -> new Node());
+            }
+            if (node.titles.add(title)) {
+                size++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String title) {
+        lock.writeLock().lock();
+        try {
+            String key = normalize(title);
+            Deque<Node> path = new ArrayDeque<>(key.length() + 1);
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                path.push(node);
+                node = node.children.get(key.charAt(i));
+            }
+            if (node == null || !node.titles.remove(title)) {
+                return;
+            }
+            size--;
+            // ветка без названий удаляется снизу вверх, чтобы дерево не росло от исчезнувших названий
+            for (int i = key.length() - 1; i >= 0 && node.isEmpty(); i--) {
+                Node parent = path.pop();
+                parent.children.remove(key.charAt(i));
+                node = parent;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    List<String> suggest(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            String key = normalize(prefix);
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.children.get(key.charAt(i));
+            }
+            List<String> result = new ArrayList<>(Math.min(limit, size));
+            if (node != null) {
+                collect(node, limit, result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // обход в глубину без рекурсии: длинные названия не растят стек
+    private static void collect(Node start, int limit, List<String> result) {
+        Deque<Iterator<Node>> stack = new ArrayDeque<>();
+        addTitles(start, limit, result);
+        stack.push(start.children.values().iterator());
+        while (!stack.isEmpty() && result.size() < limit) {
+            Iterator<Node> children = stack.peek();
+            if (!children.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Node child = children.next();
+            addTitles(child, limit, result);
+            stack.push(child.children.values().iterator());
+        }
+    }
+
+    private static void addTitles(Node node, int limit, List<String> result) {
+        Iterator<String> titles = node.titles.iterator();
+        while (titles.hasNext() && result.size() < limit) {
+            result.add(titles.next());
+        }
+    }
+
+    private static String normalize(String title) {
+        return title.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new TreeMap<>();
+        private final TreeSet<String> titles = new TreeSet<>();
+
+        boolean isEmpty() {
+            return titles.isEmpty() && children.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Read-through кеш юзеров по id перед UserService.findUserOrThrow. Ограничен по размеру и по времени жизни записи,
+ * статистика (hit/miss/eviction) публикуется в Micrometer как метрики cache.* с тегом cache=users.
+ * В кеше лежат отсоединенные копии User без подписок - их можно ставить в связи (subscription.setUser),
+ * но изменять нельзя: изменения идут через UserRepository с последующим evict. Исключение - счетчик подписок:
+ * он меняется при каждой записи подписок, и копия получает новое значение после коммита вместо evict.
+ */
+@Component
+public class UserCache {
+    static final String CACHE_NAME = "users";
+
+    private final Cache<Long, CachedUser> cache;
+    // номер изменения счетчика подписок; берется под блокировкой строки юзера, поэтому для одного юзера
+    // номера растут в порядке коммитов
+    private final AtomicLong subscriptionCountVersions = new AtomicLong();
+
+    public UserCache(@Value("${app.user-cache.max-size}") long maxSize,
+                     @Value("${app.user-cache.ttl}") Duration ttl,
+                     MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Возвращает юзера из кеша, при промахе загружает его loader-ом. Отсутствие юзера не кешируется.
+     */
+    public Optional<User> get(Long id, Function<Long, Optional<User>> loader) {
+        // один вызов get: hit или miss записывается в статистику один раз
+        boolean[] loadedHere = new boolean[1];
+        CachedUser cached = cache.get(id, key -> {
+            CachedUser loaded = loader.apply(key)
+                    .map(user -> new CachedUser(detachedCopy(user), 0))
+                    .orElse(null);
+            loadedHere[0] = loaded != null;
+            return loaded;
+        });
+        if (loadedHere[0]) {
+            // юзер мог быть создан в текущей транзакции - при ее откате запись из кеша убирается
+            evictAfterCompletion(id, TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        return Optional.ofNullable(cached).map(CachedUser::user);
+    }
+
+    /**
+     * Удаляет юзера из кеша сразу и еще раз после завершения транзакции, чтобы не осталась версия,
+     * прочитанная параллельным запросом до коммита.
+     */
+    public void evict(Long id) {
+        cache.invalidate(id);
+        evictAfterCompletion(id, null);
+    }
+
+    /**
+     * Новое значение счетчика подписок юзера, возвращенное UPDATE-ом, который держит блокировку строки юзера.
+     * После коммита оно записывается в закешированную копию; если юзера в кеше нет, ничего не делается.
+     * Запоздавший afterCommit более ранней транзакции не перетирает значение более поздней.
+     */
+    public void updateSubscriptionCount(Long id, int subscriptionCount) {
+        long version = subscriptionCountVersions.incrementAndGet();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            applySubscriptionCount(id, subscriptionCount, version);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                applySubscriptionCount(id, subscriptionCount, version);
+            }
+        });
+    }
+
+    // загрузка юзера и запись счетчика для одного id сериализованы compute кеша: значение, прочитанное до коммита,
+    // будет перезаписано, а прочитанное после - уже актуально
+    private void applySubscriptionCount(Long id, int subscriptionCount, long version) {
+        cache.asMap().computeIfPresent(id, (key, cached) -> {
+            if (cached.subscriptionCountVersion() > version) {
+                return cached;
+            }
+            User updated = detachedCopy(cached.user());
+            updated.setSubscriptionCount(subscriptionCount);
+            return new CachedUser(updated, version);
+        });
+    }
+
+    private void evictAfterCompletion(Long id, Integer onlyOnStatus) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (onlyOnStatus == null || onlyOnStatus == status) {
+                    cache.invalidate(id);
+                }
+            }
+        });
+    }
+
+    private record CachedUser(User user, long subscriptionCountVersion) {
+    }
+
+    private static User detachedCopy(User user) {
+        return new User(user.getId(), user.getName(), user.getEmail(), user.getCreatedAt(), user.getUpdatedAt(),
+                user.getSubscriptionCount(), null);
+    }
+}
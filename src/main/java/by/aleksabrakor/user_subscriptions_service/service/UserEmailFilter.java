@@ -0,0 +1,261 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Счетный Bloom-фильтр email-ов юзеров (в нижнем регистре) для проверки уникальности email без запроса в БД.
+ * Если фильтр говорит "точно нет" - existsByEmail не выполняется; при "возможно есть" проверка идет в БД.
+ * Ложноотрицательных ответов фильтр не дает, а последней защитой остается unique-ограничение на users.email.
+ * Счетчики вместо битов позволяют удалять email при удалении юзера и смене email.
+ * Целевая и оценочная доля ложноположительных ответов публикуются как метрики users.email.filter.fpp.
+ */
+@Slf4j
+@Component
+public class UserEmailFilter {
+    private final UserRepository userRepository;
+    private final long expectedInsertions;
+    private final double fpp;
+
+    // null - фильтр еще не загружен, пока любой email считается "возможно есть"
+    private volatile CountingBloomFilter filter;
+
+    public UserEmailFilter(UserRepository userRepository,
+                           @Value("${app.user-email-filter.expected-insertions}") long expectedInsertions,
+                           @Value("${app.user-email-filter.fpp}") double fpp,
+                           MeterRegistry meterRegistry) {
+        if (expectedInsertions < 1 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("Некорректные параметры фильтра email: expected-insertions = "
+                                               + expectedInsertions + ", fpp = " + fpp);
+        }
+        this.userRepository = userRepository;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+
+        Gauge.builder("users.email.filter.fpp", this, UserEmailFilter::estimatedFpp)
+                .description("Оценка доли ложноположительных ответов фильтра email")
+                .tag("type", "estimated")
+                .register(meterRegistry);
+        Gauge.builder("users.email.filter.fpp", () -> fpp)
+                .description("Целевая доля ложноположительных ответов фильтра email")
+                .tag("type", "configured")
+                .register(meterRegistry);
+        Gauge.builder("users.email.filter.size", this, UserEmailFilter::size)
+                .description("Количество email в фильтре")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Построение фильтра по всем users.email. Размер берется с запасом: не меньше expected-insertions
+     * и не меньше удвоенного текущего количества юзеров.
+     */
+    @Transactional(readOnly = true)
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long capacity = Math.max(expectedInsertions, userRepository.count() * 2);
+        try (Stream<String> emails = userRepository.streamAllEmails()) {
+            load(emails, capacity);
+        }
+    }
+
+    void load(Stream<String> emails, long capacity) {
+        CountingBloomFilter newFilter = new CountingBloomFilter(capacity, fpp);
+        emails.forEach(email -> newFilter.add(normalize(email)));
+        filter = newFilter;
+        log.info("Фильтр email юзеров загружен: {} email, {} счетчиков, {} хеш-функций",
+                newFilter.size(), newFilter.counters.length, newFilter.hashFunctions);
+    }
+
+    public boolean mightContain(String email) {
+        CountingBloomFilter current = filter;
+        return current == null || email == null || current.mightContain(normalize(email));
+    }
+
+    /**
+     * Добавление email сразу (лишний email дает только ложноположительный ответ);
+     * если транзакция откатится - email убирается.
+     */
+    public void add(String email) {
+        CountingBloomFilter current = filter;
+        if (current == null || email == null) {
+            return;
+        }
+        String normalized = normalize(email);
+        current.add(normalized);
+        afterCompletion(status -> {
+            if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+                current.remove(normalized);
+            }
+        });
+    }
+
+    /**
+     * Пакетное добавление (импорт). При откате транзакции email не убираются: лишние email
+     * дают только ложноположительные ответы, а запоминать весь пакет ради компенсации дорого.
+     */
+    public void addAll(Stream<String> emails) {
+        CountingBloomFilter current = filter;
+        if (current == null) {
+            return;
+        }
+        emails.filter(Objects::nonNull).forEach(email -> current.add(normalize(email)));
+    }
+
+    /**
+     * Удаление email только после коммита: до него email еще занят в БД.
+     */
+    public void remove(String email) {
+        CountingBloomFilter current = filter;
+        if (current == null || email == null) {
+            return;
+        }
+        String normalized = normalize(email);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            current.remove(normalized);
+            return;
+        }
+        afterCompletion(status -> {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                current.remove(normalized);
+            }
+        });
+    }
+
+    double estimatedFpp() {
+        CountingBloomFilter current = filter;
+        return current == null ? 1.0 : current.estimatedFpp();
+    }
+
+    long size() {
+        CountingBloomFilter current = filter;
+        return current == null ? 0 : current.size();
+    }
+
+    private static void afterCompletion(IntConsumer action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.accept(status);
+                }
+            });
+        }
+    }
+
+    private static String normalize(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Bloom-фильтр с 8-битными счетчиками. Позиции считаются двойным хешированием (Kirsch-Mitzenmacher)
+     * от 64-битного FNV-1a с финальным перемешиванием. Насыщенный счетчик (255) больше не уменьшается,
+     * чтобы удаление не могло дать ложноотрицательный ответ.
+     */
+    static final class CountingBloomFilter {
+        private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long FNV_PRIME = 0x100000001b3L;
+        private static final int MAX_COUNTER = 0xFF;
+
+        private final byte[] counters;
+        private final int hashFunctions;
+        private long size;
+
+        CountingBloomFilter(long capacity, double fpp) {
+            long bits = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            this.counters = new byte[(int) Math.min(Math.max(bits, 64), Integer.MAX_VALUE - 8)];
+            this.hashFunctions = Math.max(1, (int) Math.round((double) counters.length / capacity * Math.log(2)));
+        }
+
+        synchronized void add(String value) {
+            long hash1 = hash(value);
+            long hash2 = secondHash(hash1);
+            for (int i = 0; i < hashFunctions; i++) {
+                int index = index(hash1, hash2, i);
+                int counter = counters[index] & MAX_COUNTER;
+                if (counter < MAX_COUNTER) {
+                    counters[index] = (byte) (counter + 1);
+                }
+            }
+            size++;
+        }
+
+        synchronized void remove(String value) {
+            if (!mightContain(value)) {
+                return;
+            }
+            long hash1 = hash(value);
+            long hash2 = secondHash(hash1);
+            for (int i = 0; i < hashFunctions; i++) {
+                int index = index(hash1, hash2, i);
+                int counter = counters[index] & MAX_COUNTER;
+                if (counter > 0 && counter < MAX_COUNTER) {
+                    counters[index] = (byte) (counter - 1);
+                }
+            }
+            size--;
+        }
+
+        synchronized boolean mightContain(String value) {
+            long hash1 = hash(value);
+            long hash2 = secondHash(hash1);
+            for (int i = 0; i < hashFunctions; i++) {
+                if (counters[index(hash1, hash2, i)] == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        synchronized long size() {
+            return size;
+        }
+
+        // (1 - e^(-k*n/m))^k
+        synchronized double estimatedFpp() {
+            return Math.pow(1 - Math.exp(-(double) hashFunctions * size / counters.length), hashFunctions);
+        }
+
+        private int index(long hash1, long hash2, int i) {
+            return (int) Math.floorMod(hash1 + i * hash2, (long) counters.length);
+        }
+
+        private static long hash(String value) {
+            long hash = FNV_OFFSET_BASIS;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xFF;
+                hash *= FNV_PRIME;
+            }
+            return fmix64(hash);
+        }
+
+        // второй хеш должен быть нечетным, чтобы шаг не вырождался
+        private static long secondHash(long hash1) {
+            return fmix64(hash1 ^ FNV_PRIME) | 1;
+        }
+
+        // финальное перемешивание из MurmurHash3
+        private static long fmix64(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9e53ae41a53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.UserImportResultDto;
+import by.aleksabrakor.user_subscriptions_service.exception.NotCreatedException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Массовый импорт юзеров: тело запроса (CSV или NDJSON) потоком уходит через COPY во временную
+ * staging-таблицу, затем одним INSERT ... SELECT ... ON CONFLICT переносится в users.
+ * Строки, нарушающие ограничения UserDto, в users не попадают и возвращаются как отклоненные.
+ * Весь входной файл в памяти не держится.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserImportService {
+    private static final MediaType TEXT_CSV = new MediaType("text", "csv");
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int DUPLICATE_SAMPLE_SIZE = 100;
+    private static final int REJECTED_SAMPLE_SIZE = 100;
+    // шаг users_id_seq и allocationSize в User
+    private static final int ID_BLOCK_SIZE = 50;
+    private static final int FETCH_SIZE = 1000;
+
+    private static final String CREATE_STAGING_SQL = """
+            CREATE TEMP TABLE users_import_staging (
+                line  BIGSERIAL,
+                name  VARCHAR(255),
+                email VARCHAR(255)
+            ) ON COMMIT DROP
+            """;
+
+    private static final String COPY_CSV_WITH_HEADER_SQL =
+            "COPY users_import_staging (name, email) FROM STDIN WITH (FORMAT csv, HEADER true)";
+
+    private static final String COPY_CSV_SQL =
+            "COPY users_import_staging (name, email) FROM STDIN WITH (FORMAT csv)";
+
+    // @Email без quoted local part и IP-литералов в домене
+    private static final String EMAIL_PATTERN =
+            "^[[:alnum:]!#$%&'*+/=?^_`{|}~-]+(\\.[[:alnum:]!#$%&'*+/=?^_`{|}~-]+)*@[[:alnum:]-]+(\\.[[:alnum:]-]+)*$";
+
+    // Строки проверяются как UserDto (@NotBlank @Size(min = 2) name, @NotBlank @Email email), остальные - отклоненные.
+    // Из повторов email внутри файла берется первая строка; строки, не попавшие в users, считаются дублями.
+    // id выдаются блоками, как pooled optimizer Hibernate: один nextval на ID_BLOCK_SIZE строк, значение - конец
+    // блока (hi - ID_BLOCK_SIZE, hi]. Начальное значение новой последовательности (меньше шага) концом блока не считается,
+    // поэтому берется один запасной блок
+    private static final String MERGE_SQL = """
+            WITH valid AS (
+                SELECT line, name, email
+                FROM users_import_staging
+                WHERE name ~ '[^[:space:]]' AND char_length(name) >= 2 AND email ~ ?
+            ), firsts AS (
+                SELECT DISTINCT ON (email) line, name, email
+                FROM valid
+                ORDER BY email, line
+            ), numbered AS (
+                SELECT line, name, email, row_number() OVER (ORDER BY line) - 1 AS n
+                FROM firsts
+            ), allocated AS (
+                SELECT nextval('users_id_seq') AS hi
+                FROM generate_series(1, (SELECT (COUNT(*) + ? - 1) / ? + 1 FROM firsts))
+            ), blocks AS (
+                SELECT row_number() OVER (ORDER BY hi) - 1 AS block, hi
+                FROM allocated
+                WHERE hi >= ?
+            ), inserted AS (
+                INSERT INTO users (id, name, email, created_at, updated_at)
+                SELECT b.hi - ? + 1 + f.n % ?, f.name, f.email, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP
+                FROM numbered f
+                         JOIN blocks b ON b.block = f.n / ?
+                ORDER BY f.line
+                ON CONFLICT (email) DO NOTHING
+                RETURNING email
+            ), duplicates AS (
+                SELECT s.line, s.email
+                FROM valid s
+                WHERE NOT EXISTS (SELECT 1
+                                  FROM firsts f
+                                           JOIN inserted i ON i.email = f.email
+                                  WHERE f.line = s.line)
+            ), rejected AS (
+                SELECT s.line
+                FROM users_import_staging s
+                WHERE NOT EXISTS (SELECT 1 FROM valid v WHERE v.line = s.line)
+            )
+            SELECT (SELECT COUNT(*) FROM inserted)   AS imported,
+                   (SELECT COUNT(*) FROM duplicates) AS duplicates,
+                   ARRAY(SELECT email FROM duplicates ORDER BY line LIMIT ?) AS duplicate_emails,
+                   (SELECT COUNT(*) FROM rejected)   AS rejected,
+                   ARRAY(SELECT line FROM rejected ORDER BY line LIMIT ?) AS rejected_rows
+            """;
+
+    // Email-ы импорта для UserEmailFilter; уже существовавшие email попадут в фильтр повторно, что безопасно
+    private static final String STAGING_EMAILS_SQL = "SELECT email FROM users_import_staging";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final UserEmailFilter userEmailFilter;
+
+    @Transactional
+    public UserImportResultDto importUsers(InputStream body, MediaType contentType) {
+        long start = System.nanoTime();
+        jdbcTemplate.execute(CREATE_STAGING_SQL);
+
+        long received = copyToStaging(body, contentType);
+
+        UserImportResultDto result = jdbcTemplate.queryForObject(MERGE_SQL, (rs, rowNum) -> new UserImportResultDto(
+                received,
+                rs.getLong("imported"),
+                rs.getLong("duplicates"),
+                Arrays.asList((String[]) rs.getArray("duplicate_emails").getArray()),
+                rs.getLong("rejected"),
+                Arrays.asList((Long[]) rs.getArray("rejected_rows").getArray()),
+                0,
+                0
+        ), EMAIL_PATTERN, ID_BLOCK_SIZE, ID_BLOCK_SIZE, ID_BLOCK_SIZE, ID_BLOCK_SIZE, ID_BLOCK_SIZE, ID_BLOCK_SIZE,
+                DUPLICATE_SAMPLE_SIZE, REJECTED_SAMPLE_SIZE);
+        addImportedEmailsToFilter();
+
+        long elapsedNanos = System.nanoTime() - start;
+        result.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        result.setRowsPerSecond(elapsedNanos == 0 ? 0 : received * 1_000_000_000.0 / elapsedNanos);
+        log.info("Импорт юзеров: получено {}, добавлено {}, дублей {}, отклонено {}, {} мс, {} строк/сек",
+                received, result.getImported(), result.getDuplicates(), result.getRejected(),
+                result.getElapsedMillis(), Math.round(result.getRowsPerSecond()));
+        return result;
+    }
+
+    private void addImportedEmailsToFilter() {
+        try (Stream<String> emails = jdbcTemplate.queryForStream(connection -> {
+            PreparedStatement statement = connection.prepareStatement(STAGING_EMAILS_SQL);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, (rs, rowNum) -> rs.getString(1))) {
+            userEmailFilter.addAll(emails);
+        }
+    }
+
+    private long copyToStaging(InputStream body, MediaType contentType) {
+        try {
+            // Соединение текущей транзакции: staging-таблица и merge должны идти в одной сессии
+            CopyManager copyManager = DataSourceUtils.getConnection(dataSource)
+                    .unwrap(PGConnection.class)
+                    .getCopyAPI();
+
+            if (TEXT_CSV.isCompatibleWith(contentType)) {
+                return copyManager.copyIn(COPY_CSV_WITH_HEADER_SQL, body, COPY_BUFFER_SIZE);
+            }
+            if (MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType)) {
+                return copyNdjson(copyManager, body);
+            }
+            throw new IllegalArgumentException("Неподдерживаемый формат импорта: " + contentType);
+        } catch (SQLException e) {
+            throw new NotCreatedException("Юзеры не импортированы: " + e.getMessage());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Ошибка чтения тела запроса: " + e.getMessage());
+        }
+    }
+
+    // NDJSON разбирается построчно и пишется в COPY как CSV, без накопления строк в памяти
+    private long copyNdjson(CopyManager copyManager, InputStream body) throws SQLException, IOException {
+        CopyIn copyIn = copyManager.copyIn(COPY_CSV_SQL);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8), COPY_BUFFER_SIZE);
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                byte[] row = toCsvRow(parseNdjsonLine(line, lineNumber)).getBytes(StandardCharsets.UTF_8);
+                copyIn.writeToCopy(row, 0, row.length);
+            }
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private JsonNode parseNdjsonLine(String line, long lineNumber) {
+        try {
+            JsonNode node = objectMapper.readTree(line);
+            if (!node.hasNonNull("name") || !node.hasNonNull("email")) {
+                throw new IllegalArgumentException("Строка " + lineNumber + ": поля name и email обязательны");
+            }
+            return node;
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Строка " + lineNumber + ": некорректный JSON");
+        }
+    }
+
+    private static String toCsvRow(JsonNode node) {
+        return csvField(node.get("name").asText()) + ',' + csvField(node.get("email").asText()) + '\n';
+    }
+
+    private static String csvField(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -6,66 +6,246 @@ import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
 import by.aleksabrakor.user_subscriptions_service.exception.NotCreatedException;
 import by.aleksabrakor.user_subscriptions_service.exception.NotFoundException;
 import by.aleksabrakor.user_subscriptions_service.mapper.UserMapper;
+import by.aleksabrakor.user_subscriptions_service.model.Subscription;
 import by.aleksabrakor.user_subscriptions_service.model.User;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserPatchRepository.PatchedUser;
 import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository.UserVersion;
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 
 @Service
+@Timed("app.service")
 @Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class UserService {
     private final UserRepository userRepository;
     private final UserMapper userMapper;
+    private final UserCache userCache;
+    private final UserEmailFilter userEmailFilter;
+    private final SubscriptionRepository subscriptionRepository;
+    private final SubscriptionPopularityIndex popularityIndex;
+
+    @Value("${app.subscriptions.max-per-user}")
+    private int maxSubscriptionsPerUser;
 
 
     @Transactional
     public UserDto saveUser(UserDto userDto) {
-        if (userRepository.existsByEmail(userDto.getEmail())) {
+        // запрос в БД только если фильтр не может гарантировать, что email свободен
+        if (userEmailFilter.mightContain(userDto.getEmail()) && userRepository.existsByEmail(userDto.getEmail())) {
             throw new NotCreatedException("Этот email уже существует");
         }
         User user = userMapper.userDtoToEntity(userDto);
-        return userMapper.entityToUserDto(userRepository.save(user));
+        User savedUser = saveAndFlushUniqueEmail(user);
+        userEmailFilter.add(savedUser.getEmail());
+        return userMapper.entityToUserDto(savedUser);
     }
 
 
-    public List<UserDto> findAllUsers() {
+    public List<UserDto> findAllUsers(boolean includeSubscriptions) {
+        if (includeSubscriptions) {
+            return userMapper.toDtoList(userRepository.findAllWithSubscriptions());
+        }
+        return userMapper.toDtoListWithoutSubscriptions(userRepository.findAll());
+    }
 
-        return userMapper.toDtoList(userRepository.findAll());
+    public UserDto findUserById(Long id, boolean includeSubscriptions) {
+        if (includeSubscriptions) {
+            return userMapper.entityToUserDto(userRepository.findWithSubscriptionsById(id)
+                    .orElseThrow(() -> new NotFoundException("Юзер с id = " + id + " не найден")));
+        }
+        return userMapper.entityToUserDtoWithoutSubscriptions(findUserOrThrow(id));
     }
 
-    public UserDto findUserById(Long id) {
+    /**
+     * То же, что findUserById, вместе с ETag, посчитанным по загруженным данным - без отдельного запроса версии.
+     */
+    public ETagged<UserDto> findVersionedUserById(Long id, boolean includeSubscriptions) {
+        if (includeSubscriptions) {
+            User user = userRepository.findWithSubscriptionsById(id)
+                    .orElseThrow(() -> new NotFoundException("Юзер с id = " + id + " не найден"));
+            LocalDateTime subscriptionsUpdatedAt = user.getSubscriptions().stream()
+                    .map(Subscription::getUpdatedAt)
+                    .filter(Objects::nonNull)
+                    .max(Comparator.naturalOrder())
+                    .orElse(null);
+            return new ETagged<>(userMapper.entityToUserDto(user), userWithSubscriptionsETag(id,
+                    user.getUpdatedAt(), user.getSubscriptions().size(), subscriptionsUpdatedAt));
+        }
+        User user = findUserOrThrow(id);
+        return new ETagged<>(userMapper.entityToUserDtoWithoutSubscriptions(user), userETag(id, user.getUpdatedAt(),
+                user.getSubscriptionCount()));
+    }
 
-        return userMapper.entityToUserDto(findUserOrThrow(id));
+    /**
+     * Текущий ETag юзера для проверки If-None-Match без загрузки и сериализации тела:
+     * без подписок - по updated_at и счетчику подписок юзера из кеша,
+     * с подписками - одним запросом версий (findUserVersionById).
+     */
+    public String getUserETag(Long id, boolean includeSubscriptions) {
+        if (includeSubscriptions) {
+            UserVersion version = findUserVersionOrThrow(id);
+            return userWithSubscriptionsETag(id, version.getUserUpdatedAt(), version.getSubscriptionCount(),
+                    version.getSubscriptionsUpdatedAt());
+        }
+        User user = findUserOrThrow(id);
+        return userETag(id, user.getUpdatedAt(), user.getSubscriptionCount());
     }
 
     @Transactional
     public UserDto updateUser(UpdateUserRequest userDto, Long id) {
-        User user = findUserOrThrow(id);
+        // изменяется управляемая сущность из БД, а не копия из кеша
+        User user = userRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("Юзер с id = " + id + " не найден"));
+
+        String oldEmail = user.getEmail();
+        String newEmail = userDto.getEmail();
+        boolean emailChanged = newEmail != null && !newEmail.equals(oldEmail);
 
-        if (userRepository.existsByEmailAndIdNot(userDto.getEmail(), id)) {
+        if (emailChanged && userEmailFilter.mightContain(newEmail)
+            && userRepository.existsByEmailAndIdNot(newEmail, id)) {
             throw new NotCreatedException("Этот email уже существует");
         }
         if (userDto.getName() != null) {
             user.setName(userDto.getName());
         }
-        if (userDto.getEmail() != null) {
-            user.setEmail(userDto.getEmail());
+        if (emailChanged) {
+            user.setEmail(newEmail);
+        }
+        userCache.evict(id);
+        User savedUser = saveAndFlushUniqueEmail(user);
+        if (emailChanged) {
+            userEmailFilter.add(newEmail);
+            userEmailFilter.remove(oldEmail);
+        }
+        return userMapper.entityToUserDto(savedUser);
+    }
+
+    /**
+     * PATCH: один UPDATE только переданных полей (RETURNING отдает результат), без загрузки сущности.
+     * updated_at выставляется в том же UPDATE.
+     */
+    @Transactional
+    public UserDto patchUser(UpdateUserRequest changes, Long id) {
+        String newEmail = changes.getEmail();
+        if (changes.getName() == null && newEmail == null) {
+            return findUserById(id, false);
+        }
+        if (newEmail != null && userEmailFilter.mightContain(newEmail)
+            && userRepository.existsByEmailAndIdNot(newEmail, id)) {
+            throw new NotCreatedException("Этот email уже существует");
+        }
+
+        PatchedUser patched;
+        try {
+            patched = userRepository.patch(id, changes.getName(), newEmail)
+                    .orElseThrow(() -> new NotFoundException("Юзер с id = " + id + " не найден"));
+        } catch (DataIntegrityViolationException e) {
+            throw new NotCreatedException("Этот email уже существует");
+        }
+
+        userCache.evict(id);
+        if (newEmail != null && !newEmail.equals(patched.getOldEmail())) {
+            userEmailFilter.add(newEmail);
+            userEmailFilter.remove(patched.getOldEmail());
         }
-        return userMapper.entityToUserDto(userRepository.save(user));
+        return patched.getUser();
     }
 
     @Transactional
     public void deleteUser(Long id) {
-        findUserOrThrow(id);
+        User user = userRepository.findById(id)
+                .orElseThrow(() -> new NotFoundException("Юзер с id = " + id + " не найден"));
+        // подписки удаляются явно, чтобы уменьшить рейтинг популярности на каждую из них
+        subscriptionRepository.deleteByUserIdReturningServiceTitle(id).forEach(popularityIndex::decrement);
         userRepository.deleteById(id);
+        userCache.evict(id);
+        userEmailFilter.remove(user.getEmail());
+    }
+
+    // unique-ограничение на users.email - последняя защита, если проверка выше пропустила дубль (фильтр или гонка)
+    private User saveAndFlushUniqueEmail(User user) {
+        try {
+            return userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            throw new NotCreatedException("Этот email уже существует");
+        }
+    }
+
+    UserVersion findUserVersionOrThrow(Long userId) {
+        return userRepository.findUserVersionById(userId)
+                .orElseThrow(() -> new NotFoundException("Юзер с id = " + userId + " не найден"));
+    }
+
+    /**
+     * Место под count новых подписок юзера: счетчик subscription_count увеличивается одним UPDATE вместе с проверкой
+     * квоты app.subscriptions.max-per-user, без COUNT по subscriptions и без чтения юзера. Строка юзера заблокирована
+     * до конца транзакции, поэтому параллельные добавления не превысят квоту. Вызывается в транзакции записи подписок.
+     */
+    void reserveSubscriptions(Long userId, int count) {
+        Integer subscriptionCount = userRepository.incrementSubscriptionCount(userId, count, maxSubscriptionsPerUser)
+                .orElse(null);
+        if (subscriptionCount == null) {
+            // ничего не обновлено - дополнительный запрос только чтобы отличить 404 от превышения квоты
+            if (!userRepository.existsById(userId)) {
+                throw new NotFoundException("Юзер с id = " + userId + " не найден");
+            }
+            throw new NotCreatedException("У юзера с id = " + userId + " не может быть больше "
+                                          + maxSubscriptionsPerUser + " подписок");
+        }
+        subscriptionCountChanged(userId, subscriptionCount);
+    }
+
+    /**
+     * Перенос подписки к другому юзеру: у нового счетчик увеличивается с проверкой квоты, у прежнего уменьшается.
+     * Строки юзеров блокируются в порядке id, чтобы встречные переносы не взаимоблокировались.
+     */
+    void moveSubscription(Long fromUserId, Long toUserId) {
+        if (fromUserId < toUserId) {
+            releaseSubscription(fromUserId);
+            reserveSubscriptions(toUserId, 1);
+        } else {
+            reserveSubscriptions(toUserId, 1);
+            releaseSubscription(fromUserId);
+        }
+    }
+
+    private void releaseSubscription(Long userId) {
+        userRepository.decrementSubscriptionCount(userId, 1)
+                .ifPresent(subscriptionCount -> subscriptionCountChanged(userId, subscriptionCount));
+    }
+
+    // в кеше лежит юзер вместе со счетчиком подписок: копия обновляется после коммита, а не вытесняется
+    void subscriptionCountChanged(Long userId, int subscriptionCount) {
+        userCache.updateSubscriptionCount(userId, subscriptionCount);
+    }
+
+    private static String userETag(Long id, LocalDateTime updatedAt, int subscriptionCount) {
+        return ETags.weak("user", id, updatedAt, subscriptionCount);
+    }
+
+    private static String userWithSubscriptionsETag(Long id, LocalDateTime updatedAt, long subscriptionCount,
+                                                    LocalDateTime subscriptionsUpdatedAt) {
+        return ETags.weak("user-subscriptions", id, updatedAt, subscriptionCount, subscriptionsUpdatedAt);
     }
 
+    /**
+     * Юзер по id через кеш (UserCache). Возвращается отсоединенная копия без подписок - только для чтения
+     * и для установки связей.
+     */
     User findUserOrThrow(Long userId) {
-        return userRepository.findById(userId)
+        return userCache.get(userId, userRepository::findById)
                 .orElseThrow(() -> new NotFoundException("Юзер с id = " + userId + " не найден"));
     }
 }
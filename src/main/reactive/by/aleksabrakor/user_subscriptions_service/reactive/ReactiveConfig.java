@@ -0,0 +1,22 @@
+package by.aleksabrakor.user_subscriptions_service.reactive;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.orm.jpa.JpaTransactionManager;
+
+/**
+ * Бины реактивной сборки (mvn -P reactive). В ней одновременно работают JPA (Flyway, загрузка индексов при старте,
+ * импорт через COPY) и R2DBC, поэтому менеджеров транзакций два: JPA-менеджер основной для @Transactional,
+ * реактивные сервисы работают через TransactionalOperator поверх R2dbcTransactionManager.
+ */
+@Configuration
+public class ReactiveConfig {
+
+    @Bean
+    @Primary
+    public JpaTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+        return new JpaTransactionManager(entityManagerFactory);
+    }
+}
@@ -0,0 +1,153 @@
+package by.aleksabrakor.user_subscriptions_service.reactive.controller;
+
+import by.aleksabrakor.user_subscriptions_service.dto.PopularSubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionPageDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionStatsDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UpdateSubscriptionRequest;
+import by.aleksabrakor.user_subscriptions_service.model.StatsGranularity;
+import by.aleksabrakor.user_subscriptions_service.reactive.service.ReactiveSubscriptionService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Реактивная реализация контракта SubscriptionController (профиль reactive): те же пути, параметры и DTO.
+ */
+@RestController
+@RequestMapping("/subscriptions")
+@Profile("reactive")
+@Slf4j
+@RequiredArgsConstructor
+public class ReactiveSubscriptionController {
+    private final ReactiveSubscriptionService subscriptionService;
+
+    @PostMapping("/users/{user_id}")
+    public Mono<SubscriptionDto> addSubscriptionToUser(@PathVariable("user_id") Long userId,
+                                                       @RequestBody @Valid SubscriptionDto subscriptionDto) {
+        log.info("POST /subscriptions/users/{userId} — добавление новой подписки на сервис пользователю по id");
+
+        return subscriptionService.addSubscriptionToUser(subscriptionDto, userId);
+    }
+
+    @PostMapping("/users/{user_id}/batch")
+    public Flux<SubscriptionDto> addSubscriptionsToUser(@PathVariable("user_id") Long userId,
+                                                        @RequestBody List<@Valid SubscriptionDto> subscriptionDtos) {
+        log.info("POST /subscriptions/users/{userId}/batch — пакетное добавление {} подписок пользователю по id",
+                subscriptionDtos.size());
+
+        return subscriptionService.addSubscriptionsToUser(subscriptionDtos, userId);
+    }
+
+    @GetMapping()
+    public Mono<SubscriptionPageDto> findAllSubscriptions(@RequestParam(value = "after", required = false) String after,
+                                                          @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        log.info("GET /subscriptions — получение страницы существующих подписок на сервисы");
+
+        return subscriptionService.findAllSubscriptions(after, limit);
+    }
+
+    /**
+     * NDJSON-поток: каждая подписка пишется отдельной строкой, чтение из БД идет по запросу клиента (backpressure).
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<SubscriptionDto> exportSubscriptions() {
+        log.info("GET /subscriptions/export — потоковая выгрузка всех подписок в NDJSON");
+
+        return subscriptionService.exportSubscriptions();
+    }
+
+    @GetMapping("/{subscription_id}")
+    public Mono<SubscriptionDto> getSubscriptionById(@PathVariable("subscription_id") Long subscriptionId) {
+        log.info("GET /subscriptions/{id} — получение подписки на сервис по ID.");
+
+        return subscriptionService.findSubscriptionById(subscriptionId);
+    }
+
+
+    @GetMapping("/users/{user_id}")
+    public Flux<SubscriptionDto> getUserSubscriptions(@PathVariable("user_id") Long userId) {
+        log.info("GET /subscriptions/users/{id} — получение списка всех  подписок на сервисы для пользователя по его id");
+
+        return subscriptionService.getUserSubscriptions(userId);
+    }
+
+    @PutMapping("/{subscription_id}")
+    public Mono<SubscriptionDto> updateSubscription(@RequestBody @Valid UpdateSubscriptionRequest subscriptionDto,
+                                                    @PathVariable("subscription_id") Long subscriptionId) {
+        log.info("PUT /subscriptions/{subscription_id} — обновление подписки на сервис");
+
+        return subscriptionService.updateSubscription(subscriptionDto, subscriptionId);
+    }
+
+    @PatchMapping("/{subscription_id}")
+    public Mono<SubscriptionDto> patchSubscription(@RequestBody @Valid UpdateSubscriptionRequest subscriptionDto,
+                                                   @PathVariable("subscription_id") Long subscriptionId) {
+        log.info("PATCH /subscriptions/{subscription_id} — частичное обновление подписки на сервис");
+
+        return subscriptionService.patchSubscription(subscriptionDto, subscriptionId);
+    }
+
+    @DeleteMapping("/{subscription_id}/users/{user_id}")
+    public Mono<Void> deleteSubscriptionFromUser(@PathVariable("subscription_id") Long subscriptionId,
+                                                 @PathVariable("user_id") Long userId) {
+        log.info("DELETE /subscriptions/{subscriptionId}/users/{userId} — удаление подписки на сервис у пользователя");
+
+        return subscriptionService.deleteSubscriptionFromUser(subscriptionId, userId);
+    }
+
+    @GetMapping("/top")
+    public Mono<List<PopularSubscriptionDto>> getTopPopularSubscriptions(
+            @RequestParam(value = "limit", defaultValue = "3") int limit) {
+        log.info("GET /subscriptions/top — получение ТОП-{} популярных подписок", limit);
+
+        return subscriptionService.getTopPopularSubscriptions(limit);
+    }
+
+    @GetMapping("/search")
+    public Flux<SubscriptionDto> searchSubscriptions(@RequestParam("q") String q,
+                                                     @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        log.info("GET /subscriptions/search — поиск подписок по части названия сервиса '{}'", q);
+
+        return subscriptionService.searchSubscriptions(q, limit);
+    }
+
+    @GetMapping("/titles/suggest")
+    public Mono<List<String>> suggestServiceTitles(@RequestParam("prefix") String prefix,
+                                                   @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        log.info("GET /subscriptions/titles/suggest — подсказки названий сервисов по префиксу '{}'", prefix);
+
+        return subscriptionService.suggestServiceTitles(prefix, limit);
+    }
+
+    @GetMapping("/stats")
+    public Mono<List<SubscriptionStatsDto>> getSubscriptionStats(
+            @RequestParam(value = "granularity", defaultValue = "DAY") StatsGranularity granularity,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "serviceTitle", required = false) String serviceTitle,
+            @RequestParam(value = "plan", required = false) String plan) {
+        log.info("GET /subscriptions/stats — количество новых подписок по {} с {} по {}", granularity, from, to);
+
+        return subscriptionService.getSubscriptionStats(granularity, from, to, serviceTitle, plan);
+    }
+
+    @GetMapping("/stats/totals")
+    public Mono<List<SubscriptionStatsDto>> getSubscriptionStatsTotals(
+            @RequestParam(value = "granularity", defaultValue = "DAY") StatsGranularity granularity,
+            @RequestParam("from") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam("to") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        log.info("GET /subscriptions/stats/totals — количество новых подписок по сервисам с {} по {}", from, to);
+
+        return subscriptionService.getSubscriptionStatsTotals(granularity, from, to);
+    }
+}
@@ -0,0 +1,117 @@
+package by.aleksabrakor.user_subscriptions_service.reactive.controller;
+
+import by.aleksabrakor.user_subscriptions_service.dto.UpdateUserRequest;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserImportResultDto;
+import by.aleksabrakor.user_subscriptions_service.reactive.service.ReactiveUserService;
+import by.aleksabrakor.user_subscriptions_service.service.UserImportService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Реактивная реализация контракта UserController (профиль reactive): те же пути, параметры и DTO.
+ */
+@RestController
+@RequestMapping("/users")
+@Profile("reactive")
+@Slf4j
+@RequiredArgsConstructor
+public class ReactiveUserController {
+    private static final String INCLUDE_SUBSCRIPTIONS = "subscriptions";
+    // сколько DataBuffer-ов тела импорта запрашивается вперед
+    private static final int IMPORT_BUFFER_DEMAND = 16;
+
+    private final ReactiveUserService userService;
+    private final UserImportService userImportService;
+
+
+    @PostMapping
+    public Mono<UserDto> createUser(@RequestBody @Valid UserDto userDto) {
+        log.info("POST /users — создание нового юзера");
+
+        return userService.saveUser(userDto);
+    }
+
+    /**
+     * Импорт идет через COPY по JDBC (UserImportService), поэтому выполняется на boundedElastic,
+     * а тело запроса читается как InputStream с ограниченным запросом буферов.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public Mono<UserImportResultDto> importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                 @RequestBody Flux<DataBuffer> body) {
+        log.info("POST /users/import — массовый импорт юзеров ({})", contentType);
+
+        return Mono.fromCallable(() -> {
+                    try (InputStream inputStream = DataBufferUtils.subscriberInputStream(body, IMPORT_BUFFER_DEMAND)) {
+                        return userImportService.importUsers(inputStream, MediaType.parseMediaType(contentType));
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @GetMapping()
+    public Flux<UserDto> findAllUsers(@RequestParam(value = "include", required = false) List<String> include) {
+        log.info("GET /users — получение списка всех юзеров.");
+
+        return Mono.fromCallable(() -> includesSubscriptions(include))
+                .flatMapMany(userService::findAllUsers);
+    }
+
+    @GetMapping("/{user_id}")
+    public Mono<UserDto> getUser(@PathVariable("user_id") Long userId,
+                                 @RequestParam(value = "include", required = false) List<String> include) {
+        log.info("GET /users/{user_id} — получение юзера по ID.");
+
+        return Mono.fromCallable(() -> includesSubscriptions(include))
+                .flatMap(includeSubscriptions -> userService.findUserById(userId, includeSubscriptions));
+    }
+
+    @PutMapping("/{user_id}")
+    public Mono<UserDto> updateUser(@RequestBody @Valid UpdateUserRequest userDto,
+                                    @PathVariable("user_id") Long userId) {
+        log.info("PUT /Users/{user_id} — обновление юзера.");
+
+        return userService.updateUser(userDto, userId);
+    }
+
+    @PatchMapping("/{user_id}")
+    public Mono<UserDto> patchUser(@RequestBody @Valid UpdateUserRequest userDto,
+                                   @PathVariable("user_id") Long userId) {
+        log.info("PATCH /Users/{user_id} — частичное обновление юзера.");
+
+        return userService.patchUser(userDto, userId);
+    }
+
+
+    @DeleteMapping("/{user_id}")
+    public Mono<Void> deleteUser(@PathVariable("user_id") Long userId) {
+        log.info("DELETE /users/{user_id} — удаление юзера.");
+
+        return userService.deleteUser(userId);
+    }
+
+    private static boolean includesSubscriptions(List<String> include) {
+        if (include == null) {
+            return false;
+        }
+        for (String value : include) {
+            if (!INCLUDE_SUBSCRIPTIONS.equals(value)) {
+                throw new IllegalArgumentException("Неизвестное значение include: " + value);
+            }
+        }
+        return !include.isEmpty();
+    }
+}
@@ -0,0 +1,17 @@
+package by.aleksabrakor.user_subscriptions_service.reactive.mapper;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.reactive.model.SubscriptionRow;
+import by.aleksabrakor.user_subscriptions_service.reactive.model.UserRow;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+
+@Mapper(componentModel = "spring")
+public interface RowDtoMapper {
+
+    @Mapping(target = "subscriptions", ignore = true)
+    UserDto rowToUserDto(UserRow row);
+
+    SubscriptionDto rowToSubscriptionDto(SubscriptionRow row);
+}
@@ -0,0 +1,23 @@
+package by.aleksabrakor.user_subscriptions_service.reactive.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Строка таблицы subscriptions для R2DBC (схема та же, что у JPA-сущности Subscription).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("subscriptions")
+public class SubscriptionRow {
+    @Id
+    private Long id;
+    private String serviceTitle;
+    private String plan;
+    private String description;
+    private Long userId;
+}
@@ -0,0 +1,22 @@
+package by.aleksabrakor.user_subscriptions_service.reactive.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Строка таблицы users для R2DBC (схема та же, что у JPA-сущности User).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table("users")
+public class UserRow {
+    @Id
+    private Long id;
+    private String name;
+    private String email;
+    private Integer subscriptionCount;
+}
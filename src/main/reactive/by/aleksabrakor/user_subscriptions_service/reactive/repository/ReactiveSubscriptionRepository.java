@@ -0,0 +1,50 @@
+package by.aleksabrakor.user_subscriptions_service.reactive.repository;
+
+import by.aleksabrakor.user_subscriptions_service.reactive.model.SubscriptionRow;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveSubscriptionRepository extends R2dbcRepository<SubscriptionRow, Long> {
+    String SUBSCRIPTION_COLUMNS = "id, service_title, plan, description, user_id";
+
+    Flux<SubscriptionRow> findByUserIdOrderById(Long userId);
+
+    @Query("SELECT " + SUBSCRIPTION_COLUMNS + " FROM subscriptions WHERE id > :afterId ORDER BY id LIMIT :limit")
+    Flux<SubscriptionRow> findPageAfterId(long afterId, int limit);
+
+    // pattern экранирован SubscriptionService.containsPattern, индекс - idx_subscriptions_service_title_trgm
+    @Query("SELECT " + SUBSCRIPTION_COLUMNS + " FROM subscriptions WHERE service_title ILIKE :pattern ESCAPE '!' "
+           + "ORDER BY id LIMIT :limit")
+    Flux<SubscriptionRow> searchByServiceTitle(String pattern, int limit);
+
+    @Query("SELECT " + SUBSCRIPTION_COLUMNS + " FROM subscriptions WHERE id = :id FOR UPDATE")
+    Mono<SubscriptionRow> findByIdForUpdate(Long id);
+
+    @Query("INSERT INTO subscriptions (id, service_title, plan, description, user_id, created_at, updated_at) "
+           + "VALUES (nextval('subscriptions_id_seq'), :serviceTitle, :plan, :description, :userId, "
+           + "CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) RETURNING " + SUBSCRIPTION_COLUMNS)
+    Mono<SubscriptionRow> insert(String serviceTitle, String plan, String description, Long userId);
+
+    // null - колонка не меняется
+    @Query("UPDATE subscriptions SET service_title = COALESCE(:serviceTitle, service_title), "
+           + "plan = COALESCE(:plan, plan), description = COALESCE(:description, description), "
+           + "user_id = COALESCE(:userId, user_id), updated_at = CURRENT_TIMESTAMP "
+           + "WHERE id = :id RETURNING " + SUBSCRIPTION_COLUMNS)
+    Mono<SubscriptionRow> update(Long id, String serviceTitle, String plan, String description, Long userId);
+
+    // удаление и уменьшение users.subscription_count одним оператором, как в SubscriptionRepository
+    @Query("WITH deleted AS ("
+           + "DELETE FROM subscriptions WHERE id = :id AND user_id = :userId RETURNING service_title), "
+           + "counted AS ("
+           + "UPDATE users SET subscription_count = subscription_count - 1 "
+           + "WHERE id = :userId AND EXISTS (SELECT 1 FROM deleted)) "
+           + "SELECT service_title FROM deleted")
+    Flux<String> deleteByIdAndUserIdReturningServiceTitle(Long id, Long userId);
+
+    // все подписки юзера до удаления самого юзера, как в SubscriptionRepository
+    @Query("WITH deleted AS (DELETE FROM subscriptions WHERE user_id = :userId RETURNING service_title) "
+           + "SELECT service_title FROM deleted")
+    Flux<String> deleteByUserIdReturningServiceTitle(Long userId);
+}
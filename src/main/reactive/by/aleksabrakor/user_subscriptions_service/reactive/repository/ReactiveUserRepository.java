@@ -0,0 +1,42 @@
+package by.aleksabrakor.user_subscriptions_service.reactive.repository;
+
+import by.aleksabrakor.user_subscriptions_service.reactive.model.UserRow;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface ReactiveUserRepository extends R2dbcRepository<UserRow, Long> {
+
+    Mono<Boolean> existsByEmail(String email);
+
+    Mono<Boolean> existsByEmailAndIdNot(String email, Long id);
+
+    Flux<UserRow> findAllByOrderById();
+
+    // id из той же sequence, что и у Hibernate (как при импорте): значение nextval не попадает в чужие блоки pooled-оптимизатора
+    @Query("INSERT INTO users (id, name, email, created_at, updated_at) "
+           + "VALUES (nextval('users_id_seq'), :name, :email, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) "
+           + "RETURNING id, name, email, subscription_count")
+    Mono<UserRow> insert(String name, String email);
+
+    // null - колонка не меняется
+    @Query("UPDATE users SET name = COALESCE(:name, name), email = COALESCE(:email, email), "
+           + "updated_at = CURRENT_TIMESTAMP WHERE id = :id RETURNING id, name, email, subscription_count")
+    Mono<UserRow> update(Long id, String name, String email);
+
+    // счетчик подписок с проверкой квоты одним UPDATE, как в UserRepository; 0 - юзера нет или квота будет превышена
+    @Modifying
+    @Query("UPDATE users SET subscription_count = subscription_count + :count "
+           + "WHERE id = :id AND subscription_count + :count <= :maxCount")
+    Mono<Integer> incrementSubscriptionCount(Long id, int count, int maxCount);
+
+    @Modifying
+    @Query("UPDATE users SET subscription_count = subscription_count - :count WHERE id = :id")
+    Mono<Integer> decrementSubscriptionCount(Long id, int count);
+
+    @Modifying
+    @Query("DELETE FROM users WHERE id = :id")
+    Mono<Integer> deleteUserById(Long id);
+}
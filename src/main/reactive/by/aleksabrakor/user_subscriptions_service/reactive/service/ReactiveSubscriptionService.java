@@ -0,0 +1,334 @@
+package by.aleksabrakor.user_subscriptions_service.reactive.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.PopularSubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionPageDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionStatsDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UpdateSubscriptionRequest;
+import by.aleksabrakor.user_subscriptions_service.exception.NotCreatedException;
+import by.aleksabrakor.user_subscriptions_service.exception.NotFoundException;
+import by.aleksabrakor.user_subscriptions_service.model.StatsGranularity;
+import by.aleksabrakor.user_subscriptions_service.model.SubscriptionEventType;
+import by.aleksabrakor.user_subscriptions_service.reactive.mapper.RowDtoMapper;
+import by.aleksabrakor.user_subscriptions_service.reactive.model.SubscriptionRow;
+import by.aleksabrakor.user_subscriptions_service.reactive.repository.ReactiveSubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.reactive.repository.ReactiveUserRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionPopularityIndex;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionService;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionStats;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static by.aleksabrakor.user_subscriptions_service.service.SubscriptionService.MAX_BATCH_SIZE;
+import static by.aleksabrakor.user_subscriptions_service.service.SubscriptionService.MAX_PAGE_SIZE;
+import static by.aleksabrakor.user_subscriptions_service.service.SubscriptionService.MAX_TOP_SIZE;
+
+/**
+ * Реактивный аналог SubscriptionService поверх R2DBC: те же DTO, ограничения и ошибки.
+ * Рейтинг популярности общий с servlet-стеком и меняется после коммита транзакции.
+ * События изменения подписок пишутся в subscription_outbox в той же транзакции R2DBC, доставляет их тот же
+ * SubscriptionOutboxRelay.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ReactiveSubscriptionService {
+    // как SubscriptionStats.recordCreated, по строке на подписку; бакет от created_at, как в SubscriptionStatsBackfill
+    private static final String STATS_UPSERT_SQL = """
+            INSERT INTO subscription_stats (granularity, bucket, service_title, plan, created_count)
+            SELECT :granularity, date_trunc(:field, created_at::timestamptz AT TIME ZONE 'UTC'), service_title,
+                   COALESCE(plan, ''), 1
+            FROM subscriptions
+            WHERE id = :id
+            ON CONFLICT (granularity, bucket, service_title, plan)
+            DO UPDATE SET created_count = subscription_stats.created_count + EXCLUDED.created_count
+            """;
+    // как SubscriptionOutbox; id берется из DEFAULT nextval('subscription_outbox_id_seq')
+    private static final String OUTBOX_INSERT_SQL = """
+            INSERT INTO subscription_outbox (event_type, subscription_id, user_id, service_title, plan, description)
+            VALUES (:eventType, :subscriptionId, :userId, :serviceTitle, :plan, :description)
+            """;
+
+    private final ReactiveSubscriptionRepository subscriptionRepository;
+    private final ReactiveUserRepository userRepository;
+    private final RowDtoMapper rowDtoMapper;
+    private final SubscriptionPopularityIndex popularityIndex;
+    private final SubscriptionStats subscriptionStats;
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+
+    @Value("${app.subscriptions.max-per-user}")
+    private int maxSubscriptionsPerUser;
+
+
+    public Mono<SubscriptionDto> addSubscriptionToUser(SubscriptionDto subscriptionDto, Long userId) {
+        return reserveSubscriptions(userId, 1)
+                .then(insert(subscriptionDto, userId))
+                .as(transactionalOperator::transactional);
+    }
+
+    public Flux<SubscriptionDto> addSubscriptionsToUser(List<SubscriptionDto> subscriptionDtos, Long userId) {
+        if (subscriptionDtos == null || subscriptionDtos.isEmpty() || subscriptionDtos.size() > MAX_BATCH_SIZE) {
+            return Flux.error(new IllegalArgumentException(
+                    "Количество подписок в пакете должно быть от 1 до " + MAX_BATCH_SIZE));
+        }
+        return reserveSubscriptions(userId, subscriptionDtos.size())
+                .thenMany(Flux.fromIterable(subscriptionDtos).concatMap(dto -> insert(dto, userId)))
+                .as(transactionalOperator::transactional);
+    }
+
+
+    public Mono<SubscriptionPageDto> findAllSubscriptions(String afterCursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return Mono.error(new IllegalArgumentException("limit должен быть в диапазоне от 1 до " + MAX_PAGE_SIZE));
+        }
+        return Mono.fromCallable(() ->
+                        afterCursor == null || afterCursor.isBlank() ? 0L : SubscriptionService.decodeCursor(afterCursor))
+                // на одну запись больше, чтобы понять, есть ли следующая страница, без отдельного COUNT
+                .flatMap(afterId -> subscriptionRepository.findPageAfterId(afterId, limit + 1)
+                        .map(rowDtoMapper::rowToSubscriptionDto)
+                        .collectList())
+                .map(subscriptions -> {
+                    if (subscriptions.size() <= limit) {
+                        return new SubscriptionPageDto(subscriptions, null);
+                    }
+                    List<SubscriptionDto> page = subscriptions.subList(0, limit);
+                    return new SubscriptionPageDto(page, SubscriptionService.encodeCursor(page.get(limit - 1).getId()));
+                });
+    }
+
+    /**
+     * Все подписки потоком. Строки читаются из БД пачками по fetch size по мере запроса подписчика,
+     * поэтому медленный клиент притормаживает чтение из БД, а не копит строки в памяти.
+     */
+    public Flux<SubscriptionDto> exportSubscriptions() {
+        return databaseClient.sql("SELECT " + ReactiveSubscriptionRepository.SUBSCRIPTION_COLUMNS
+                                  + " FROM subscriptions ORDER BY id")
+                .filter(statement -> statement.fetchSize(SubscriptionRepository.EXPORT_FETCH_SIZE))
+                .map(row -> new SubscriptionDto(
+                        row.get("id", Long.class),
+                        row.get("service_title", String.class),
+                        row.get("plan", String.class),
+                        row.get("description", String.class),
+                        row.get("user_id", Long.class)))
+                .all()
+                .doOnComplete(() -> log.info("Выгрузка подписок завершена"));
+    }
+
+    public Mono<SubscriptionDto> findSubscriptionById(Long id) {
+        return subscriptionRepository.findById(id)
+                .map(rowDtoMapper::rowToSubscriptionDto)
+                .switchIfEmpty(Mono.error(() -> subscriptionNotFound(id)));
+    }
+
+    public Flux<SubscriptionDto> getUserSubscriptions(Long userId) {
+        return requireUser(userId)
+                .thenMany(subscriptionRepository.findByUserIdOrderById(userId))
+                .map(rowDtoMapper::rowToSubscriptionDto);
+    }
+
+
+    /**
+     * PUT и PATCH: строка блокируется (FOR UPDATE), затем один UPDATE переданных полей с RETURNING.
+     */
+    public Mono<SubscriptionDto> updateSubscription(UpdateSubscriptionRequest changes, Long subscriptionId) {
+        return subscriptionRepository.findByIdForUpdate(subscriptionId)
+                .switchIfEmpty(Mono.error(() -> subscriptionNotFound(subscriptionId)))
+                .flatMap(old -> moveSubscription(old.getUserId(), changes.getUserId())
+                        .then(subscriptionRepository.update(subscriptionId, changes.getServiceTitle(),
+                                changes.getPlan(), changes.getDescription(), changes.getUserId()))
+                        .flatMap(updated -> recordEvent(SubscriptionEventType.UPDATED, updated).thenReturn(updated))
+                        .flatMap(updated -> {
+                            if (updated.getServiceTitle().equals(old.getServiceTitle())) {
+                                return Mono.just(updated);
+                            }
+                            return adjustPopularity(popularityIndex, change -> change
+                                    .decrement(old.getServiceTitle())
+                                    .increment(updated.getServiceTitle()))
+                                    .thenReturn(updated);
+                        }))
+                .map(rowDtoMapper::rowToSubscriptionDto)
+                .as(transactionalOperator::transactional);
+    }
+
+    public Mono<SubscriptionDto> patchSubscription(UpdateSubscriptionRequest changes, Long subscriptionId) {
+        if (changes.getServiceTitle() == null && changes.getPlan() == null
+            && changes.getDescription() == null && changes.getUserId() == null) {
+            return findSubscriptionById(subscriptionId);
+        }
+        return updateSubscription(changes, subscriptionId);
+    }
+
+    public Mono<Void> deleteSubscriptionFromUser(Long subscriptionId, Long userId) {
+        return subscriptionRepository.deleteByIdAndUserIdReturningServiceTitle(subscriptionId, userId)
+                .collectList()
+                .flatMap(deletedTitles -> {
+                    if (!deletedTitles.isEmpty()) {
+                        return recordEvent(SubscriptionEventType.DELETED, subscriptionId, userId,
+                                deletedTitles.get(0), null, null)
+                                .then(adjustPopularity(popularityIndex,
+                                        change -> deletedTitles.forEach(change::decrement)));
+                    }
+                    // ничего не удалено - дополнительные запросы только чтобы вернуть прежние 404/400
+                    return subscriptionRepository.existsById(subscriptionId)
+                            .flatMap(exists -> exists
+                                    ? requireUser(userId).then(Mono.<Void>error(
+                                            new IllegalArgumentException("У  подписки другой пользователь")))
+                                    : Mono.<Void>error(subscriptionNotFound(subscriptionId)));
+                })
+                .as(transactionalOperator::transactional);
+    }
+
+
+    public Mono<List<PopularSubscriptionDto>> getTopPopularSubscriptions(int limit) {
+        if (limit < 1 || limit > MAX_TOP_SIZE) {
+            return Mono.error(new IllegalArgumentException("limit должен быть в диапазоне от 1 до " + MAX_TOP_SIZE));
+        }
+        // рейтинг в памяти, но до первой загрузки top() читает БД через JPA - поэтому не на event loop
+        return Mono.fromCallable(() -> popularityIndex.top(limit))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Flux<SubscriptionDto> searchSubscriptions(String q, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return Flux.error(new IllegalArgumentException("limit должен быть в диапазоне от 1 до " + MAX_PAGE_SIZE));
+        }
+        return Mono.fromCallable(() -> SubscriptionService.containsPattern(q))
+                .flatMapMany(pattern -> subscriptionRepository.searchByServiceTitle(pattern, limit))
+                .map(rowDtoMapper::rowToSubscriptionDto);
+    }
+
+    // подсказки из префиксного дерева рейтинга; до первой загрузки рейтинга - через JPA, поэтому не на event loop
+    public Mono<List<String>> suggestServiceTitles(String prefix, int limit) {
+        if (limit < 1 || limit > MAX_TOP_SIZE) {
+            return Mono.error(new IllegalArgumentException("limit должен быть в диапазоне от 1 до " + MAX_TOP_SIZE));
+        }
+        return Mono.fromCallable(() -> popularityIndex.suggestTitles(prefix, limit))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    // rollup читается через JDBC, как и рейтинг - поэтому не на event loop
+    public Mono<List<SubscriptionStatsDto>> getSubscriptionStats(StatsGranularity granularity, LocalDateTime from,
+                                                                 LocalDateTime to, String serviceTitle, String plan) {
+        return Mono.fromCallable(() -> {
+                    SubscriptionService.checkStatsRange(granularity, from, to);
+                    return subscriptionStats.findSeries(granularity, from, to, serviceTitle, plan);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Mono<List<SubscriptionStatsDto>> getSubscriptionStatsTotals(StatsGranularity granularity,
+                                                                       LocalDateTime from, LocalDateTime to) {
+        return Mono.fromCallable(() -> {
+                    SubscriptionService.checkStatsRange(granularity, from, to);
+                    return subscriptionStats.findTotals(granularity, from, to);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+
+    private Mono<SubscriptionDto> insert(SubscriptionDto subscriptionDto, Long userId) {
+        return subscriptionRepository.insert(subscriptionDto.getServiceTitle(), subscriptionDto.getPlan(),
+                        subscriptionDto.getDescription(), userId)
+                .flatMap(saved -> recordCreated(saved.getId())
+                        .then(recordEvent(SubscriptionEventType.CREATED, saved))
+                        .thenReturn(saved))
+                .flatMap(saved -> adjustPopularity(popularityIndex, change -> change.increment(saved.getServiceTitle()))
+                        .thenReturn(saved))
+                .map(rowDtoMapper::rowToSubscriptionDto);
+    }
+
+    private Mono<Void> recordCreated(Long subscriptionId) {
+        return Flux.fromArray(StatsGranularity.values())
+                .concatMap(granularity -> databaseClient.sql(STATS_UPSERT_SQL)
+                        .bind("granularity", granularity.name())
+                        .bind("field", granularity.truncField())
+                        .bind("id", subscriptionId)
+                        .fetch()
+                        .rowsUpdated())
+                .then();
+    }
+
+    private Mono<Void> recordEvent(SubscriptionEventType type, SubscriptionRow subscription) {
+        return recordEvent(type, subscription.getId(), subscription.getUserId(), subscription.getServiceTitle(),
+                subscription.getPlan(), subscription.getDescription());
+    }
+
+    private Mono<Void> recordEvent(SubscriptionEventType type, Long subscriptionId, Long userId,
+                                   String serviceTitle, String plan, String description) {
+        return databaseClient.sql(OUTBOX_INSERT_SQL)
+                .bind("eventType", type.name())
+                .bind("subscriptionId", subscriptionId)
+                .bind("userId", Parameter.fromOrEmpty(userId, Long.class))
+                .bind("serviceTitle", Parameter.fromOrEmpty(serviceTitle, String.class))
+                .bind("plan", Parameter.fromOrEmpty(plan, String.class))
+                .bind("description", Parameter.fromOrEmpty(description, String.class))
+                .fetch()
+                .rowsUpdated()
+                .then();
+    }
+
+    // счетчик подписок и квота одним UPDATE, как UserService.reserveSubscriptions
+    private Mono<Void> reserveSubscriptions(Long userId, int count) {
+        return userRepository.incrementSubscriptionCount(userId, count, maxSubscriptionsPerUser)
+                .flatMap(updated -> updated > 0
+                        ? Mono.<Void>empty()
+                        // ничего не обновлено - дополнительный запрос только чтобы отличить 404 от превышения квоты
+                        : requireUser(userId).then(Mono.<Void>error(new NotCreatedException(
+                                "У юзера с id = " + userId + " не может быть больше "
+                                + maxSubscriptionsPerUser + " подписок"))));
+    }
+
+    // перенос к другому юзеру: счетчики обоих меняются в порядке id, как UserService.moveSubscription
+    private Mono<Void> moveSubscription(Long fromUserId, Long toUserId) {
+        if (toUserId == null || toUserId.equals(fromUserId)) {
+            return Mono.empty();
+        }
+        Mono<Void> release = userRepository.decrementSubscriptionCount(fromUserId, 1).then();
+        Mono<Void> reserve = reserveSubscriptions(toUserId, 1);
+        return fromUserId < toUserId ? release.then(reserve) : reserve.then(release);
+    }
+
+    private Mono<Void> requireUser(Long userId) {
+        return userRepository.existsById(userId)
+                .flatMap(exists -> exists
+                        ? Mono.<Void>empty()
+                        : Mono.<Void>error(new NotFoundException("Юзер с id = " + userId + " не найден")));
+    }
+
+    // рейтинг меняется только если транзакция закоммитилась; до ее завершения изменение видно сверке рейтинга
+    static Mono<Void> adjustPopularity(SubscriptionPopularityIndex popularityIndex,
+                                       Consumer<SubscriptionPopularityIndex.PendingChange> changes) {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+                .doOnNext(synchronizationManager -> {
+                    SubscriptionPopularityIndex.PendingChange change = popularityIndex.beginChange();
+                    changes.accept(change);
+                    synchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public Mono<Void> afterCompletion(int status) {
+                            return Mono.fromRunnable(() -> change.complete(status == STATUS_COMMITTED));
+                        }
+                    });
+                })
+                .then();
+    }
+
+    private static NotFoundException subscriptionNotFound(Long id) {
+        return new NotFoundException("Подписка на сервис с id = " + id + " не найдена");
+    }
+}
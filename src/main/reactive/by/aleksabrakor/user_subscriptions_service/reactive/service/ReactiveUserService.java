@@ -0,0 +1,128 @@
+package by.aleksabrakor.user_subscriptions_service.reactive.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UpdateUserRequest;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.exception.NotCreatedException;
+import by.aleksabrakor.user_subscriptions_service.exception.NotFoundException;
+import by.aleksabrakor.user_subscriptions_service.reactive.mapper.RowDtoMapper;
+import by.aleksabrakor.user_subscriptions_service.reactive.model.UserRow;
+import by.aleksabrakor.user_subscriptions_service.reactive.repository.ReactiveSubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.reactive.repository.ReactiveUserRepository;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionPopularityIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Реактивный аналог UserService поверх R2DBC. Кеш юзеров и фильтр email-ов servlet-стека здесь не используются:
+ * проверки идут в БД неблокирующими запросами, последней защитой остается unique-ограничение на users.email.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReactiveUserService {
+    private final ReactiveUserRepository userRepository;
+    private final ReactiveSubscriptionRepository subscriptionRepository;
+    private final RowDtoMapper rowDtoMapper;
+    private final TransactionalOperator transactionalOperator;
+    private final SubscriptionPopularityIndex popularityIndex;
+
+
+    public Mono<UserDto> saveUser(UserDto userDto) {
+        return userRepository.existsByEmail(userDto.getEmail())
+                .flatMap(exists -> exists
+                        ? Mono.<UserRow>error(new NotCreatedException("Этот email уже существует"))
+                        : userRepository.insert(userDto.getName(), userDto.getEmail()))
+                .onErrorMap(DataIntegrityViolationException.class,
+                        e -> new NotCreatedException("Этот email уже существует"))
+                .map(rowDtoMapper::rowToUserDto)
+                .as(transactionalOperator::transactional);
+    }
+
+
+    public Flux<UserDto> findAllUsers(boolean includeSubscriptions) {
+        Flux<UserDto> users = userRepository.findAllByOrderById().map(rowDtoMapper::rowToUserDto);
+        if (!includeSubscriptions) {
+            return users;
+        }
+        // два запроса вместо N+1: подписки всех юзеров группируются по user_id
+        return subscriptionRepository.findAll(Sort.by("id"))
+                .map(rowDtoMapper::rowToSubscriptionDto)
+                .collectMultimap(SubscriptionDto::getUserId)
+                .flatMapMany(subscriptionsByUser -> users.map(user -> {
+                    user.setSubscriptions(new ArrayList<>(subscriptionsByUser.getOrDefault(user.getId(), List.of())));
+                    return user;
+                }));
+    }
+
+    public Mono<UserDto> findUserById(Long id, boolean includeSubscriptions) {
+        Mono<UserDto> user = userRepository.findById(id)
+                .map(rowDtoMapper::rowToUserDto)
+                .switchIfEmpty(Mono.error(() -> userNotFound(id)));
+        if (!includeSubscriptions) {
+            return user;
+        }
+        return user.flatMap(dto -> subscriptionRepository.findByUserIdOrderById(id)
+                .map(rowDtoMapper::rowToSubscriptionDto)
+                .collectList()
+                .map(subscriptions -> {
+                    dto.setSubscriptions(subscriptions);
+                    return dto;
+                }));
+    }
+
+    /**
+     * PUT и PATCH: один UPDATE переданных полей (null - поле не меняется), результат из RETURNING.
+     */
+    public Mono<UserDto> updateUser(UpdateUserRequest changes, Long id) {
+        return userRepository.existsById(id)
+                .flatMap(exists -> exists
+                        ? checkEmailIsFree(changes.getEmail(), id)
+                        : Mono.<Void>error(userNotFound(id)))
+                .then(userRepository.update(id, changes.getName(), changes.getEmail()))
+                .onErrorMap(DataIntegrityViolationException.class,
+                        e -> new NotCreatedException("Этот email уже существует"))
+                .map(rowDtoMapper::rowToUserDto)
+                .as(transactionalOperator::transactional);
+    }
+
+    public Mono<UserDto> patchUser(UpdateUserRequest changes, Long id) {
+        if (changes.getName() == null && changes.getEmail() == null) {
+            return findUserById(id, false);
+        }
+        return updateUser(changes, id);
+    }
+
+    public Mono<Void> deleteUser(Long id) {
+        return subscriptionRepository.deleteByUserIdReturningServiceTitle(id)
+                .collectList()
+                .flatMap(deletedTitles -> userRepository.deleteUserById(id)
+                        .flatMap(deleted -> deleted == 0
+                                ? Mono.<Void>error(userNotFound(id))
+                                : ReactiveSubscriptionService.adjustPopularity(popularityIndex,
+                                        change -> deletedTitles.forEach(change::decrement))))
+                .as(transactionalOperator::transactional);
+    }
+
+
+    private Mono<Void> checkEmailIsFree(String email, Long id) {
+        if (email == null) {
+            return Mono.empty();
+        }
+        return userRepository.existsByEmailAndIdNot(email, id)
+                .flatMap(taken -> taken
+                        ? Mono.<Void>error(new NotCreatedException("Этот email уже существует"))
+                        : Mono.<Void>empty());
+    }
+
+    private static NotFoundException userNotFound(Long id) {
+        return new NotFoundException("Юзер с id = " + id + " не найден");
+    }
+}
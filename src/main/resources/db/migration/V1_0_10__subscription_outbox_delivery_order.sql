@@ -0,0 +1,11 @@
+-- Порядок доставки событий outbox. id выдаются блоками по 50 на каждый экземпляр приложения и не отражают порядок
+-- коммитов, а delivery_order берется из sequence без кэша в момент INSERT строки. Изменения одной подписки
+-- сериализованы блокировкой ее строки, поэтому для одной подписки delivery_order растет в порядке коммитов.
+-- Существующим строкам номера достаются в порядке перезаписи таблицы
+ALTER TABLE subscription_outbox ADD COLUMN IF NOT EXISTS delivery_order BIGSERIAL;
+
+-- relay отдает событие подписки только после всех ее более ранних событий (NOT EXISTS по этому индексу)
+CREATE INDEX IF NOT EXISTS idx_subscription_outbox_subscription_order
+    ON subscription_outbox (subscription_id, delivery_order);
+
+CREATE INDEX IF NOT EXISTS idx_subscription_outbox_delivery_order ON subscription_outbox (delivery_order);
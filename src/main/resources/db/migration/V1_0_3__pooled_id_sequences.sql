@@ -0,0 +1,4 @@
+-- Hibernate выделяет id блоками по 50 (pooled optimizer), поэтому INSERT-ы можно группировать в JDBC batch.
+-- Шаг последовательностей должен совпадать с allocationSize в сущностях User и Subscription
+ALTER SEQUENCE users_id_seq INCREMENT BY 50;
+ALTER SEQUENCE subscriptions_id_seq INCREMENT BY 50;
@@ -0,0 +1,4 @@
+-- Индекс для выборки подписок юзера (WHERE user_id = ?) вместо последовательного сканирования subscriptions.
+-- CONCURRENTLY не блокирует запись в таблицу, но не выполняется внутри транзакции,
+-- поэтому оператор вынесен в отдельную миграцию (Flyway выполнит ее вне транзакции)
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_subscriptions_user_id ON subscriptions (user_id);
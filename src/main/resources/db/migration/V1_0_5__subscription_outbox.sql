@@ -0,0 +1,16 @@
+-- Outbox событий изменения подписок: строка пишется в той же транзакции, что и изменение подписки,
+-- фоновый relay забирает строки пачками (FOR UPDATE SKIP LOCKED), отдает во внешний sink и удаляет.
+-- Шаг последовательности совпадает с allocationSize в OutboxEvent, INSERT-ы идут JDBC batch-ами вместе с подписками
+CREATE SEQUENCE IF NOT EXISTS subscription_outbox_id_seq INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS subscription_outbox
+(
+    id              BIGINT PRIMARY KEY DEFAULT nextval('subscription_outbox_id_seq'),
+    event_type      VARCHAR(20)  NOT NULL,
+    subscription_id BIGINT       NOT NULL,
+    user_id         BIGINT,
+    service_title   VARCHAR(255),
+    plan            VARCHAR(100),
+    description     VARCHAR(200),
+    created_at      TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP
+);
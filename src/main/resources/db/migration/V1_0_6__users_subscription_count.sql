@@ -0,0 +1,12 @@
+-- Денормализованное количество подписок юзера: квота проверяется и счетчик меняется одним UPDATE строки users,
+-- без COUNT(*) по subscriptions. Начальное значение считается один раз по существующим подпискам
+ALTER TABLE users
+    ADD COLUMN IF NOT EXISTS subscription_count INTEGER NOT NULL DEFAULT 0;
+
+UPDATE users u
+SET subscription_count = c.subscription_count
+FROM (SELECT user_id, COUNT(*) AS subscription_count FROM subscriptions GROUP BY user_id) c
+WHERE u.id = c.user_id;
+
+ALTER TABLE users
+    ADD CONSTRAINT users_subscription_count_check CHECK (subscription_count >= 0);
@@ -0,0 +1,13 @@
+-- Rollup новых подписок по часам и суткам (UTC) в разрезе service_title и plan: строка на (гранулярность, бакет,
+-- сервис, план). Живые добавления подписок делают upsert в той же транзакции (SubscriptionStats),
+-- историю строит SubscriptionStatsBackfill. plan без значения хранится как '' - NULL не попал бы в первичный ключ.
+-- Первичный ключ начинается с (granularity, bucket) и обслуживает запросы по диапазону времени
+CREATE TABLE IF NOT EXISTS subscription_stats
+(
+    granularity   VARCHAR(10)  NOT NULL,
+    bucket        TIMESTAMP    NOT NULL,
+    service_title VARCHAR(255) NOT NULL,
+    plan          VARCHAR(100) NOT NULL DEFAULT '',
+    created_count BIGINT       NOT NULL DEFAULT 0,
+    PRIMARY KEY (granularity, bucket, service_title, plan)
+);
@@ -0,0 +1,3 @@
+-- Триграммы для поиска подписок по части названия (GET /subscriptions/search): B-tree idx_subscriptions_service_name
+-- обслуживает только равенство и префикс, а ILIKE '%...%' - только GIN-индекс по триграммам (V1_0_9)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
@@ -0,0 +1,4 @@
+-- GIN-индекс триграмм по service_title для ILIKE '%...%'. Как и V1_0_4, CONCURRENTLY выполняется вне транзакции,
+-- поэтому отдельно от CREATE EXTENSION
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_subscriptions_service_title_trgm
+    ON subscriptions USING gin (service_title gin_trgm_ops);
@@ -0,0 +1,118 @@
+package by.aleksabrakor.user_subscriptions_service.benchmark;
+
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.repository.OutboxEventRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionStatRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionPopularityIndex;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionService;
+import by.aleksabrakor.user_subscriptions_service.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Locale;
+
+/**
+ * Основа бенчмарков на контексте приложения: юзер, подписки, засеянные одним INSERT ... SELECT,
+ * очистка таблиц после теста, замер среднего времени операции и таблица результатов в лог.
+ * Запуск: mvn test -P benchmark
+ */
+@Tag("benchmark")
+@SpringBootTest
+@ActiveProfiles("test")
+abstract class DatabaseBenchmark {
+
+    // id подписок вне диапазона sequence, чтобы не пересекаться с id, выданными Hibernate
+    private static final String SEED_SQL = """
+            INSERT INTO subscriptions (id, service_title, plan, description, user_id, created_at)
+            SELECT 1000000000 + g, %s, %s, NULL, ?, %s
+            FROM generate_series(1, ?) AS g
+            """;
+
+    protected final Logger log = LoggerFactory.getLogger(getClass());
+
+    @Autowired
+    protected SubscriptionService subscriptionService;
+
+    @Autowired
+    protected UserService userService;
+
+    @Autowired
+    protected SubscriptionPopularityIndex popularityIndex;
+
+    @Autowired
+    protected SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    protected PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SubscriptionStatRepository subscriptionStatRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @AfterEach
+    void cleanUpDatabase() {
+        subscriptionStatRepository.deleteAllInBatch();
+        outboxEventRepository.deleteAllInBatch();
+        subscriptionRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+        // удаление в обход сервиса индекс не видит - перечитываем его из БД
+        popularityIndex.load();
+    }
+
+    protected Long createUser() {
+        return userService.saveUser(new UserDto(null, "Benchmark User", "benchmark@example.com", null, null)).getId();
+    }
+
+    /**
+     * count подписок юзера одним INSERT ... SELECT в обход сервиса; колонки задаются SQL-выражениями
+     * от номера строки g.
+     */
+    protected void seedSubscriptions(Long userId, int count, String serviceTitleSql, String planSql,
+                                     String createdAtSql) {
+        jdbcTemplate.update(SEED_SQL.formatted(serviceTitleSql, planSql, createdAtSql), userId, count);
+        jdbcTemplate.execute("ANALYZE subscriptions");
+    }
+
+    /**
+     * Среднее время одного вызова в наносекундах после warmupRounds прогревочных вызовов.
+     */
+    protected static double averageNanos(Runnable operation, int warmupRounds, int measuredRounds) {
+        for (int round = 0; round < warmupRounds; round++) {
+            operation.run();
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < measuredRounds; round++) {
+            operation.run();
+        }
+        return (System.nanoTime() - start) / (double) measuredRounds;
+    }
+
+    protected static long percentile(long[] sortedLatencies, double quantile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        return sortedLatencies[Math.max(0, (int) Math.ceil(sortedLatencies.length * quantile) - 1)];
+    }
+
+    // строка таблицы результатов
+    protected void report(String format, Object... args) {
+        log.info(String.format(Locale.ROOT, format, args));
+    }
+}
@@ -0,0 +1,9 @@
+package by.aleksabrakor.user_subscriptions_service.benchmark;
+
+class PlatformThreadsLoadBenchmarkTest extends RequestThreadingLoadBenchmark {
+
+    @Override
+    protected String mode() {
+        return "platform";
+    }
+}
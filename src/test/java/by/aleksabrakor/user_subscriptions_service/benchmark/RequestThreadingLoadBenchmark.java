@@ -0,0 +1,109 @@
+package by.aleksabrakor.user_subscriptions_service.benchmark;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Нагрузочное сравнение режимов обработки запросов: CLIENTS клиентов в замкнутом цикле читают
+ * GET /subscriptions/users/{id} в течение DURATION. Режим задают наследники через @ActiveProfiles:
+ * PlatformThreadsLoadBenchmarkTest (потоки Tomcat) и VirtualThreadsLoadBenchmarkTest (virtual-threads + bulkhead).
+ * Запуск: mvn test -P benchmark,java21 (на Java 17 оба режима работают на платформенных потоках)
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+abstract class RequestThreadingLoadBenchmark extends DatabaseBenchmark {
+    private static final int CLIENTS = 400;
+    private static final Duration WARMUP = Duration.ofSeconds(10);
+    private static final Duration DURATION = Duration.ofSeconds(30);
+    private static final int SUBSCRIPTIONS_PER_USER = 20;
+
+    @LocalServerPort
+    private int port;
+
+    protected abstract String mode();
+
+    @Test
+    @DisplayName("Пропускная способность и p99 GET /subscriptions/users/{id} под нагрузкой")
+    void measureThroughputAndP99() throws Exception {
+        Long userId = createUser();
+        List<SubscriptionDto> subscriptions = new ArrayList<>(SUBSCRIPTIONS_PER_USER);
+        for (int i = 0; i < SUBSCRIPTIONS_PER_USER; i++) {
+            subscriptions.add(new SubscriptionDto(null, "Service " + i, "Premium", null, null));
+        }
+        subscriptionService.addSubscriptionsToUser(subscriptions, userId);
+        URI uri = URI.create("http://localhost:" + port + "/subscriptions/users/" + userId);
+
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            HttpClient httpClient = HttpClient.newBuilder().executor(clients).build();
+            run(httpClient, uri, clients, WARMUP);
+            Result result = run(httpClient, uri, clients, DURATION);
+
+            report("%-10s %10s %12s %10s %10s", "mode", "requests", "req/s", "p99 ms", "503");
+            report("%-10s %10d %12.0f %10.1f %10d", mode(), result.latencies().length,
+                    result.latencies().length / (double) DURATION.toSeconds(), result.p99Millis(), result.rejected());
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static Result run(HttpClient httpClient, URI uri, ExecutorService clients, Duration duration)
+            throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        long deadline = System.nanoTime() + duration.toNanos();
+
+        List<Future<ClientResult>> futures = new ArrayList<>(CLIENTS);
+        for (int client = 0; client < CLIENTS; client++) {
+            futures.add(clients.submit(() -> {
+                long[] latencies = new long[1024];
+                int count = 0;
+                long rejected = 0;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() == 503) {
+                        rejected++;
+                        continue;
+                    }
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - start;
+                }
+                return new ClientResult(Arrays.copyOf(latencies, count), rejected);
+            }));
+        }
+
+        long[] allLatencies = new long[0];
+        long rejected = 0;
+        for (Future<ClientResult> future : futures) {
+            ClientResult clientResult = future.get();
+            int offset = allLatencies.length;
+            allLatencies = Arrays.copyOf(allLatencies, offset + clientResult.latencies().length);
+            System.arraycopy(clientResult.latencies(), 0, allLatencies, offset, clientResult.latencies().length);
+            rejected += clientResult.rejected();
+        }
+        Arrays.sort(allLatencies);
+        return new Result(allLatencies, percentile(allLatencies, 0.99) / 1_000_000.0, rejected);
+    }
+
+    private record ClientResult(long[] latencies, long rejected) {
+    }
+
+    private record Result(long[] latencies, double p99Millis, long rejected) {
+    }
+}
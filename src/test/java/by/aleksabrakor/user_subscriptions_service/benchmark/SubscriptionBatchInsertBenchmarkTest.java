@@ -0,0 +1,59 @@
+package by.aleksabrakor.user_subscriptions_service.benchmark;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сравнение пропускной способности (строк/сек) добавления подписок по одной и пакетом.
+ * Запуск: mvn test -P benchmark
+ */
+class SubscriptionBatchInsertBenchmarkTest extends DatabaseBenchmark {
+    private static final int[] BATCH_SIZES = {1, 10, 100, 1000};
+    private static final int WARMUP_ROUNDS = 3;
+
+    @Test
+    @DisplayName("Добавление подписок: по одной vs пакетом, строк/сек")
+    void compareSingleAndBatchInsertThroughput() {
+        Long userId = createUser();
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            insertOneByOne(userId, 100);
+            subscriptionService.addSubscriptionsToUser(subscriptions(100), userId);
+        }
+
+        report("%-10s %20s %20s", "rows", "one-by-one rows/s", "batch rows/s");
+        for (int size : BATCH_SIZES) {
+            long singleNanos = insertOneByOne(userId, size);
+
+            long start = System.nanoTime();
+            subscriptionService.addSubscriptionsToUser(subscriptions(size), userId);
+            long batchNanos = System.nanoTime() - start;
+
+            report("%-10d %20.0f %20.0f", size, rowsPerSecond(size, singleNanos), rowsPerSecond(size, batchNanos));
+        }
+    }
+
+    private long insertOneByOne(Long userId, int count) {
+        long start = System.nanoTime();
+        for (SubscriptionDto subscriptionDto : subscriptions(count)) {
+            subscriptionService.addSubscriptionToUser(subscriptionDto, userId);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static List<SubscriptionDto> subscriptions(int count) {
+        List<SubscriptionDto> subscriptions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            subscriptions.add(new SubscriptionDto(null, "Service " + (i % 20), "Premium", null, null));
+        }
+        return subscriptions;
+    }
+
+    private static double rowsPerSecond(int rows, long nanos) {
+        return rows * 1_000_000_000.0 / nanos;
+    }
+}
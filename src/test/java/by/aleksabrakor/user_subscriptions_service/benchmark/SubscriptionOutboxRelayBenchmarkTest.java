@@ -0,0 +1,78 @@
+package by.aleksabrakor.user_subscriptions_service.benchmark;
+
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionEventSink;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionOutboxRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Пропускная способность разбора outbox (DELETE ... RETURNING с FOR UPDATE SKIP LOCKED) в событиях в секунду
+ * при разных размерах пачки и числе параллельных relay. Sink только считает события, чтобы мерить саму выборку.
+ * Запуск: mvn test -P benchmark
+ */
+class SubscriptionOutboxRelayBenchmarkTest extends DatabaseBenchmark {
+    private static final int EVENTS = 200_000;
+    private static final int[] BATCH_SIZES = {100, 1000, 5000};
+    private static final int[] RELAYS = {1, 4};
+
+    @Test
+    @DisplayName("Разбор outbox: событий в секунду по размеру пачки и числу параллельных relay")
+    void measureDrainThroughput() throws Exception {
+        // прогрев
+        run(1000, 1);
+
+        report("%-8s %-8s %15s", "batch", "relays", "events/s");
+        for (int batchSize : BATCH_SIZES) {
+            for (int relays : RELAYS) {
+                report("%-8d %-8d %15.0f", batchSize, relays, run(batchSize, relays));
+            }
+        }
+    }
+
+    private double run(int batchSize, int relays) throws Exception {
+        fillOutbox();
+        AtomicLong published = new AtomicLong();
+        SubscriptionEventSink countingSink = events -> published.addAndGet(events.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(relays);
+        try {
+            List<Future<Long>> futures = new ArrayList<>(relays);
+            long start = System.nanoTime();
+            for (int i = 0; i < relays; i++) {
+                SubscriptionOutboxRelay relay = new SubscriptionOutboxRelay(jdbcTemplate, transactionManager,
+                        countingSink, false, batchSize, new SimpleMeterRegistry());
+                futures.add(executor.submit(relay::drain));
+            }
+            for (Future<Long> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            // relay может остановиться на неполной пачке, пока соседние еще держат строки - добираем остаток
+            new SubscriptionOutboxRelay(jdbcTemplate, transactionManager, countingSink, false, batchSize,
+                    new SimpleMeterRegistry()).drain();
+            assertEquals(EVENTS, published.get());
+            return EVENTS * 1_000_000_000.0 / elapsed;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void fillOutbox() {
+        jdbcTemplate.update("""
+                INSERT INTO subscription_outbox (id, event_type, subscription_id, user_id, service_title, plan, created_at)
+                SELECT nextval('subscription_outbox_id_seq'), 'CREATED', g, g % 1000, 'Service ' || (g % 20), 'Premium', now()
+                FROM generate_series(1, ?) g
+                """, EVENTS);
+    }
+}
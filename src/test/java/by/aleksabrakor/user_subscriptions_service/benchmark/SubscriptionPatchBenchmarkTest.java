@@ -0,0 +1,93 @@
+package by.aleksabrakor.user_subscriptions_service.benchmark;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UpdateSubscriptionRequest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+
+/**
+ * Сравнение обновления подписок под конкурентной записью: PUT (findById + save всех колонок)
+ * против PATCH (один UPDATE переданных колонок с RETURNING). Потоки обновляют plan случайных подписок
+ * из общего набора, так что часть обновлений конкурирует за одни и те же строки.
+ * Запуск: mvn test -P benchmark
+ */
+class SubscriptionPatchBenchmarkTest extends DatabaseBenchmark {
+    private static final int SUBSCRIPTIONS = 200;
+    private static final int[] WRITER_THREADS = {1, 4, 8};
+    private static final int UPDATES_PER_THREAD = 500;
+
+    @Test
+    @DisplayName("Обновление подписок: load-then-save vs PATCH одним UPDATE, ops/s и p99 под конкурентной записью")
+    void compareLoadThenSaveAndPatchUnderConcurrentWriters() throws Exception {
+        Long userId = createUser();
+        List<SubscriptionDto> subscriptions = new ArrayList<>(SUBSCRIPTIONS);
+        for (int i = 0; i < SUBSCRIPTIONS; i++) {
+            subscriptions.add(new SubscriptionDto(null, "Service " + (i % 20), "Basic", "Description " + i, null));
+        }
+        long[] ids = subscriptionService.addSubscriptionsToUser(subscriptions, userId).stream()
+                .mapToLong(SubscriptionDto::getId)
+                .toArray();
+
+        BiConsumer<UpdateSubscriptionRequest, Long> loadThenSave = subscriptionService::updateSubscription;
+        BiConsumer<UpdateSubscriptionRequest, Long> patch = subscriptionService::patchSubscription;
+
+        // прогрев
+        run(loadThenSave, ids, 4);
+        run(patch, ids, 4);
+
+        report("%-8s %-15s %12s %12s", "threads", "path", "ops/s", "p99 us");
+        for (int threads : WRITER_THREADS) {
+            Result loadThenSaveResult = run(loadThenSave, ids, threads);
+            Result patchResult = run(patch, ids, threads);
+            report("%-8d %-15s %12.0f %12.0f", threads, "load-then-save",
+                    loadThenSaveResult.opsPerSecond(), loadThenSaveResult.p99Micros());
+            report("%-8d %-15s %12.0f %12.0f", threads, "patch",
+                    patchResult.opsPerSecond(), patchResult.p99Micros());
+        }
+    }
+
+    private static Result run(BiConsumer<UpdateSubscriptionRequest, Long> update, long[] ids, int threads)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>(threads);
+            long start = System.nanoTime();
+            for (int thread = 0; thread < threads; thread++) {
+                futures.add(executor.submit(() -> {
+                    long[] latencies = new long[UPDATES_PER_THREAD];
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                        UpdateSubscriptionRequest request = new UpdateSubscriptionRequest();
+                        request.setPlan("Plan " + random.nextInt(10));
+                        long updateStart = System.nanoTime();
+                        update.accept(request, ids[random.nextInt(ids.length)]);
+                        latencies[i] = System.nanoTime() - updateStart;
+                    }
+                    return latencies;
+                }));
+            }
+            long[] allLatencies = new long[threads * UPDATES_PER_THREAD];
+            for (int thread = 0; thread < threads; thread++) {
+                System.arraycopy(futures.get(thread).get(), 0, allLatencies, thread * UPDATES_PER_THREAD, UPDATES_PER_THREAD);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            Arrays.sort(allLatencies);
+            return new Result(allLatencies.length * 1_000_000_000.0 / elapsed, percentile(allLatencies, 0.99) / 1000.0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private record Result(double opsPerSecond, double p99Micros) {
+    }
+}
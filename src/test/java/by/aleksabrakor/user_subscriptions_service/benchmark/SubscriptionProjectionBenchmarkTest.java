@@ -0,0 +1,82 @@
+package by.aleksabrakor.user_subscriptions_service.benchmark;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.mapper.SubscriptionMapper;
+import by.aleksabrakor.user_subscriptions_service.repository.UserSubscriptionRow;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Сравнение чтения подписок юзера через сущности (findByUserId + MapStruct) и через DTO-проекцию
+ * (findUserSubscriptionRows, как в SubscriptionService.getUserSubscriptions): среднее время и байты, выделенные в куче на один запрос.
+ * Запуск: mvn test -P benchmark
+ */
+class SubscriptionProjectionBenchmarkTest extends DatabaseBenchmark {
+    private static final int SUBSCRIPTIONS_PER_USER = 1000;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 500;
+
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private SubscriptionMapper subscriptionMapper;
+
+    @Test
+    @DisplayName("Подписки юзера: сущности + MapStruct vs DTO-проекция, мкс и байт на запрос")
+    void compareEntityAndProjectionReadPaths() {
+        Long userId = createUser();
+        List<SubscriptionDto> subscriptions = new ArrayList<>(SUBSCRIPTIONS_PER_USER);
+        for (int i = 0; i < SUBSCRIPTIONS_PER_USER; i++) {
+            subscriptions.add(new SubscriptionDto(null, "Service " + (i % 20), "Premium", "Description " + i, null));
+        }
+        subscriptionService.addSubscriptionsToUser(subscriptions, userId);
+
+        // обе ветки в одинаковой read-only транзакции, как в SubscriptionService
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        Supplier<List<SubscriptionDto>> entityPath = () -> readOnly.execute(status ->
+                subscriptionMapper.toDtoList(subscriptionRepository.findByUserId(userId)));
+        Supplier<List<SubscriptionDto>> projectionPath = () -> readOnly.execute(status ->
+                subscriptionRepository.findUserSubscriptionRows(userId).stream()
+                        .map(UserSubscriptionRow::toDto)
+                        .toList());
+
+        assertEquals(SUBSCRIPTIONS_PER_USER, entityPath.get().size());
+        assertEquals(SUBSCRIPTIONS_PER_USER, projectionPath.get().size());
+
+        Measurement entity = measure(entityPath);
+        Measurement projection = measure(projectionPath);
+
+        report("%-12s %15s %20s", "path", "us/request", "bytes/request");
+        report("%-12s %15.1f %20d", "entity", entity.micros(), entity.bytes());
+        report("%-12s %15.1f %20d", "projection", projection.micros(), projection.bytes());
+    }
+
+    private static Measurement measure(Supplier<List<SubscriptionDto>> path) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            path.get();
+        }
+        long threadId = Thread.currentThread().getId();
+        long startBytes = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            path.get();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocatedBytes = THREAD_MX_BEAN.getThreadAllocatedBytes(threadId) - startBytes;
+        return new Measurement(elapsedNanos / 1000.0 / MEASURED_ROUNDS, allocatedBytes / MEASURED_ROUNDS);
+    }
+
+    private record Measurement(double micros, long bytes) {
+    }
+}
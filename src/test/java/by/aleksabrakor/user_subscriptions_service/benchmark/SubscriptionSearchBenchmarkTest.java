@@ -0,0 +1,61 @@
+package by.aleksabrakor.user_subscriptions_service.benchmark;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Поиск подписок по части названия: ILIKE '%...%' последовательным сканированием против GIN-индекса триграмм
+ * (как в миграции V1_0_9), и подсказки названий по префиксу из дерева в памяти - мкс на запрос.
+ * В тестовой схеме (ddl-auto) индекса триграмм нет, поэтому бенчмарк создает его сам.
+ * Запуск: mvn test -P benchmark
+ */
+class SubscriptionSearchBenchmarkTest extends DatabaseBenchmark {
+    private static final int SUBSCRIPTIONS = 200_000;
+    private static final int DISTINCT_TITLES = 20_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 200;
+    private static final int SUGGEST_ROUNDS = 100_000;
+
+    @AfterEach
+    void dropTrigramIndex() {
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_subscriptions_service_title_trgm");
+    }
+
+    @Test
+    @DisplayName("Поиск по части названия: seq scan vs GIN-индекс триграмм; подсказки по префиксу из памяти")
+    void compareSearchPathsAndSuggestLatency() {
+        seedSubscriptions(createUser(), SUBSCRIPTIONS,
+                "'Service ' || substr(md5((g % " + DISTINCT_TITLES + ")::text), 1, 12)", "'Basic'", "CURRENT_TIMESTAMP");
+        popularityIndex.load();
+
+        // часть названия из середины, чтобы индекс по префиксу не помогал
+        String title = jdbcTemplate.queryForObject(
+                "SELECT service_title FROM subscriptions ORDER BY id LIMIT 1", String.class);
+        String q = title.substring(10, 16).toUpperCase();
+        Runnable search = () -> subscriptionService.searchSubscriptions(q, 20);
+        assertFalse(subscriptionService.searchSubscriptions(q, 20).isEmpty());
+
+        double seqScanNanos = averageNanos(search, WARMUP_ROUNDS, MEASURED_ROUNDS);
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        jdbcTemplate.execute("CREATE INDEX idx_subscriptions_service_title_trgm "
+                             + "ON subscriptions USING gin (service_title gin_trgm_ops)");
+        jdbcTemplate.execute("ANALYZE subscriptions");
+        double ginNanos = averageNanos(search, WARMUP_ROUNDS, MEASURED_ROUNDS);
+
+        String prefix = title.substring(0, 10);
+        List<String> suggestions = subscriptionService.suggestServiceTitles(prefix, 10);
+        assertFalse(suggestions.isEmpty());
+        double suggestNanos = averageNanos(() -> subscriptionService.suggestServiceTitles(prefix, 10),
+                SUGGEST_ROUNDS / 10, SUGGEST_ROUNDS);
+
+        report("%-24s %12s", "path", "us/request");
+        report("%-24s %12.1f", "search seq scan", seqScanNanos / 1000);
+        report("%-24s %12.1f", "search gin_trgm_ops", ginNanos / 1000);
+        report("%-24s %12.2f", "suggest trie", suggestNanos / 1000);
+    }
+}
@@ -0,0 +1,74 @@
+package by.aleksabrakor.user_subscriptions_service.benchmark;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionStatsDto;
+import by.aleksabrakor.user_subscriptions_service.model.StatsGranularity;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionStats;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionStatsBackfill;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Статистика новых подписок за год: время пересчета rollup-а в зависимости от числа потоков и время запроса
+ * итогов по rollup-у против GROUP BY по самой таблице subscriptions.
+ * Запуск: mvn test -P benchmark
+ */
+class SubscriptionStatsBenchmarkTest extends DatabaseBenchmark {
+    private static final int SUBSCRIPTIONS = 300_000;
+    private static final long CHUNK_SIZE = 20_000;
+    private static final int[] PARALLELISM = {1, 2, 4, 8};
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    private static final String RAW_TOTALS_SQL = """
+            SELECT service_title, plan, COUNT(*) AS created_count
+            FROM subscriptions
+            WHERE created_at::timestamptz AT TIME ZONE 'UTC' >= ? AND created_at::timestamptz AT TIME ZONE 'UTC' < ?
+            GROUP BY service_title, plan
+            ORDER BY created_count DESC, service_title, plan
+            """;
+
+    @Autowired
+    private SubscriptionStats subscriptionStats;
+
+    @Test
+    @DisplayName("Статистика за год: пересчет rollup-а по числу потоков, итоги по rollup-у vs GROUP BY по subscriptions")
+    void compareBackfillParallelismAndRollupQuery() {
+        seedSubscriptions(createUser(), SUBSCRIPTIONS, "'Service ' || (g % 20)", "'Plan ' || (g % 3)",
+                "TIMESTAMPTZ '2025-01-01 00:00:00+00' + (g % 365) * INTERVAL '1 day' + (g % 24) * INTERVAL '1 hour'");
+
+        LocalDateTime before = LocalDateTime.of(2026, 1, 1, 0, 0);
+        report("%-12s %10s %12s", "parallelism", "chunks", "backfill ms");
+        for (int parallelism : PARALLELISM) {
+            SubscriptionStatsBackfill backfill =
+                    new SubscriptionStatsBackfill(jdbcTemplate, transactionManager, false, CHUNK_SIZE, parallelism);
+            long start = System.nanoTime();
+            int chunks = backfill.backfill(before, parallelism);
+            report("%-12d %10d %12d", parallelism, chunks, (System.nanoTime() - start) / 1_000_000);
+        }
+
+        LocalDateTime from = LocalDateTime.of(2025, 1, 1, 0, 0);
+        Supplier<List<SubscriptionStatsDto>> rollup = () ->
+                subscriptionStats.findTotals(StatsGranularity.DAY, from, before);
+        Supplier<List<SubscriptionStatsDto>> raw = () -> jdbcTemplate.query(RAW_TOTALS_SQL,
+                (rs, rowNum) -> new SubscriptionStatsDto(null, rs.getString("service_title"), rs.getString("plan"),
+                        rs.getLong("created_count")),
+                from, before);
+        assertEquals(raw.get(), rollup.get());
+
+        Long rollupRows = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM subscription_stats WHERE granularity = ? AND bucket >= ? AND bucket < ?",
+                Long.class, StatsGranularity.DAY.name(), from, before);
+        report("%-8s %12s %12s", "path", "rows read", "ms/query");
+        report("%-8s %12d %12.2f", "rollup", rollupRows,
+                averageNanos(rollup::get, WARMUP_ROUNDS, MEASURED_ROUNDS) / 1_000_000);
+        report("%-8s %12d %12.2f", "raw", SUBSCRIPTIONS,
+                averageNanos(raw::get, WARMUP_ROUNDS, MEASURED_ROUNDS) / 1_000_000);
+    }
+}
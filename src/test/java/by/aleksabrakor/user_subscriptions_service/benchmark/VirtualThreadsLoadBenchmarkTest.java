@@ -0,0 +1,12 @@
+package by.aleksabrakor.user_subscriptions_service.benchmark;
+
+import org.springframework.test.context.ActiveProfiles;
+
+@ActiveProfiles("virtual-threads")
+class VirtualThreadsLoadBenchmarkTest extends RequestThreadingLoadBenchmark {
+
+    @Override
+    protected String mode() {
+        return "virtual";
+    }
+}
@@ -0,0 +1,41 @@
+package by.aleksabrakor.user_subscriptions_service.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolBulkheadFilterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @DisplayName("Запрос сверх лимита bulkhead-а получает 503, разрешение освобождается после ответа")
+    void doFilter_ShouldReject503_WhenNoPermitsLeft() throws Exception {
+        // Arrange
+        ConnectionPoolBulkheadFilter filter = new ConnectionPoolBulkheadFilter(
+                null, 1, Duration.ofMillis(10), new ObjectMapper(), meterRegistry);
+        MockHttpServletResponse nestedResponse = new MockHttpServletResponse();
+
+        // Act: пока первый запрос держит единственное разрешение, приходит второй
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), firstResponse, (request, response) ->
+                filter.doFilter(new MockHttpServletRequest("GET", "/users"), nestedResponse, (req, res) -> {
+                }));
+        MockHttpServletResponse afterResponse = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/users"), afterResponse, (request, response) -> {
+        });
+
+        // Assert
+        assertEquals(200, firstResponse.getStatus());
+        assertEquals(503, nestedResponse.getStatus());
+        assertTrue(nestedResponse.getContentAsString().contains("Service overloaded"));
+        assertEquals(200, afterResponse.getStatus());
+        assertEquals(1.0, meterRegistry.get("http.bulkhead.rejected").counter().count());
+    }
+}
@@ -0,0 +1,28 @@
+package by.aleksabrakor.user_subscriptions_service.integrationTests;
+
+import by.aleksabrakor.user_subscriptions_service.filter.SqlBudgetFilter;
+import org.springframework.test.web.servlet.ResultMatcher;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Проверка количества обращений к БД за запрос по заголовку X-DB-Queries (SqlBudgetFilter):
+ * mockMvc.perform(get("/users")).andExpect(queryCount(1)). Фиксирует количество запросов endpoint-а,
+ * чтобы N+1 от ленивых связей ловился тестом.
+ */
+public final class SqlQueryCountMatchers {
+
+    private SqlQueryCountMatchers() {
+    }
+
+    public static ResultMatcher queryCount(int expected) {
+        return result -> {
+            String header = result.getResponse().getHeader(SqlBudgetFilter.QUERIES_HEADER);
+            assertNotNull(header, "В ответе нет заголовка " + SqlBudgetFilter.QUERIES_HEADER);
+            assertEquals(expected, Integer.parseInt(header), "Количество SQL-запросов для "
+                                                             + result.getRequest().getMethod() + " "
+                                                             + result.getRequest().getRequestURI());
+        };
+    }
+}
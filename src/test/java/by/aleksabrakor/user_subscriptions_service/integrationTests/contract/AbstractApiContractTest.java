@@ -0,0 +1,247 @@
+package by.aleksabrakor.user_subscriptions_service.integrationTests.contract;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionPageDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionPopularityIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Общий контракт HTTP API для servlet- и reactive-стека: наследники поднимают приложение в своем профиле,
+ * а проверки идут через WebTestClient по реальному порту. Данные удаляются перед каждым тестом.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+abstract class AbstractApiContractTest {
+
+    @Autowired
+    protected WebTestClient webTestClient;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SubscriptionPopularityIndex popularityIndex;
+
+    @BeforeEach
+    void cleanDatabase() {
+        jdbcTemplate.execute("TRUNCATE subscription_outbox, subscriptions, users");
+        popularityIndex.reconcile();
+    }
+
+    @Test
+    @DisplayName("Созданный юзер возвращается по id, повторный email - 400")
+    void createUser_ShouldBeReadableById_AndRejectDuplicateEmail() {
+        UserDto created = createUser("contract@example.com");
+
+        webTestClient.get().uri("/users/{id}", created.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Contract User")
+                .jsonPath("$.email").isEqualTo("contract@example.com");
+
+        webTestClient.post().uri("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new UserDto(null, "Other User", "contract@example.com", null, null))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    @DisplayName("Невалидный юзер - 400, несуществующий юзер - 404")
+    void user_ShouldReturnErrors_ForInvalidBodyAndUnknownId() {
+        webTestClient.post().uri("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new UserDto(null, "", "not-an-email", null, null))
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        webTestClient.get().uri("/users/{id}", 999_999)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("include=subscriptions возвращает юзера вместе с подписками, PATCH меняет только переданные поля")
+    void userWithSubscriptions_ShouldIncludeSubscriptions_AndPatchOnlyGivenFields() {
+        Long userId = createUser("include@example.com").getId();
+        addSubscription(userId, "Яндекс.Плюс");
+
+        webTestClient.get().uri("/users/{id}?include=subscriptions", userId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.subscriptions.length()").isEqualTo(1)
+                .jsonPath("$.subscriptions[0].serviceTitle").isEqualTo("Яндекс.Плюс")
+                .jsonPath("$.subscriptionCount").isEqualTo(1);
+
+        webTestClient.patch().uri("/users/{id}", userId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("name", "Patched User"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Patched User")
+                .jsonPath("$.email").isEqualTo("include@example.com")
+                .jsonPath("$.subscriptionCount").isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Страницы подписок по курсору и потоковая выгрузка NDJSON отдают все подписки по порядку")
+    void subscriptions_ShouldBePagedByCursor_AndExportedAsNdjson() {
+        Long userId = createUser("page@example.com").getId();
+        webTestClient.post().uri("/subscriptions/users/{id}/batch", userId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(
+                        new SubscriptionDto(null, "Netflix", "Basic", null, null),
+                        new SubscriptionDto(null, "Spotify", "Premium", null, null),
+                        new SubscriptionDto(null, "YouTube", "Premium", null, null)))
+                .exchange()
+                .expectStatus().isOk();
+
+        SubscriptionPageDto firstPage = getPage("/subscriptions?limit=2");
+        assertEquals(2, firstPage.getItems().size());
+        assertNotNull(firstPage.getNextCursor());
+        SubscriptionPageDto lastPage = getPage("/subscriptions?limit=2&after=" + firstPage.getNextCursor());
+        assertEquals(1, lastPage.getItems().size());
+        assertNull(lastPage.getNextCursor());
+
+        List<SubscriptionDto> exported = webTestClient.get().uri("/subscriptions/export")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(SubscriptionDto.class)
+                .getResponseBody()
+                .collectList()
+                .block();
+        assertNotNull(exported);
+        assertEquals(List.of("Netflix", "Spotify", "YouTube"),
+                exported.stream().map(SubscriptionDto::getServiceTitle).toList());
+        assertTrue(exported.stream().allMatch(subscription -> userId.equals(subscription.getUserId())));
+    }
+
+    @Test
+    @DisplayName("PATCH названия подписки переносит ее в рейтинге популярности")
+    void patchSubscription_ShouldUpdateTitleAndPopularity() {
+        Long userId = createUser("top@example.com").getId();
+        Long subscriptionId = addSubscription(userId, "Netflix").getId();
+        addSubscription(userId, "Spotify");
+
+        webTestClient.patch().uri("/subscriptions/{id}", subscriptionId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("serviceTitle", "Spotify"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.serviceTitle").isEqualTo("Spotify")
+                .jsonPath("$.userId").isEqualTo(userId);
+
+        webTestClient.get().uri("/subscriptions/top?limit=3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].serviceTitle").isEqualTo("Spotify")
+                .jsonPath("$[0].count").isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Удаление подписки: чужой юзер - 400, свой - подписка удаляется, затем 404")
+    void deleteSubscription_ShouldCheckOwnerAndRemoveSubscription() {
+        Long ownerId = createUser("owner@example.com").getId();
+        Long otherId = createUser("other@example.com").getId();
+        Long subscriptionId = addSubscription(ownerId, "Netflix").getId();
+
+        webTestClient.delete().uri("/subscriptions/{id}/users/{userId}", subscriptionId, otherId)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        webTestClient.delete().uri("/subscriptions/{id}/users/{userId}", subscriptionId, ownerId)
+                .exchange()
+                .expectStatus().isOk();
+
+        webTestClient.get().uri("/subscriptions/{id}", subscriptionId)
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.get().uri("/subscriptions/users/{id}", ownerId)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(0);
+        webTestClient.get().uri("/subscriptions/users/{id}", 999_999)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("Добавление, изменение и удаление подписки пишут события в outbox")
+    void subscriptionChanges_ShouldBeWrittenToOutbox() {
+        Long userId = createUser("outbox@example.com").getId();
+        Long subscriptionId = addSubscription(userId, "Netflix").getId();
+
+        webTestClient.patch().uri("/subscriptions/{id}", subscriptionId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("plan", "Basic"))
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.delete().uri("/subscriptions/{id}/users/{userId}", subscriptionId, userId)
+                .exchange()
+                .expectStatus().isOk();
+
+        List<Map<String, Object>> events = jdbcTemplate.queryForList(
+                "SELECT event_type, subscription_id, user_id, service_title, plan FROM subscription_outbox ORDER BY id");
+        assertEquals(List.of("CREATED", "UPDATED", "DELETED"),
+                events.stream().map(event -> event.get("event_type")).toList());
+        events.forEach(event -> {
+            assertEquals(subscriptionId, ((Number) event.get("subscription_id")).longValue());
+            assertEquals(userId, ((Number) event.get("user_id")).longValue());
+            assertEquals("Netflix", event.get("service_title"));
+        });
+        assertEquals("Basic", events.get(1).get("plan"));
+    }
+
+
+    private UserDto createUser(String email) {
+        return webTestClient.post().uri("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new UserDto(null, "Contract User", email, null, null))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(UserDto.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private SubscriptionDto addSubscription(Long userId, String serviceTitle) {
+        return webTestClient.post().uri("/subscriptions/users/{id}", userId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(new SubscriptionDto(null, serviceTitle, "Premium", "Description", null))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(SubscriptionDto.class)
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private SubscriptionPageDto getPage(String uri) {
+        return webTestClient.get().uri(uri)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(SubscriptionPageDto.class)
+                .returnResult()
+                .getResponseBody();
+    }
+}
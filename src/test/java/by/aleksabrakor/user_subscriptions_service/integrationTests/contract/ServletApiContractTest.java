@@ -0,0 +1,10 @@
+package by.aleksabrakor.user_subscriptions_service.integrationTests.contract;
+
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Контракт API на servlet-стеке (Spring MVC + JPA).
+ */
+@ActiveProfiles("test")
+class ServletApiContractTest extends AbstractApiContractTest {
+}
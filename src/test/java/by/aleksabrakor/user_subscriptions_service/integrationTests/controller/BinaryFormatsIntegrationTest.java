@@ -0,0 +1,168 @@
+package by.aleksabrakor.user_subscriptions_service.integrationTests.controller;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionPageDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.repository.OutboxEventRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionService;
+import by.aleksabrakor.user_subscriptions_service.service.UserService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Бинарные форматы (CBOR, Smile) и gzip-сжатие ответов. Через настоящий HTTP-сервер: сжатие выполняет Tomcat,
+ * в MockMvc его нет. Без @Transactional - данные должны быть видны потокам сервера.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class BinaryFormatsIntegrationTest {
+    private static final String APPLICATION_SMILE = "application/x-jackson-smile";
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = userService.saveUser(new UserDto(null, "Binary User", "binary@example.com", null, null)).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        outboxEventRepository.deleteAllInBatch();
+        subscriptionRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Пакет подписок принимается в CBOR, список подписок юзера отдается в CBOR с теми же данными, что и в JSON")
+    void userSubscriptions_ShouldRoundTripThroughCbor() throws Exception {
+        // Arrange
+        List<SubscriptionDto> batch = List.of(
+                new SubscriptionDto(null, "Netflix", "Premium", "Описание", null),
+                new SubscriptionDto(null, "Spotify", null, null, null));
+        HttpResponse<byte[]> created = send(HttpRequest.newBuilder(uri("/subscriptions/users/" + userId + "/batch"))
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_CBOR_VALUE)
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_CBOR_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(cborMapper.writeValueAsBytes(batch))));
+        assertEquals(200, created.statusCode());
+
+        // Act
+        HttpResponse<byte[]> cbor = send(HttpRequest.newBuilder(uri("/subscriptions/users/" + userId))
+                .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_CBOR_VALUE));
+        HttpResponse<byte[]> json = send(HttpRequest.newBuilder(uri("/subscriptions/users/" + userId)));
+
+        // Assert
+        assertEquals(MediaType.APPLICATION_CBOR_VALUE, cbor.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElseThrow());
+        List<SubscriptionDto> fromCbor = cborMapper.readValue(cbor.body(), new TypeReference<>() {
+        });
+        List<SubscriptionDto> fromJson = objectMapper.readValue(json.body(), new TypeReference<>() {
+        });
+        assertEquals(2, fromCbor.size());
+        assertEquals(fromJson, fromCbor);
+        assertEquals("Описание", fromCbor.get(0).getDescription());
+        assertTrue(cbor.body().length < json.body().length);
+    }
+
+    @Test
+    @DisplayName("Список юзеров отдается в Smile, без Accept - в JSON")
+    void findAllUsers_ShouldNegotiateSmile() throws Exception {
+        // Act
+        HttpResponse<byte[]> smile = send(HttpRequest.newBuilder(uri("/users"))
+                .header(HttpHeaders.ACCEPT, APPLICATION_SMILE));
+        HttpResponse<byte[]> json = send(HttpRequest.newBuilder(uri("/users")));
+
+        // Assert
+        assertEquals(APPLICATION_SMILE, smile.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElseThrow());
+        List<UserDto> users = smileMapper.readValue(smile.body(), new TypeReference<>() {
+        });
+        assertEquals(List.of("binary@example.com"), users.stream().map(UserDto::getEmail).toList());
+        assertTrue(json.headers().firstValue(HttpHeaders.CONTENT_TYPE).orElseThrow()
+                .startsWith(MediaType.APPLICATION_JSON_VALUE));
+    }
+
+    @Test
+    @DisplayName("Ответ больше порога сжимается gzip, маленький ответ - нет")
+    void responses_ShouldBeGzipped_AboveThreshold() throws Exception {
+        // Arrange
+        List<SubscriptionDto> subscriptions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            subscriptions.add(new SubscriptionDto(null, "Service " + (i % 10), "Premium", "Description " + i, null));
+        }
+        subscriptionService.addSubscriptionsToUser(subscriptions, userId);
+
+        // Act
+        HttpResponse<byte[]> page = send(HttpRequest.newBuilder(uri("/subscriptions?limit=100"))
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+        HttpResponse<byte[]> top = send(HttpRequest.newBuilder(uri("/subscriptions/top?limit=1"))
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+
+        // Assert
+        assertEquals("gzip", page.headers().firstValue(HttpHeaders.CONTENT_ENCODING).orElseThrow());
+        assertEquals(100, objectMapper.readValue(gunzip(page.body()), SubscriptionPageDto.class).getItems().size());
+        assertTrue(top.headers().firstValue(HttpHeaders.CONTENT_ENCODING).isEmpty());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private HttpResponse<byte[]> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static byte[] gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package by.aleksabrakor.user_subscriptions_service.integrationTests.controller;
+
+import by.aleksabrakor.user_subscriptions_service.model.Subscription;
+import by.aleksabrakor.user_subscriptions_service.model.User;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static by.aleksabrakor.user_subscriptions_service.integrationTests.SqlQueryCountMatchers.queryCount;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Количество SQL-запросов на endpoint. Без @Transactional: каждый HTTP-запрос идет в своей транзакции,
+ * как в приложении, и не читает сущности из контекста персистентности теста.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+class SqlBudgetIntegrationTest {
+    private static final int USERS = 3;
+    private static final int SUBSCRIPTIONS_PER_USER = 3;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    private User user;
+    private Subscription subscription;
+
+    @BeforeEach
+    void setUp() {
+        List<Subscription> subscriptions = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            User saved = userRepository.save(new User(null, "Budget User " + i, "budget" + i + "@example.com",
+                    null, null, 0, null));
+            for (int j = 0; j < SUBSCRIPTIONS_PER_USER; j++) {
+                subscriptions.add(new Subscription(null, "Service " + j, "Premium", "Description", null, null, saved));
+            }
+            user = saved;
+        }
+        subscription = subscriptionRepository.saveAll(subscriptions).get(0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscriptionRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Списки юзеров читаются одним запросом - с подписками и без, без N+1 по ленивой коллекции")
+    void findAllUsers_ShouldUseSingleQuery() throws Exception {
+        mockMvc.perform(get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(queryCount(1));
+        mockMvc.perform(get("/users?include=subscriptions"))
+                .andExpect(status().isOk())
+                .andExpect(queryCount(1));
+    }
+
+    @Test
+    @DisplayName("Юзер по id: один запрос при промахе кеша, ноль при попадании; с подписками - один запрос")
+    void getUser_ShouldUseCacheAndSingleQuery() throws Exception {
+        mockMvc.perform(get("/users/{id}", user.getId()))
+                .andExpect(status().isOk())
+                .andExpect(queryCount(1));
+        mockMvc.perform(get("/users/{id}", user.getId()))
+                .andExpect(status().isOk())
+                .andExpect(queryCount(0));
+        mockMvc.perform(get("/users/{id}?include=subscriptions", user.getId()))
+                .andExpect(status().isOk())
+                .andExpect(queryCount(1));
+    }
+
+    @Test
+    @DisplayName("Чтение подписок - один запрос, ТОП популярных отдается из памяти без запросов")
+    void subscriptionReads_ShouldUseSingleQueryOrNone() throws Exception {
+        mockMvc.perform(get("/subscriptions?limit=5"))
+                .andExpect(status().isOk())
+                .andExpect(queryCount(1));
+        mockMvc.perform(get("/subscriptions/{id}", subscription.getId()))
+                .andExpect(status().isOk())
+                .andExpect(queryCount(1));
+        mockMvc.perform(get("/subscriptions/users/{id}", user.getId()))
+                .andExpect(status().isOk())
+                .andExpect(queryCount(1));
+        mockMvc.perform(get("/subscriptions/top"))
+                .andExpect(status().isOk())
+                .andExpect(queryCount(0))
+                .andExpect(header().exists("X-DB-Time"));
+    }
+
+    @Test
+    @DisplayName("Ошибка 404 тоже получает заголовки бюджета SQL")
+    void notFound_ShouldAlsoReportQueryCount() throws Exception {
+        mockMvc.perform(get("/subscriptions/{id}", Long.MAX_VALUE))
+                .andExpect(status().isNotFound())
+                .andExpect(queryCount(1));
+    }
+}
@@ -1,5 +1,6 @@
 package by.aleksabrakor.user_subscriptions_service.integrationTests.controller;
 
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
 import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
 import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
 import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
@@ -12,12 +13,23 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.List;
+
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.hamcrest.Matchers.startsWith;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -38,6 +50,9 @@ class SubscriptionControllerIntegrationTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
 
     @BeforeEach
     void setUp() {
@@ -46,6 +61,10 @@ class SubscriptionControllerIntegrationTest {
         userRepository.deleteAll();
     }
 
+    private int subscriptionCount(Long userId) {
+        return jdbcTemplate.queryForObject("SELECT subscription_count FROM users WHERE id = ?", Integer.class, userId);
+    }
+
     private Long createTestUserReturnId() throws Exception {
         String userJson = """
                 {
@@ -124,6 +143,52 @@ class SubscriptionControllerIntegrationTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Пакетное сохранение подписок для юзера, если юзер существует")
+    void addSubscriptionsToUser_ShouldReturnSubscriptions_WhenUserIdExists() throws Exception {
+        // Подготовка тестовых данных
+        Long userId = createTestUserReturnId();
+
+        String subscriptionsJson = """
+                [
+                    { "serviceTitle": "Яндекс.Плюс" },
+                    { "serviceTitle": "Netflix", "plan": "Standard" }
+                ]
+                """;
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(post("/subscriptions/users/{userId}/batch", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(subscriptionsJson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").isNumber())
+                .andExpect(jsonPath("$[0].userId").value(userId))
+                .andExpect(jsonPath("$[1].serviceTitle").value("Netflix"));
+
+        mockMvc.perform(get("/subscriptions/users/{id}", userId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+
+    @Test
+    @DisplayName("Вернет BadRequest 400 при пакетном сохранении подписок с невалидными полями")
+    void addSubscriptionsToUser_ShouldReturnBadRequest400_WhenInvalidInput() throws Exception {
+        // Подготовка тестовых данных
+        Long userId = createTestUserReturnId();
+
+        String subscriptionsJson = """
+                [
+                    { "serviceTitle": "Яндекс.Плюс" },
+                    { "serviceTitle": null }
+                ]
+                """;
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(post("/subscriptions/users/{userId}/batch", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(subscriptionsJson))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @DisplayName("Поиск списка всех подписок из БД")
     void findAllSubscriptions_ShouldReturnAllSubscriptions() throws Exception {
@@ -152,9 +217,45 @@ class SubscriptionControllerIntegrationTest {
         // Выполнение запроса и проверка результата
         mockMvc.perform(get("/subscriptions"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.length()").value(2))
-                .andExpect(jsonPath("$[0].serviceTitle").value("Яндекс.Плюс"))
-                .andExpect(jsonPath("$[1].serviceTitle").value("Яндекс"));
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[0].serviceTitle").value("Яндекс.Плюс"))
+                .andExpect(jsonPath("$.items[1].serviceTitle").value("Яндекс"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Постраничный обход подписок по курсору")
+    void findAllSubscriptions_ShouldReturnNextPage_WhenCursorPassed() throws Exception {
+        // Подготовка тестовых данных
+        Long userId = createTestUserReturnId();
+        for (String title : new String[]{"Яндекс.Плюс", "Яндекс", "Netflix"}) {
+            mockMvc.perform(post("/subscriptions/users/{userId}", userId)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content("{\"serviceTitle\": \"" + title + "\"}"));
+        }
+
+        // Первая страница
+        String firstPage = mockMvc.perform(get("/subscriptions").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.items[0].serviceTitle").value("Яндекс.Плюс"))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty())
+                .andReturn().getResponse().getContentAsString();
+        String nextCursor = objectMapper.readTree(firstPage).get("nextCursor").asText();
+
+        // Вторая (последняя) страница
+        mockMvc.perform(get("/subscriptions").param("after", nextCursor).param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].serviceTitle").value("Netflix"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Вернет BadRequest 400 при некорректном курсоре")
+    void findAllSubscriptions_ShouldReturnBadRequest400_WhenCursorInvalid() throws Exception {
+        mockMvc.perform(get("/subscriptions").param("after", "***"))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -163,7 +264,21 @@ class SubscriptionControllerIntegrationTest {
         // Выполнение запроса и проверка результата
         mockMvc.perform(get("/subscriptions"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.length()").value(0));
+                .andExpect(jsonPath("$.items.length()").value(0));
+    }
+
+    @Test
+    @DisplayName("Потоковая выгрузка подписок отдается асинхронно в формате NDJSON")
+    void exportSubscriptions_ShouldStreamNdjson() throws Exception {
+        // Выполнение запроса: тело пишется асинхронно, вне потока обработки запроса
+        MvcResult mvcResult = mockMvc.perform(get("/subscriptions/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Проверка результата
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"));
     }
 
     @Test
@@ -254,6 +369,42 @@ class SubscriptionControllerIntegrationTest {
                 .andExpect(jsonPath("$.length()").value(0));
     }
 
+    @Test
+    @DisplayName("Список подписок юзера: 304 по If-None-Match, после удаления подписки ETag меняется")
+    void getUserSubscriptions_ShouldReturnNotModified_UntilSubscriptionDeleted() throws Exception {
+        // Подготовка тестовых данных
+        Long userId = createTestUserReturnId();
+        String subscriptionJson = """
+                {
+                     "serviceTitle": "Яндекс.Плюс"
+                }
+                """;
+        String createResponse = mockMvc.perform(post("/subscriptions/users/{userId}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(subscriptionJson))
+                .andReturn().getResponse().getContentAsString();
+        Long subscriptionId = objectMapper.readValue(createResponse, SubscriptionDto.class).getId();
+
+        String eTag = mockMvc.perform(get("/subscriptions/users/{id}", userId))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, startsWith("W/")))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(get("/subscriptions/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().string(""));
+
+        mockMvc.perform(delete("/subscriptions/{subscriptionId}/users/{userId}", subscriptionId, userId))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/subscriptions/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
 
     @Test
     @DisplayName("Обновление полей подписки, если sub_id существует ")
@@ -314,6 +465,70 @@ class SubscriptionControllerIntegrationTest {
     }
 
 
+    @Test
+    @DisplayName("Частичное обновление подписки: меняются только переданные поля, остальные сохраняются")
+    void patchSubscription_ShouldUpdateOnlySuppliedFields_WhenSubIdExists() throws Exception {
+        // Подготовка тестовых данных
+        Long userId = createTestUserReturnId();
+
+        String subscriptionJson = """
+                {
+                     "serviceTitle": "Яндекс.Плюс",
+                     "plan": "Basic",
+                     "description": "семейная"
+                }
+                """;
+        String createSubResponse = mockMvc.perform(post("/subscriptions/users/{userId}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(subscriptionJson))
+                .andReturn().getResponse().getContentAsString();
+        Long subId = objectMapper.readValue(createSubResponse, SubscriptionDto.class).getId();
+
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(patch("/subscriptions/{subscription_id}", subId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"plan\": \"Premium\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(subId))
+                .andExpect(jsonPath("$.serviceTitle").value("Яндекс.Плюс"))
+                .andExpect(jsonPath("$.plan").value("Premium"))
+                .andExpect(jsonPath("$.description").value("семейная"))
+                .andExpect(jsonPath("$.userId").value(userId));
+
+        mockMvc.perform(get("/subscriptions/{id}", subId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.plan").value("Premium"));
+    }
+
+    @Test
+    @DisplayName("Частичное обновление подписки, если sub_id не существует")
+    void patchSubscription_ShouldReturns404_WhenSubNotExists() throws Exception {
+        mockMvc.perform(patch("/subscriptions/{subscription_id}", 999L)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"plan\": \"Premium\"}"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("Object was not found: Подписка на сервис с id = 999 не найдена"));
+    }
+
+    @Test
+    @DisplayName("Частичное обновление подписки, если нового юзера не существует")
+    void patchSubscription_ShouldReturns404_WhenNewUserNotExists() throws Exception {
+        Long userId = createTestUserReturnId();
+        String subscriptionResponse = mockMvc.perform(post("/subscriptions/users/{userId}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"serviceTitle\": \"Netflix\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        Long subId = objectMapper.readValue(subscriptionResponse, SubscriptionDto.class).getId();
+
+        mockMvc.perform(patch("/subscriptions/{subscription_id}", subId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": 999}"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("Object was not found: Юзер с id = 999 не найден"));
+    }
+
+
     @Test
     @DisplayName("Удаление подписки по существующему sub_id и user_id")
     void deleteSubscriptionFromUser_WhenSubIdAndUserIdExists() throws Exception {
@@ -344,6 +559,50 @@ class SubscriptionControllerIntegrationTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    @DisplayName("Счетчик подписок юзера меняется при добавлении, пакетном добавлении, переносе и удалении подписок")
+    void subscriptionCount_ShouldFollowAddMoveAndDelete() throws Exception {
+        // Подготовка тестовых данных
+        Long userId = createTestUserReturnId();
+        String otherUserResponse = mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"Other User\", \"email\": \"other@example.com\"}"))
+                .andReturn().getResponse().getContentAsString();
+        Long otherUserId = objectMapper.readValue(otherUserResponse, UserDto.class).getId();
+
+        String createSubResponse = mockMvc.perform(post("/subscriptions/users/{userId}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"serviceTitle\": \"Яндекс.Плюс\"}"))
+                .andReturn().getResponse().getContentAsString();
+        Long subId = objectMapper.readValue(createSubResponse, SubscriptionDto.class).getId();
+        String batchResponse = mockMvc.perform(post("/subscriptions/users/{userId}/batch", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"serviceTitle\": \"Netflix\"}, {\"serviceTitle\": \"Spotify\"}]"))
+                .andReturn().getResponse().getContentAsString();
+        SubscriptionDto[] batch = objectMapper.readValue(batchResponse, SubscriptionDto[].class);
+        assertEquals(3, subscriptionCount(userId));
+
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(put("/subscriptions/{subscription_id}", subId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": " + otherUserId + "}"))
+                .andExpect(status().isOk());
+        mockMvc.perform(patch("/subscriptions/{subscription_id}", batch[0].getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": " + otherUserId + "}"))
+                .andExpect(status().isOk());
+        assertEquals(1, subscriptionCount(userId));
+        assertEquals(2, subscriptionCount(otherUserId));
+
+        mockMvc.perform(delete("/subscriptions/{subscriptionId}/users/{userId}", subId, otherUserId))
+                .andExpect(status().isOk());
+        // подписка другого юзера не удаляется, счетчик не меняется
+        mockMvc.perform(delete("/subscriptions/{subscriptionId}/users/{userId}", batch[1].getId(), otherUserId))
+                .andExpect(status().isBadRequest());
+        assertEquals(1, subscriptionCount(userId));
+        assertEquals(1, subscriptionCount(otherUserId));
+    }
+
     @Test
     @DisplayName("Вернет NotFound 404 при попытке удаление подписки по не существующему sub_id")
     void deleteSubscriptionFromUser_ShouldReturns404_WhenUserNotExists() throws Exception {
@@ -386,68 +645,41 @@ class SubscriptionControllerIntegrationTest {
     }
 
     @Test
-    @DisplayName("ТОП-3 популярных подписок")
-    void getTop3PopularSubscriptions_ShouldReturnTop3Subscriptions() throws Exception {
-        // Подготовка тестовых данных
-        Long userId1 = createTestUserReturnId();
-
-        //Создаем подписку для этого пользователя
-        String subscriptionJson = """
-                {
-                     "serviceTitle": "Яндекс.Плюс"
-                }
-                """;
-        String subscriptionJson1 = """
-                {
-                     "serviceTitle": "Яндекс"
-                }
-                """;
-        String subscriptionJson2 = """
-                {
-                     "serviceTitle": "Яндекс.Плюс+"
-                }
-                """;
-        String subscriptionJson3 = """
-                {
-                     "serviceTitle": "Яндекс"
-                }
-                """;
-
-        mockMvc.perform(post("/subscriptions/users/{userId}", userId1)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(subscriptionJson))
-                .andReturn().getResponse().getContentAsString();
-        mockMvc.perform(post("/subscriptions/users/{userId}", userId1)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(subscriptionJson1))
-                .andReturn().getResponse().getContentAsString();
-        mockMvc.perform(post("/subscriptions/users/{userId}", userId1)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(subscriptionJson2))
-                .andReturn().getResponse().getContentAsString();
-        mockMvc.perform(post("/subscriptions/users/{userId}", userId1)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(subscriptionJson3))
-                .andReturn().getResponse().getContentAsString();
-
-
-        // Выполнение запроса и проверка результата
-        mockMvc.perform(get("/subscriptions/top")
-                        .contentType(MediaType.APPLICATION_JSON))
-                .andExpect(status().isOk())
-                .andExpect(jsonPath("$.length()").value(3))
-        ;
+    @DisplayName("Вернет BadRequest 400 при некорректном размере ТОП-N")
+    void getTopPopularSubscriptions_ShouldReturnBadRequest400_WhenLimitInvalid() throws Exception {
+        mockMvc.perform(get("/subscriptions/top").param("limit", "0"))
+                .andExpect(status().isBadRequest());
     }
 
     @Test
-    @DisplayName("ТОП-3 популярных подписок")
-    void getTop3PopularSubscriptions_ShouldReturnEmptySubscriptions() throws Exception {
+    @DisplayName("Поиск подписок по части названия без учета регистра")
+    void search_ShouldFindByPartOfServiceTitle() throws Exception {
+        // Arrange
+        Long userId = createTestUserReturnId();
+        String subscriptionsJson = objectMapper.writeValueAsString(List.of(
+                new SubscriptionDto(null, "Zzsearch YouTube Premium", null, null, null),
+                new SubscriptionDto(null, "zzsearch youtube music", null, null, null),
+                new SubscriptionDto(null, "Zzsearch 100% Fun", null, null, null),
+                new SubscriptionDto(null, "Яндекс Плюс", null, null, null)));
+        mockMvc.perform(post("/subscriptions/users/{userId}/batch", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(subscriptionsJson))
+                .andExpect(status().isOk());
 
-        // Выполнение запроса и проверка результата
-        mockMvc.perform(get("/subscriptions/top")
-                        .contentType(MediaType.APPLICATION_JSON))
+        // Act & Assert
+        mockMvc.perform(get("/subscriptions/search").param("q", "TUBE"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.length()").value(0))
-        ;
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].serviceTitle").value("Zzsearch YouTube Premium"))
+                .andExpect(jsonPath("$[1].serviceTitle").value("zzsearch youtube music"));
+        mockMvc.perform(get("/subscriptions/search").param("q", "0% F"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].serviceTitle").value("Zzsearch 100% Fun"));
+        mockMvc.perform(get("/subscriptions/search").param("q", "ндекс").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+        mockMvc.perform(get("/subscriptions/search").param("q", "Yo"))
+                .andExpect(status().isBadRequest());
     }
-}
\ No newline at end of file
+}
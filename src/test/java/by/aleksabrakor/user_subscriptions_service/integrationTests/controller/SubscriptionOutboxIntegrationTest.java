@@ -0,0 +1,182 @@
+package by.aleksabrakor.user_subscriptions_service.integrationTests.controller;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionChangeEvent;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UpdateSubscriptionRequest;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.exception.NotFoundException;
+import by.aleksabrakor.user_subscriptions_service.model.SubscriptionEventType;
+import by.aleksabrakor.user_subscriptions_service.repository.OutboxEventRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionOutboxRelay;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionService;
+import by.aleksabrakor.user_subscriptions_service.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Outbox событий подписок. Без @Transactional: события должны попасть в таблицу коммитом транзакции сервиса,
+ * а relay разбирает ее в своих транзакциях. Sink - файл NDJSON из application-test.yml.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class SubscriptionOutboxIntegrationTest {
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private SubscriptionOutboxRelay subscriptionOutboxRelay;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.outbox.file-path}")
+    private Path eventsFile;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        outboxEventRepository.deleteAllInBatch();
+        Files.deleteIfExists(eventsFile);
+        userId = userService.saveUser(new UserDto(null, "Outbox User", "outbox@example.com", null, null)).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        outboxEventRepository.deleteAllInBatch();
+        subscriptionRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Добавление, обновление и удаление подписки доставляются sink-у по порядку, outbox после разбора пуст")
+    void drain_ShouldPublishCreatedUpdatedDeletedInOrder() throws Exception {
+        // Arrange
+        SubscriptionDto created = subscriptionService.addSubscriptionToUser(
+                new SubscriptionDto(null, "Netflix", "Basic", "Description", null), userId);
+        UpdateSubscriptionRequest changes = new UpdateSubscriptionRequest();
+        changes.setPlan("Premium");
+        subscriptionService.patchSubscription(changes, created.getId());
+        subscriptionService.deleteSubscriptionFromUser(created.getId(), userId);
+
+        // Act
+        long published = subscriptionOutboxRelay.drain();
+
+        // Assert
+        assertEquals(3, published);
+        assertEquals(0, outboxEventRepository.count());
+        List<SubscriptionChangeEvent> events = readEvents();
+        assertEquals(List.of(SubscriptionEventType.CREATED, SubscriptionEventType.UPDATED, SubscriptionEventType.DELETED),
+                events.stream().map(SubscriptionChangeEvent::getType).toList());
+        assertTrue(events.stream().allMatch(event -> created.getId().equals(event.getSubscriptionId())));
+        assertTrue(events.stream().allMatch(event -> userId.equals(event.getUserId())));
+        assertEquals("Premium", events.get(1).getPlan());
+        assertEquals("Netflix", events.get(2).getServiceTitle());
+        assertTrue(events.get(0).getId() < events.get(1).getId());
+        assertNotNull(events.get(0).getOccurredAt());
+    }
+
+    @Test
+    @DisplayName("События одной подписки доставляются в порядке коммитов, а не id из блоков разных экземпляров")
+    void drain_ShouldPublishEventsOfSubscriptionInCommitOrder() throws Exception {
+        // Arrange: UPDATED получил id из блока, выданного другим экземпляром раньше, но закоммичен после CREATED
+        jdbcTemplate.update("INSERT INTO subscription_outbox (id, event_type, subscription_id, user_id, service_title) "
+                            + "VALUES (1000, 'CREATED', 42, ?, 'Netflix')", userId);
+        jdbcTemplate.update("INSERT INTO subscription_outbox (id, event_type, subscription_id, user_id, service_title) "
+                            + "VALUES (10, 'UPDATED', 42, ?, 'Netflix')", userId);
+        jdbcTemplate.update("INSERT INTO subscription_outbox (id, event_type, subscription_id, user_id, service_title) "
+                            + "VALUES (20, 'DELETED', 42, ?, 'Netflix')", userId);
+
+        // Act
+        long published = subscriptionOutboxRelay.drain();
+
+        // Assert
+        assertEquals(3, published);
+        assertEquals(List.of(1000L, 10L, 20L), readEvents().stream().map(SubscriptionChangeEvent::getId).toList());
+    }
+
+    @Test
+    @DisplayName("Пакетное добавление дает по событию на подписку, откаченная транзакция событий не оставляет")
+    void drain_ShouldPublishBatchAndIgnoreRolledBackChanges() throws Exception {
+        // Arrange
+        subscriptionService.addSubscriptionsToUser(List.of(
+                new SubscriptionDto(null, "Netflix", null, null, null),
+                new SubscriptionDto(null, "Spotify", null, null, null)), userId);
+        assertThrows(NotFoundException.class, () -> subscriptionService.addSubscriptionToUser(
+                new SubscriptionDto(null, "YouTube", null, null, null), 999_999L));
+
+        // Act
+        long published = subscriptionOutboxRelay.drain();
+
+        // Assert
+        assertEquals(2, published);
+        assertEquals(List.of("Netflix", "Spotify"),
+                readEvents().stream().map(SubscriptionChangeEvent::getServiceTitle).sorted().toList());
+        assertEquals(0, subscriptionOutboxRelay.drain());
+    }
+
+    @Test
+    @DisplayName("При ошибке sink-а пачка остается в outbox и доставляется следующим разбором")
+    void drain_ShouldKeepEvents_WhenSinkFails() throws Exception {
+        // Arrange
+        subscriptionService.addSubscriptionToUser(new SubscriptionDto(null, "Netflix", null, null, null), userId);
+        SubscriptionOutboxRelay failingRelay = new SubscriptionOutboxRelay(jdbcTemplate, transactionManager,
+                events -> {
+                    throw new IOException("sink недоступен");
+                }, false, 100, new SimpleMeterRegistry());
+
+        // Act & Assert
+        assertThrows(UncheckedIOException.class, failingRelay::drain);
+        assertEquals(1, outboxEventRepository.count());
+        assertEquals(1, subscriptionOutboxRelay.drain());
+        assertEquals(1, readEvents().size());
+    }
+
+    private List<SubscriptionChangeEvent> readEvents() throws IOException {
+        List<SubscriptionChangeEvent> events = new ArrayList<>();
+        for (String line : Files.readAllLines(eventsFile)) {
+            events.add(objectMapper.readValue(line, SubscriptionChangeEvent.class));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,169 @@
+package by.aleksabrakor.user_subscriptions_service.integrationTests.controller;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.repository.OutboxEventRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionStatRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionPopularityIndex;
+import by.aleksabrakor.user_subscriptions_service.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * ТОП-N и подсказки названий. Без @Transactional: счетчики популярности меняются только после коммита транзакции.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+class SubscriptionPopularityIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private SubscriptionPopularityIndex popularityIndex;
+
+    @Autowired
+    private SubscriptionStatRepository subscriptionStatRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = userService.saveUser(new UserDto(null, "Top User", "top@example.com", null, null)).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscriptionStatRepository.deleteAllInBatch();
+        outboxEventRepository.deleteAllInBatch();
+        subscriptionRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+        // удаление в обход сервиса индекс не видит - перечитываем его из БД
+        popularityIndex.load();
+    }
+
+    @Test
+    @DisplayName("ТОП-3 популярных подписок")
+    void getTop3PopularSubscriptions_ShouldReturnTop3Subscriptions() throws Exception {
+        // Подготовка тестовых данных
+        for (String title : List.of("Яндекс.Плюс", "Яндекс", "Яндекс.Плюс+", "Яндекс")) {
+            mockMvc.perform(post("/subscriptions/users/{userId}", userId)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(new SubscriptionDto(null, title, null, null, null))))
+                    .andExpect(status().isOk());
+        }
+
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(get("/subscriptions/top")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].serviceTitle").value("Яндекс"))
+                .andExpect(jsonPath("$[0].count").value(2));
+
+        mockMvc.perform(get("/subscriptions/top").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].serviceTitle").value("Яндекс"));
+    }
+
+    @Test
+    @DisplayName("ТОП-3 популярных подписок")
+    void getTop3PopularSubscriptions_ShouldReturnEmptySubscriptions() throws Exception {
+        mockMvc.perform(get("/subscriptions/top")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    @Test
+    @DisplayName("Подсказки названий по префиксу без учета регистра")
+    void suggest_ShouldReturnTitlesByPrefix() throws Exception {
+        // Arrange
+        mockMvc.perform(post("/subscriptions/users/{userId}/batch", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(
+                                new SubscriptionDto(null, "Zzsearch YouTube Premium", null, null, null),
+                                new SubscriptionDto(null, "zzsearch youtube music", null, null, null),
+                                new SubscriptionDto(null, "Zzsearch 100% Fun", null, null, null)))))
+                .andExpect(status().isOk());
+
+        // Act & Assert
+        mockMvc.perform(get("/subscriptions/titles/suggest").param("prefix", "ZZSEARCH Y"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0]").value("zzsearch youtube music"))
+                .andExpect(jsonPath("$[1]").value("Zzsearch YouTube Premium"));
+        mockMvc.perform(get("/subscriptions/titles/suggest").param("prefix", "zzsearch").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0]").value("Zzsearch 100% Fun"));
+    }
+
+    @Test
+    @DisplayName("Удаление юзера убирает его подписки из ТОП-N и подсказок")
+    void deleteUser_ShouldDecrementPopularityOfItsSubscriptions() throws Exception {
+        // Arrange
+        Long otherUserId = userService.saveUser(new UserDto(null, "Other User", "other@example.com", null, null)).getId();
+        mockMvc.perform(post("/subscriptions/users/{userId}/batch", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(
+                                new SubscriptionDto(null, "Netflix", null, null, null),
+                                new SubscriptionDto(null, "Netflix", null, null, null),
+                                new SubscriptionDto(null, "Spotify", null, null, null)))))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/subscriptions/users/{userId}", otherUserId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new SubscriptionDto(null, "Netflix", null, null, null))))
+                .andExpect(status().isOk());
+
+        // Act
+        mockMvc.perform(delete("/users/{userId}", userId))
+                .andExpect(status().isOk());
+
+        // Assert
+        mockMvc.perform(get("/subscriptions/top"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].serviceTitle").value("Netflix"))
+                .andExpect(jsonPath("$[0].count").value(1));
+        mockMvc.perform(get("/subscriptions/titles/suggest").param("prefix", "Spo"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+}
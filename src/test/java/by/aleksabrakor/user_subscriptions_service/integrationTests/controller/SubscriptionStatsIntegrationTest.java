@@ -0,0 +1,223 @@
+package by.aleksabrakor.user_subscriptions_service.integrationTests.controller;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.repository.OutboxEventRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionStatRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionService;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionStatsBackfill;
+import by.aleksabrakor.user_subscriptions_service.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Rollup новых подписок. Без @Transactional: пересчет истории идет в собственных транзакциях в нескольких потоках.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+class SubscriptionStatsIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private SubscriptionStatsBackfill subscriptionStatsBackfill;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SubscriptionStatRepository subscriptionStatRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        userId = userService.saveUser(new UserDto(null, "Stats User", "stats@example.com", null, null)).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        subscriptionStatRepository.deleteAllInBatch();
+        outboxEventRepository.deleteAllInBatch();
+        subscriptionRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Новые подписки сразу учитываются в бакете текущего часа и суток")
+    void stats_ShouldCountNewSubscriptionsInCurrentBuckets() throws Exception {
+        // Arrange
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        String from = today.minusDays(1).atStartOfDay().toString();
+        String to = today.plusDays(2).atStartOfDay().toString();
+
+        // Act
+        mockMvc.perform(post("/subscriptions/users/{user_id}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(
+                                new SubscriptionDto(null, "Stats Netflix", "Premium", null, null))))
+                .andExpect(status().isOk());
+        mockMvc.perform(post("/subscriptions/users/{user_id}/batch", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(
+                                new SubscriptionDto(null, "Stats Netflix", "Premium", null, null),
+                                new SubscriptionDto(null, "Stats Netflix", null, null, null)))))
+                .andExpect(status().isOk());
+
+        // Assert
+        mockMvc.perform(get("/subscriptions/stats")
+                        .param("from", from)
+                        .param("to", to)
+                        .param("serviceTitle", "Stats Netflix"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].bucket").value(today.atStartOfDay().toString() + ":00"))
+                .andExpect(jsonPath("$[0].plan").value(nullValue()))
+                .andExpect(jsonPath("$[0].count").value(1))
+                .andExpect(jsonPath("$[1].plan").value("Premium"))
+                .andExpect(jsonPath("$[1].count").value(2));
+        mockMvc.perform(get("/subscriptions/stats")
+                        .param("granularity", "HOUR")
+                        .param("from", from)
+                        .param("to", to)
+                        .param("serviceTitle", "Stats Netflix")
+                        .param("plan", "Premium"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].count").value(2));
+    }
+
+    @Test
+    @DisplayName("Пересчет строит историю по created_at в UTC и при повторном запуске дает те же счетчики")
+    void backfill_ShouldBuildHistoryIdempotently() throws Exception {
+        // Arrange
+        List<SubscriptionDto> saved = subscriptionService.addSubscriptionsToUser(List.of(
+                new SubscriptionDto(null, "Stats Spotify", "Premium", null, null),
+                new SubscriptionDto(null, "Stats Spotify", "Premium", null, null),
+                new SubscriptionDto(null, "Stats Spotify", null, null, null),
+                new SubscriptionDto(null, "Stats Spotify", "Premium", null, null),
+                new SubscriptionDto(null, "Stats Spotify", "Premium", null, null)), userId);
+        List<OffsetDateTime> createdAt = List.of(
+                OffsetDateTime.of(2025, 3, 1, 10, 15, 0, 0, ZoneOffset.UTC),
+                OffsetDateTime.of(2025, 3, 1, 10, 45, 0, 0, ZoneOffset.UTC),
+                OffsetDateTime.of(2025, 3, 1, 11, 40, 0, 0, ZoneOffset.UTC),
+                // 2 марта по UTC, хотя в часовом поясе +03:00 это еще 1 марта
+                OffsetDateTime.of(2025, 3, 2, 1, 30, 0, 0, ZoneOffset.ofHours(3)),
+                OffsetDateTime.of(2025, 3, 2, 9, 0, 0, 0, ZoneOffset.UTC));
+        for (int i = 0; i < saved.size(); i++) {
+            jdbcTemplate.update("UPDATE subscriptions SET created_at = CAST(? AS TIMESTAMPTZ) WHERE id = ?",
+                    createdAt.get(i), saved.get(i).getId());
+        }
+
+        // Act
+        int chunks = subscriptionStatsBackfill.backfill();
+
+        // Assert
+        assertTrue(chunks >= 3, "диапазонов id: " + chunks);
+        assertHistory();
+
+        subscriptionStatsBackfill.backfill();
+        assertHistory();
+    }
+
+    @Test
+    @DisplayName("Выброс 400 при пустом диапазоне статистики или неизвестной гранулярности")
+    void stats_ShouldReturnBadRequest_WhenRangeInvalid() throws Exception {
+        mockMvc.perform(get("/subscriptions/stats")
+                        .param("from", "2025-03-02T00:00:00")
+                        .param("to", "2025-03-01T00:00:00"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/subscriptions/stats/totals")
+                        .param("granularity", "WEEK")
+                        .param("from", "2025-03-01T00:00:00")
+                        .param("to", "2025-03-02T00:00:00"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private void assertHistory() throws Exception {
+        mockMvc.perform(get("/subscriptions/stats")
+                        .param("from", "2025-03-01T00:00:00")
+                        .param("to", "2025-04-01T00:00:00")
+                        .param("serviceTitle", "Stats Spotify"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].bucket").value("2025-03-01T00:00:00"))
+                .andExpect(jsonPath("$[0].plan").value(nullValue()))
+                .andExpect(jsonPath("$[0].count").value(1))
+                .andExpect(jsonPath("$[1].bucket").value("2025-03-01T00:00:00"))
+                .andExpect(jsonPath("$[1].plan").value("Premium"))
+                .andExpect(jsonPath("$[1].count").value(2))
+                .andExpect(jsonPath("$[2].bucket").value("2025-03-02T00:00:00"))
+                .andExpect(jsonPath("$[2].count").value(2));
+        hourly("2025-03-01T10:00:00", "2025-03-01T12:00:00")
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].bucket").value("2025-03-01T10:00:00"))
+                .andExpect(jsonPath("$[0].count").value(2))
+                .andExpect(jsonPath("$[1].bucket").value("2025-03-01T11:00:00"))
+                .andExpect(jsonPath("$[1].count").value(1));
+        mockMvc.perform(get("/subscriptions/stats/totals")
+                        .param("from", "2025-03-01T00:00:00")
+                        .param("to", "2025-04-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].bucket").doesNotExist())
+                .andExpect(jsonPath("$[0].plan").value("Premium"))
+                .andExpect(jsonPath("$[0].count").value(4))
+                .andExpect(jsonPath("$[1].count").value(1));
+    }
+
+    private ResultActions hourly(String from, String to) throws Exception {
+        return mockMvc.perform(get("/subscriptions/stats")
+                        .param("granularity", "HOUR")
+                        .param("from", from)
+                        .param("to", to)
+                        .param("serviceTitle", "Stats Spotify"))
+                .andExpect(status().isOk());
+    }
+}
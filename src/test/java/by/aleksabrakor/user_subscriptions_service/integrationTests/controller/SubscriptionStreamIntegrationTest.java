@@ -0,0 +1,168 @@
+package by.aleksabrakor.user_subscriptions_service.integrationTests.controller;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.repository.OutboxEventRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionService;
+import by.aleksabrakor.user_subscriptions_service.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * SSE-поток изменений подписок. Без @Transactional: события рассылаются только после коммита транзакции сервиса.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+class SubscriptionStreamIntegrationTest {
+    private static final long AWAIT_MILLIS = 5000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Long userId;
+    private Long otherUserId;
+
+    @BeforeEach
+    void setUp() {
+        userId = userService.saveUser(new UserDto(null, "Stream User", "stream@example.com", null, null)).getId();
+        otherUserId = userService.saveUser(new UserDto(null, "Other User", "other@example.com", null, null)).getId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        outboxEventRepository.deleteAllInBatch();
+        subscriptionRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Поток с фильтром по userId получает после коммита только изменения подписок этого юзера")
+    void stream_ShouldPushOnlyMatchingEvents() throws Exception {
+        // Arrange
+        MockHttpServletResponse stream = openStream("/subscriptions/stream?userId=" + userId, null);
+
+        // Act
+        subscriptionService.addSubscriptionToUser(new SubscriptionDto(null, "Netflix", null, null, null), otherUserId);
+        SubscriptionDto created = subscriptionService.addSubscriptionToUser(
+                new SubscriptionDto(null, "Spotify", null, null, null), userId);
+        subscriptionService.deleteSubscriptionFromUser(created.getId(), userId);
+
+        // Assert
+        String content = awaitContent(stream, "event:deleted");
+        assertTrue(content.contains("event:created"));
+        assertTrue(content.contains("\"serviceTitle\":\"Spotify\""));
+        assertFalse(content.contains("Netflix"));
+    }
+
+    @Test
+    @DisplayName("Переподключение с Last-Event-ID отдает только пропущенные события")
+    void stream_ShouldReplayMissedEvents_WhenLastEventIdGiven() throws Exception {
+        // Arrange
+        MockHttpServletResponse firstStream = openStream("/subscriptions/stream?userId=" + userId, null);
+        subscriptionService.addSubscriptionToUser(new SubscriptionDto(null, "Netflix", null, null, null), userId);
+        String lastEventId = lastEventId(awaitContent(firstStream, "Netflix"));
+
+        subscriptionService.addSubscriptionToUser(new SubscriptionDto(null, "Spotify", null, null, null), userId);
+        subscriptionService.addSubscriptionToUser(new SubscriptionDto(null, "YouTube", null, null, null), userId);
+
+        // Act
+        MockHttpServletResponse resumedStream = openStream("/subscriptions/stream?userId=" + userId, lastEventId);
+
+        // Assert
+        String content = awaitContent(resumedStream, "YouTube");
+        assertTrue(content.contains("Spotify"));
+        assertFalse(content.contains("Netflix"));
+    }
+
+    @Test
+    @DisplayName("Last-Event-ID вне буфера повтора дает событие resync")
+    void stream_ShouldSendResync_WhenLastEventIdUnknown() throws Exception {
+        // Act
+        MockHttpServletResponse stream = openStream("/subscriptions/stream", String.valueOf(Long.MAX_VALUE));
+
+        // Assert
+        awaitContent(stream, "event:resync");
+    }
+
+    @Test
+    @DisplayName("Last-Event-ID другого запуска узла дает resync, даже если номер события есть в буфере")
+    void stream_ShouldSendResync_WhenLastEventIdFromOtherEpoch() throws Exception {
+        // Arrange
+        MockHttpServletResponse firstStream = openStream("/subscriptions/stream?userId=" + userId, null);
+        subscriptionService.addSubscriptionToUser(new SubscriptionDto(null, "Netflix", null, null, null), userId);
+        String sequence = lastEventId(awaitContent(firstStream, "Netflix")).replaceAll(".*-", "");
+        subscriptionService.addSubscriptionToUser(new SubscriptionDto(null, "Spotify", null, null, null), userId);
+
+        // Act
+        MockHttpServletResponse stream = openStream("/subscriptions/stream?userId=" + userId,
+                "previousboot-" + (Long.parseLong(sequence) - 1));
+
+        // Assert
+        String content = awaitContent(stream, "event:resync");
+        assertFalse(content.contains("Netflix"));
+    }
+
+    private MockHttpServletResponse openStream(String uri, String lastEventId) throws Exception {
+        MvcResult result = mockMvc.perform(lastEventId == null
+                        ? get(uri)
+                        : get(uri).header("Last-Event-ID", lastEventId))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return result.getResponse();
+    }
+
+    private static String awaitContent(MockHttpServletResponse response, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        String content = response.getContentAsString();
+        while (!content.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            content = response.getContentAsString();
+        }
+        assertTrue(content.contains(expected), "в потоке нет '" + expected + "': " + content);
+        return content;
+    }
+
+    private static String lastEventId(String content) {
+        Matcher matcher = Pattern.compile("id:(\\w+-\\d+)").matcher(content);
+        String id = null;
+        while (matcher.find()) {
+            id = matcher.group(1);
+        }
+        assertNotNull(id);
+        return id;
+    }
+}
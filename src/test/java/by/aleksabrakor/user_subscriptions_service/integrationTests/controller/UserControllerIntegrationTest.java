@@ -3,17 +3,25 @@ package by.aleksabrakor.user_subscriptions_service.integrationTests.controller;
 import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
 import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
 import jakarta.transaction.Transactional;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -33,6 +41,15 @@ class UserControllerIntegrationTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
 
     @BeforeEach
     void setUp() {
@@ -76,6 +93,135 @@ class UserControllerIntegrationTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    @DisplayName("Импорт юзеров из CSV: дубли email внутри файла и уже существующие email пропускаются")
+    void importUsers_FromCsv_ShouldInsertNewUsersAndReportDuplicates() throws Exception {
+        // Подготовка тестовых данных: юзер с таким email уже есть
+        mockMvc.perform(post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"Existing User\", \"email\": \"existing@example.com\"}"));
+
+        String csv = """
+                name,email
+                Test User1,test1@example.com
+                "Test, User2",test2@example.com
+                Test User1 again,test1@example.com
+                Existing Again,existing@example.com
+                """;
+
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(post("/users/import")
+                        .contentType("text/csv")
+                        .content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(4))
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.duplicates").value(2))
+                .andExpect(jsonPath("$.duplicateEmails[0]").value("test1@example.com"))
+                .andExpect(jsonPath("$.duplicateEmails[1]").value("existing@example.com"));
+
+        mockMvc.perform(get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[?(@.email == 'test2@example.com')].name").value("Test, User2"));
+    }
+
+    @Test
+    @DisplayName("Импорт юзеров из NDJSON")
+    void importUsers_FromNdjson_ShouldInsertNewUsers() throws Exception {
+        String ndjson = """
+                {"name": "Test User1", "email": "test1@example.com"}
+
+                {"name": "Test \\"Quoted\\" User2", "email": "test2@example.com"}
+                """;
+
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(post("/users/import")
+                        .contentType("application/x-ndjson")
+                        .content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(2))
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.duplicates").value(0));
+
+        mockMvc.perform(get("/users"))
+                .andExpect(jsonPath("$[?(@.email == 'test2@example.com')].name").value("Test \"Quoted\" User2"));
+    }
+
+    @Test
+    @DisplayName("Вернет BadRequest 400 при импорте NDJSON без обязательных полей")
+    void importUsers_ShouldReturnBadRequest400_WhenNdjsonLineInvalid() throws Exception {
+        mockMvc.perform(post("/users/import")
+                        .contentType("application/x-ndjson")
+                        .content("{\"name\": \"No Email\"}\n"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Импорт юзеров: строки с некорректным email или именем короче 2 символов отклоняются")
+    void importUsers_ShouldRejectRowsViolatingUserConstraints() throws Exception {
+        String csv = """
+                name,email
+                Valid User1,valid1@example.com
+                A,short@example.com
+                Bad Email,not-an-email
+                "   ",blank@example.com
+                Valid User2,valid2@example.com
+                """;
+
+        mockMvc.perform(post("/users/import")
+                        .contentType("text/csv")
+                        .content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received").value(5))
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.duplicates").value(0))
+                .andExpect(jsonPath("$.rejected").value(3))
+                .andExpect(jsonPath("$.rejectedRows[0]").value(2))
+                .andExpect(jsonPath("$.rejectedRows[1]").value(3))
+                .andExpect(jsonPath("$.rejectedRows[2]").value(4));
+
+        String ndjson = """
+                {"name": "B", "email": "b@example.com"}
+                {"name": "Bad Email", "email": "bad@"}
+                {"name": "Valid User3", "email": "valid3@example.com"}
+                """;
+        mockMvc.perform(post("/users/import")
+                        .contentType("application/x-ndjson")
+                        .content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.rejected").value(2));
+
+        mockMvc.perform(get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3));
+    }
+
+    @Test
+    @DisplayName("Импорт юзеров берет id блоками по 50, как Hibernate, а не по блоку на строку")
+    void importUsers_ShouldAllocateIdsInBlocks() throws Exception {
+        StringBuilder csv = new StringBuilder("name,email\n");
+        for (int i = 0; i < 60; i++) {
+            csv.append("Bulk User").append(i).append(",bulk").append(i).append("@example.com\n");
+        }
+
+        mockMvc.perform(post("/users/import")
+                        .contentType("text/csv")
+                        .content(csv.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(60));
+
+        Long idSpread = jdbcTemplate.queryForObject(
+                "SELECT MAX(id) - MIN(id) FROM users WHERE email LIKE 'bulk%'", Long.class);
+        assertTrue(idSpread < 100, "разброс id: " + idSpread);
+        // id, выданные Hibernate после импорта, не пересекаются с id импорта
+        mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"After Import\", \"email\": \"after@example.com\"}"))
+                .andExpect(status().isOk());
+    }
+
     @Test
     @DisplayName("Поиск списка всех юзеров")
     void findAllUsers_ShouldReturnAllUsers() throws Exception {
@@ -109,6 +255,55 @@ class UserControllerIntegrationTest {
                 .andExpect(jsonPath("$[1].name").value("Test User2"));
     }
 
+    @Test
+    @DisplayName("Список юзеров с подписками загружается одним SQL-запросом, без N+1")
+    void findAllUsers_WithSubscriptions_ShouldExecuteSingleStatement() throws Exception {
+        // Подготовка тестовых данных: 3 юзера по 2 подписки
+        for (int i = 1; i <= 3; i++) {
+            String createUserResponse = mockMvc.perform(post("/users")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"name\": \"Test User" + i + "\", \"email\": \"test" + i + "@example.com\"}"))
+                    .andReturn().getResponse().getContentAsString();
+            Long userId = objectMapper.readValue(createUserResponse, UserDto.class).getId();
+            for (String title : new String[]{"Netflix", "Spotify"}) {
+                mockMvc.perform(post("/subscriptions/users/{userId}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"serviceTitle\": \"" + title + "\"}"));
+            }
+        }
+        // Сбрасываем контекст персистентности, чтобы запрос реально пошел в БД
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(get("/users").param("include", "subscriptions"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].subscriptions.length()").value(2))
+                .andExpect(jsonPath("$[2].subscriptions.length()").value(2));
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        entityManager.clear();
+
+        // Без include подписки не загружаются вовсе
+        mockMvc.perform(get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].subscriptions").doesNotExist())
+                .andExpect(jsonPath("$[0].subscriptionCount").value(2));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @DisplayName("Вернет BadRequest 400 при неизвестном значении include")
+    void findAllUsers_ShouldReturnBadRequest400_WhenIncludeUnknown() throws Exception {
+        mockMvc.perform(get("/users").param("include", "orders"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @DisplayName("Поиск списка всех юзеров, если список пуст")
     void findAllUsers_ShouldReturnEmptyList() throws Exception {
@@ -218,6 +413,108 @@ class UserControllerIntegrationTest {
         ;
     }
 
+    @Test
+    @DisplayName("Частичное обновление юзера: меняется только имя, email сохраняется")
+    void patchUser_ShouldUpdateOnlySuppliedFields_WhenUserExists() throws Exception {
+        // Подготовка тестовых данных
+        String createUserResponse = mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"Test User\", \"email\": \"test1@example.com\"}"))
+                .andReturn().getResponse().getContentAsString();
+        Long userId = objectMapper.readValue(createUserResponse, UserDto.class).getId();
+
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(patch("/users/{id}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"Patched User\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(userId))
+                .andExpect(jsonPath("$.name").value("Patched User"))
+                .andExpect(jsonPath("$.email").value("test1@example.com"));
+
+        // кеш юзеров сброшен - чтение отдает новое имя
+        mockMvc.perform(get("/users/{id}", userId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Patched User"));
+    }
+
+    @Test
+    @DisplayName("Вернет BadRequest 400 при частичном обновлении юзера на уже занятый email")
+    void patchUser_ShouldReturnBadRequest400_WhenEmailAlreadyExists() throws Exception {
+        // Подготовка тестовых данных
+        mockMvc.perform(post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\": \"Test User1\", \"email\": \"test1@example.com\"}"));
+        String createUserResponse = mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"Test User2\", \"email\": \"test2@example.com\"}"))
+                .andReturn().getResponse().getContentAsString();
+        Long userId = objectMapper.readValue(createUserResponse, UserDto.class).getId();
+
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(patch("/users/{id}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\": \"test1@example.com\"}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("Вернет NotFound 404 при частичном обновлении юзера, если id не существует")
+    void patchUser_ShouldReturns404_WhenUserNotExists() throws Exception {
+        mockMvc.perform(patch("/users/{id}", 999L)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"Patched User\"}"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.message").value("Object was not found: Юзер с id = 999 не найден"));
+    }
+
+    @Test
+    @DisplayName("Юзер по id: 304 по If-None-Match; ETag меняется после добавления подписки (вместе со счетчиком подписок)")
+    void getUser_ShouldReturnNotModified_UntilSubscriptionsChanged() throws Exception {
+        // Подготовка тестовых данных
+        String createUserResponse = mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"Test User\", \"email\": \"test@example.com\"}"))
+                .andReturn().getResponse().getContentAsString();
+        Long userId = objectMapper.readValue(createUserResponse, UserDto.class).getId();
+        // подписки читаются из БД, а не из коллекции юзера в контексте персистентности теста
+        entityManager.flush();
+        entityManager.clear();
+
+        String userETag = mockMvc.perform(get("/users/{id}", userId))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String withSubscriptionsETag = mockMvc.perform(get("/users/{id}?include=subscriptions", userId))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Выполнение запроса и проверка результата
+        mockMvc.perform(get("/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, userETag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/users/{id}?include=subscriptions", userId)
+                        .header(HttpHeaders.IF_NONE_MATCH, withSubscriptionsETag))
+                .andExpect(status().isNotModified());
+        // ETag без подписок не подходит представлению с подписками
+        mockMvc.perform(get("/users/{id}?include=subscriptions", userId).header(HttpHeaders.IF_NONE_MATCH, userETag))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/subscriptions/users/{userId}", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"serviceTitle\": \"Яндекс.Плюс\"}"))
+                .andExpect(status().isOk());
+        entityManager.flush();
+        entityManager.clear();
+
+        mockMvc.perform(get("/users/{id}?include=subscriptions", userId)
+                        .header(HttpHeaders.IF_NONE_MATCH, withSubscriptionsETag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.subscriptions.length()").value(1))
+                .andExpect(jsonPath("$.subscriptionCount").value(1));
+        mockMvc.perform(get("/users/{id}", userId).header(HttpHeaders.IF_NONE_MATCH, userETag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.subscriptionCount").value(1));
+    }
+
     @Test
     @DisplayName("Удаление юзера, по существующему id")
     void deleteUser_ShouldDeleteUser_WhenUserExist() throws Exception {
@@ -0,0 +1,148 @@
+package by.aleksabrakor.user_subscriptions_service.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Генератор нагрузки с открытой моделью: запросы отправляются по расписанию с фиксированной частотой,
+ * не дожидаясь ответов на предыдущие. Задержка считается от запланированного момента отправки, а не от фактического,
+ * поэтому отставание генератора или очередь на сервере попадают в перцентили (без coordinated omission).
+ */
+final class FixedRateLoadGenerator {
+    private static final Logger log = LoggerFactory.getLogger(FixedRateLoadGenerator.class);
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final HttpClient httpClient;
+
+    FixedRateLoadGenerator(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Один запрос смеси нагрузки: endpoint - имя для отчета, weight - относительная доля в смеси.
+     */
+    record WeightedRequest(String endpoint, int weight, Supplier<HttpRequest> request) {
+    }
+
+    record EndpointResult(Histogram latencyMicros, long errors) {
+    }
+
+    record StageResult(int targetRate, double achievedRate, Map<String, EndpointResult> endpoints) {
+    }
+
+    StageResult run(List<WeightedRequest> mix, int ratePerSecond, Duration duration) throws InterruptedException {
+        int totalWeight = mix.stream().mapToInt(WeightedRequest::weight).sum();
+        Map<String, ConcurrentHistogram> histograms = new LinkedHashMap<>();
+        Map<String, LongAdder> errors = new LinkedHashMap<>();
+        for (WeightedRequest request : mix) {
+            histograms.put(request.endpoint(), new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS));
+            errors.put(request.endpoint(), new LongAdder());
+        }
+
+        long total = ratePerSecond * duration.toSeconds();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        CountDownLatch completed = new CountDownLatch((int) total);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        long start = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intendedStart = start + i * intervalNanos;
+            long delay;
+            while ((delay = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(delay);
+            }
+
+            WeightedRequest request = pick(mix, random.nextInt(totalWeight));
+            ConcurrentHistogram histogram = histograms.get(request.endpoint());
+            LongAdder endpointErrors = errors.get(request.endpoint());
+            httpClient.sendAsync(request.request().get(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart);
+                        histogram.recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS));
+                        if (error != null || response.statusCode() >= 400) {
+                            endpointErrors.increment();
+                        }
+                        completed.countDown();
+                    });
+        }
+        if (!completed.await(duration.toSeconds() + TimeUnit.MICROSECONDS.toSeconds(HIGHEST_TRACKABLE_MICROS),
+                TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Не дождались ответов на " + completed.getCount() + " запросов");
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        Map<String, EndpointResult> endpoints = new LinkedHashMap<>();
+        histograms.forEach((endpoint, histogram) ->
+                endpoints.put(endpoint, new EndpointResult(histogram, errors.get(endpoint).sum())));
+        return new StageResult(ratePerSecond, total / elapsedSeconds, endpoints);
+    }
+
+    /**
+     * Сводка ступени в лог и полное распределение задержек каждого endpoint-а в outputDir
+     * (формат .hgrm, значения в мс - открывается HdrHistogram Plotter).
+     */
+    static void report(StageResult stage, Path outputDir) throws IOException {
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT,
+                "Частота %d req/s (достигнуто %.0f req/s)%n%-38s %8s %7s %9s %9s %9s %9s %9s",
+                stage.targetRate(), stage.achievedRate(),
+                "endpoint", "count", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        Files.createDirectories(outputDir);
+        for (Map.Entry<String, EndpointResult> entry : stage.endpoints().entrySet()) {
+            Histogram histogram = entry.getValue().latencyMicros();
+            table.append(String.format(Locale.ROOT, "%n%-38s %8d %7d %9.2f %9.2f %9.2f %9.2f %9.2f",
+                    entry.getKey(), histogram.getTotalCount(), entry.getValue().errors(),
+                    millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue())));
+
+            Path file = outputDir.resolve(stage.targetRate() + "rps-" + fileName(entry.getKey()) + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8)) {
+                histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+        log.info("{}", table);
+        log.info("Распределения задержек записаны в {}", outputDir.toAbsolutePath());
+    }
+
+    private static WeightedRequest pick(List<WeightedRequest> mix, int point) {
+        for (WeightedRequest request : mix) {
+            point -= request.weight();
+            if (point < 0) {
+                return request;
+            }
+        }
+        return mix.get(mix.size() - 1);
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    // "GET /subscriptions/users/{id}" -> "GET-subscriptions-users-id"
+    private static String fileName(String endpoint) {
+        return endpoint.replaceAll("[^A-Za-z0-9]+", "-").replaceAll("^-|-$", "");
+    }
+}
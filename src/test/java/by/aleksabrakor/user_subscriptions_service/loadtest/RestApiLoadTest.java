@@ -0,0 +1,184 @@
+package by.aleksabrakor.user_subscriptions_service.loadtest;
+
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.loadtest.FixedRateLoadGenerator.WeightedRequest;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import by.aleksabrakor.user_subscriptions_service.service.SubscriptionService;
+import by.aleksabrakor.user_subscriptions_service.service.UserImportService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Нагрузочный тест REST API перед релизом: кривая пропускной способности и задержек для /users, /subscriptions,
+ * /subscriptions/users/{id} и /subscriptions/top при смешанной нагрузке чтения и записи.
+ * Приложение поднимается на случайном порту с профилем test (PostgreSQL в Testcontainers); для локального PostgreSQL
+ * достаточно передать -Dspring.datasource.url=jdbc:postgresql://... и -Dspring.datasource.driver-class-name=org.postgresql.Driver.
+ * Каждая ступень из loadtest.rates держит фиксированную частоту запросов loadtest.stage-duration,
+ * перцентили задержек по каждому endpoint считаются в HdrHistogram: сводка пишется в лог, полные распределения -
+ * в файлы .hgrm в loadtest.output-dir.
+ * Запуск: mvn test -P loadtest [-Dloadtest.users=1000 -Dloadtest.subscriptions-per-user=5
+ * -Dloadtest.rates=50,100,200,400 -Dloadtest.stage-duration=PT20S -Dloadtest.write-ratio=0.1
+ * -Dloadtest.output-dir=target/loadtest]
+ */
+@Tag("loadtest")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+class RestApiLoadTest {
+    private static final Logger log = LoggerFactory.getLogger(RestApiLoadTest.class);
+
+    private static final int USERS = Integer.getInteger("loadtest.users", 1000);
+    private static final int SUBSCRIPTIONS_PER_USER = Integer.getInteger("loadtest.subscriptions-per-user", 5);
+    private static final int[] RATES = Arrays.stream(System.getProperty("loadtest.rates", "50,100,200,400").split(","))
+            .map(String::trim)
+            .mapToInt(Integer::parseInt)
+            .toArray();
+    private static final Duration STAGE_DURATION =
+            Duration.parse(System.getProperty("loadtest.stage-duration", "PT20S"));
+    private static final Duration WARMUP_DURATION =
+            Duration.parse(System.getProperty("loadtest.warmup-duration", "PT10S"));
+    private static final double WRITE_RATIO = Double.parseDouble(System.getProperty("loadtest.write-ratio", "0.1"));
+    private static final Path OUTPUT_DIR = Path.of(System.getProperty("loadtest.output-dir", "target/loadtest"));
+
+    private static final String[] SERVICE_TITLES = {"Яндекс.Плюс", "Netflix", "Spotify", "YouTube Premium", "Кинопоиск"};
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        subscriptionRepository.deleteAllInBatch();
+        userRepository.deleteAllInBatch();
+    }
+
+    @Test
+    @DisplayName("Смешанная нагрузка на REST API с фиксированной частотой: перцентили задержек по endpoint-ам")
+    void mixedWorkloadAtFixedArrivalRates() throws Exception {
+        long[] userIds = seed();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(5))
+                    .executor(executor)
+                    .build();
+            FixedRateLoadGenerator generator = new FixedRateLoadGenerator(httpClient);
+            List<WeightedRequest> mix = workloadMix(userIds);
+
+            log.info("Данные: {} юзеров, {} подписок; доля записи {}%; ступень {}",
+                    USERS, USERS * SUBSCRIPTIONS_PER_USER, Math.round(WRITE_RATIO * 100), STAGE_DURATION);
+            generator.run(mix, RATES[0], WARMUP_DURATION);
+            for (int rate : RATES) {
+                FixedRateLoadGenerator.report(generator.run(mix, rate, STAGE_DURATION), OUTPUT_DIR);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // юзеры одним COPY через импорт, подписки пакетами по юзеру (JDBC batch)
+    private long[] seed() {
+        StringBuilder csv = new StringBuilder("name,email\n");
+        for (int i = 0; i < USERS; i++) {
+            csv.append("Load User ").append(i).append(",load").append(i).append("@example.com\n");
+        }
+        userImportService.importUsers(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)),
+                new MediaType("text", "csv"));
+        long[] userIds = jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id", Long.class).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+        assertEquals(USERS, userIds.length);
+
+        for (long userId : userIds) {
+            List<SubscriptionDto> subscriptions = new ArrayList<>(SUBSCRIPTIONS_PER_USER);
+            for (int i = 0; i < SUBSCRIPTIONS_PER_USER; i++) {
+                subscriptions.add(new SubscriptionDto(null, randomServiceTitle(), "Premium", "Load test", null));
+            }
+            subscriptionService.addSubscriptionsToUser(subscriptions, userId);
+        }
+        return userIds;
+    }
+
+    private List<WeightedRequest> workloadMix(long[] userIds) {
+        int writeWeight = (int) Math.round(WRITE_RATIO * 100);
+        int readWeight = 100 - writeWeight;
+        return List.of(
+                new WeightedRequest("GET /users", readWeight * 10 / 100,
+                        () -> get("/users")),
+                new WeightedRequest("GET /subscriptions", readWeight * 25 / 100,
+                        () -> get("/subscriptions?limit=50")),
+                new WeightedRequest("GET /subscriptions/users/{id}", readWeight * 45 / 100,
+                        () -> get("/subscriptions/users/" + randomUserId(userIds))),
+                new WeightedRequest("GET /subscriptions/top", readWeight * 20 / 100,
+                        () -> get("/subscriptions/top?limit=3")),
+                new WeightedRequest("POST /subscriptions/users/{id}", writeWeight,
+                        () -> post("/subscriptions/users/" + randomUserId(userIds), """
+                                {"serviceTitle": "%s", "plan": "Basic", "description": "Load test"}
+                                """.formatted(randomServiceTitle()))));
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static long randomUserId(long[] userIds) {
+        return userIds[ThreadLocalRandom.current().nextInt(userIds.length)];
+    }
+
+    private static String randomServiceTitle() {
+        return SERVICE_TITLES[ThreadLocalRandom.current().nextInt(SERVICE_TITLES.length)];
+    }
+}
@@ -0,0 +1,182 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import by.aleksabrakor.user_subscriptions_service.dto.PopularSubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SubscriptionPopularityIndexTest {
+    @Mock
+    private SubscriptionRepository subscriptionRepository;
+
+    @InjectMocks
+    private SubscriptionPopularityIndex popularityIndex;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("ТОП-N строится по счетчикам, загруженным из БД, и обновляется инкрементально")
+    void top_ShouldReflectLoadedCountsAndIncrements() {
+        // Arrange
+        when(subscriptionRepository.countByServiceTitle()).thenReturn(List.of(
+                new PopularSubscriptionDto("Netflix", 2L),
+                new PopularSubscriptionDto("Spotify", 3L),
+                new PopularSubscriptionDto("Apple Music", 1L)
+        ));
+        popularityIndex.load();
+
+        // Act
+        popularityIndex.increment("Netflix");
+        popularityIndex.increment("Netflix");
+        popularityIndex.decrement("Apple Music");
+        List<PopularSubscriptionDto> result = popularityIndex.top(3);
+
+        // Assert
+        assertEquals(2, result.size());
+        assertEquals(new PopularSubscriptionDto("Netflix", 4L), result.get(0));
+        assertEquals(new PopularSubscriptionDto("Spotify", 3L), result.get(1));
+        verify(subscriptionRepository, times(1)).countByServiceTitle();
+    }
+
+    @Test
+    @DisplayName("Изменение счетчика применяется только после коммита, при откате не применяется")
+    void increment_ShouldApplyOnlyAfterCommit() {
+        // Arrange
+        when(subscriptionRepository.countByServiceTitle()).thenReturn(List.of());
+        popularityIndex.load();
+
+        // Act & Assert
+        TransactionSynchronizationManager.initSynchronization();
+        popularityIndex.increment("Netflix");
+        assertTrue(popularityIndex.top(1).isEmpty());
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertTrue(popularityIndex.top(1).isEmpty());
+
+        TransactionSynchronizationManager.initSynchronization();
+        popularityIndex.increment("Netflix");
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(List.of(new PopularSubscriptionDto("Netflix", 1L)), popularityIndex.top(1));
+    }
+
+    @Test
+    @DisplayName("Сверка не трогает счетчик с незавершенной транзакцией: ее коммит уже может быть в снимке БД")
+    void reconcile_ShouldSkipTitlesWithTransactionsInFlight() {
+        // Arrange
+        when(subscriptionRepository.countByServiceTitle())
+                .thenReturn(List.of(new PopularSubscriptionDto("Netflix", 1L)))
+                // снимок БД уже содержит закоммиченную, но еще не примененную подписку
+                .thenReturn(List.of(new PopularSubscriptionDto("Netflix", 2L)));
+        popularityIndex.load();
+        TransactionSynchronizationManager.initSynchronization();
+        popularityIndex.increment("Netflix");
+
+        // Act
+        popularityIndex.reconcile();
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        // Assert
+        assertEquals(List.of(new PopularSubscriptionDto("Netflix", 2L)), popularityIndex.top(1));
+    }
+
+    @Test
+    @DisplayName("Сверка исправляет разошедшийся счетчик, даже когда по названию все время идут записи")
+    void reconcile_ShouldFixDriftBeyondTransactionsInFlight() {
+        // Arrange
+        when(subscriptionRepository.countByServiceTitle())
+                .thenReturn(List.of(new PopularSubscriptionDto("Netflix", 1L)))
+                // 3 подписки добавлены в обход сервиса, еще одна закоммичена, но не применена
+                .thenReturn(List.of(new PopularSubscriptionDto("Netflix", 5L)));
+        when(subscriptionRepository.countWithServiceTitle("Netflix")).thenReturn(5L);
+        popularityIndex.load();
+        SubscriptionPopularityIndex.PendingChange change = popularityIndex.beginChange().increment("Netflix");
+
+        // Act
+        popularityIndex.reconcile();
+        change.complete(true);
+
+        // Assert
+        assertEquals(List.of(new PopularSubscriptionDto("Netflix", 5L)), popularityIndex.top(1));
+    }
+
+    @Test
+    @DisplayName("Коммиты не ждут чтения БД при сверке")
+    void reconcile_ShouldNotBlockCommitsWhileReadingDb() {
+        // Arrange
+        when(subscriptionRepository.countByServiceTitle()).thenReturn(List.of());
+        popularityIndex.load();
+        SubscriptionPopularityIndex.PendingChange change = popularityIndex.beginChange().increment("Netflix");
+        when(subscriptionRepository.countByServiceTitle()).thenAnswer(invocation -> {
+            CompletableFuture.runAsync(() -> change.complete(true)).get(5, TimeUnit.SECONDS);
+            return List.of(new PopularSubscriptionDto("Netflix", 1L));
+        });
+
+        // Act
+        popularityIndex.reconcile();
+
+        // Assert
+        assertEquals(List.of(new PopularSubscriptionDto("Netflix", 1L)), popularityIndex.top(1));
+    }
+
+    @Test
+    @DisplayName("Сверка с БД исправляет разошедшиеся счетчики")
+    void reconcile_ShouldFixMismatchedCounts() {
+        // Arrange
+        when(subscriptionRepository.countByServiceTitle())
+                .thenReturn(List.of(new PopularSubscriptionDto("Netflix", 1L)))
+                .thenReturn(List.of(new PopularSubscriptionDto("Spotify", 5L)));
+        popularityIndex.load();
+
+        // Act
+        popularityIndex.reconcile();
+
+        // Assert
+        assertEquals(List.of(new PopularSubscriptionDto("Spotify", 5L)), popularityIndex.top(10));
+    }
+
+    @Test
+    @DisplayName("Подсказки названий следуют за счетчиками: появляются с первой подпиской и исчезают с последней")
+    void suggestTitles_ShouldFollowDistinctTitles() {
+        // Arrange
+        when(subscriptionRepository.countByServiceTitle()).thenReturn(List.of(
+                new PopularSubscriptionDto("YouTube Premium", 2L),
+                new PopularSubscriptionDto("Yandex Plus", 1L),
+                new PopularSubscriptionDto("Netflix", 1L)
+        ));
+        popularityIndex.load();
+
+        // Act
+        popularityIndex.increment("YouTube Music");
+        popularityIndex.decrement("Yandex Plus");
+        popularityIndex.decrement("YouTube Premium");
+
+        // Assert
+        assertEquals(List.of("YouTube Music", "YouTube Premium"), popularityIndex.suggestTitles("you", 10));
+        assertEquals(List.of("YouTube Music"), popularityIndex.suggestTitles("Y", 1));
+        assertTrue(popularityIndex.suggestTitles("Yand", 10).isEmpty());
+    }
+
+    private static void completeTransaction(int status) {
+        TransactionSynchronizationManager.getSynchronizations().forEach(sync -> sync.afterCompletion(status));
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
@@ -1,36 +1,66 @@
 package by.aleksabrakor.user_subscriptions_service.service;
 
+import by.aleksabrakor.user_subscriptions_service.dto.PopularSubscriptionDto;
 import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionPageDto;
+import by.aleksabrakor.user_subscriptions_service.dto.SubscriptionStatsDto;
 import by.aleksabrakor.user_subscriptions_service.dto.UpdateSubscriptionRequest;
 import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
 import by.aleksabrakor.user_subscriptions_service.exception.NotFoundException;
 import by.aleksabrakor.user_subscriptions_service.mapper.SubscriptionMapper;
+import by.aleksabrakor.user_subscriptions_service.model.StatsGranularity;
 import by.aleksabrakor.user_subscriptions_service.model.Subscription;
 import by.aleksabrakor.user_subscriptions_service.model.User;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionPatchRepository.PatchedSubscription;
 import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository.DeletedSubscription;
+import by.aleksabrakor.user_subscriptions_service.repository.UserRepository.UserVersion;
+import by.aleksabrakor.user_subscriptions_service.repository.UserSubscriptionRow;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class SubscriptionServiceTest {
+    private static final LocalDateTime UPDATED_AT = LocalDateTime.of(2025, 5, 1, 12, 0);
+
     @Mock
     private SubscriptionRepository subscriptionRepository;
     @Mock
     private SubscriptionMapper subscriptionMapper;
     @Mock
     private UserService userService;
+    @Mock
+    private SubscriptionPopularityIndex popularityIndex;
+    @Mock
+    private SubscriptionOutbox subscriptionOutbox;
+    @Mock
+    private SubscriptionStats subscriptionStats;
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+    @Mock
+    private EntityManager entityManager;
 
     @InjectMocks
     private SubscriptionService subscriptionService;
@@ -61,7 +91,7 @@ class SubscriptionServiceTest {
         savedSubscriptionDto.setServiceTitle("Test subscription");
 
         when(subscriptionMapper.subscriptionDtoToEntity(subscriptionDto)).thenReturn(subscription);
-        when(userService.findUserOrThrow(userId)).thenReturn(existingUser);
+        when(entityManager.getReference(User.class, userId)).thenReturn(existingUser);
         when(subscriptionRepository.save(subscription)).thenReturn(savedSubscription);
         when(subscriptionMapper.entityToSubscriptionDto(savedSubscription)).thenReturn(savedSubscriptionDto);
 
@@ -73,9 +103,61 @@ class SubscriptionServiceTest {
         assertEquals(userId, resultDto.getUserId());
         assertEquals("Test subscription", resultDto.getServiceTitle());
         verify(subscriptionMapper, times(1)).subscriptionDtoToEntity(subscriptionDto);
-        verify(userService, times(1)).findUserOrThrow(userId);
+        verify(userService, times(1)).reserveSubscriptions(userId, 1);
+        verify(userService, never()).findUserOrThrow(any());
         verify(subscriptionRepository, times(1)).save(subscription);
         verify(subscriptionMapper, times(1)).entityToSubscriptionDto(savedSubscription);
+        verify(popularityIndex, times(1)).increment("Test subscription");
+        verify(subscriptionOutbox, times(1)).created(resultDto);
+        verify(subscriptionStats, times(1)).recordCreated(List.of(savedSubscription));
+    }
+
+    @Test
+    @DisplayName("Пакетное добавление подписок: одна проверка квоты юзера и один saveAll на весь пакет")
+    void addSubscriptionsToUser_ShouldSaveAllInOneCall_WhenUserIdExists() {
+        //Arrange
+        Long userId = 1L;
+        User existingUser = new User();
+        existingUser.setId(userId);
+
+        List<SubscriptionDto> subscriptionDtos = List.of(
+                new SubscriptionDto(99L, "Netflix", null, null, null),
+                new SubscriptionDto(null, "Spotify", null, null, null));
+
+        Subscription subscription1 = new Subscription();
+        subscription1.setId(99L);
+        subscription1.setServiceTitle("Netflix");
+        Subscription subscription2 = new Subscription();
+        subscription2.setServiceTitle("Spotify");
+        List<Subscription> subscriptions = List.of(subscription1, subscription2);
+
+        when(entityManager.getReference(User.class, userId)).thenReturn(existingUser);
+        when(subscriptionMapper.toEntityList(subscriptionDtos)).thenReturn(subscriptions);
+        when(subscriptionRepository.saveAll(subscriptions)).thenReturn(subscriptions);
+        when(subscriptionMapper.toDtoList(subscriptions)).thenReturn(subscriptionDtos);
+
+        //Act
+        List<SubscriptionDto> result = subscriptionService.addSubscriptionsToUser(subscriptionDtos, userId);
+
+        //Assert
+        assertEquals(2, result.size());
+        assertNull(subscription1.getId());
+        assertEquals(existingUser, subscription1.getUser());
+        assertEquals(existingUser, subscription2.getUser());
+        verify(userService, times(1)).reserveSubscriptions(userId, 2);
+        verify(subscriptionRepository, times(1)).saveAll(subscriptions);
+        verify(popularityIndex, times(1)).increment("Netflix");
+        verify(popularityIndex, times(1)).increment("Spotify");
+        verify(subscriptionOutbox, times(1)).createdAll(subscriptionDtos);
+        verify(subscriptionStats, times(1)).recordCreated(subscriptions);
+    }
+
+    @Test
+    @DisplayName("Выброс IllegalArgumentException при пустом пакете подписок")
+    void addSubscriptionsToUser_ShouldThrowIllegalArgumentException_WhenBatchEmpty() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> subscriptionService.addSubscriptionsToUser(List.of(), 1L));
+        verifyNoInteractions(subscriptionRepository, userService);
     }
 
     @Test
@@ -88,89 +170,175 @@ class SubscriptionServiceTest {
         subscriptionDto.setServiceTitle("Test subscription");
 
         doThrow(new NotFoundException("Юзер с id = " + userId + " не найден"))
-                .when(userService).findUserOrThrow(userId);
+                .when(userService).reserveSubscriptions(userId, 1);
 
         //Act & Assert
         assertThrows(NotFoundException.class, () -> subscriptionService.addSubscriptionToUser(subscriptionDto, userId));
-        verify(userService, times(1)).findUserOrThrow(userId);
+        verify(userService, times(1)).reserveSubscriptions(userId, 1);
+        verify(subscriptionRepository, never()).save(any());
     }
 
     @Test
-    @DisplayName("Получение списка всех подписок из БД")
-    void findAllSubscriptions_shouldReturnAllSubscriptions() {
+    @DisplayName("Получение первой страницы подписок из БД, если следующей страницы нет")
+    void findAllSubscriptions_shouldReturnPageWithoutNextCursor() {
         // Arrange
-        List<Subscription> subscriptions = List.of(new Subscription(), new Subscription());
         List<SubscriptionDto> subscriptionDtos = List.of(new SubscriptionDto(), new SubscriptionDto());
 
-        when(subscriptionRepository.findAll()).thenReturn(subscriptions);
-        when(subscriptionMapper.toDtoList(subscriptions)).thenReturn(subscriptionDtos);
+        when(subscriptionRepository.findSubscriptionDtosAfterId(0L, Limit.of(3))).thenReturn(subscriptionDtos);
 
         //Act
-        List<SubscriptionDto> resultDtos = subscriptionService.findAllSubscriptions();
+        SubscriptionPageDto result = subscriptionService.findAllSubscriptions(null, 2);
 
         //Assert
-        assertNotNull(resultDtos);
-        assertEquals(subscriptions.size(), resultDtos.size());
-        verify(subscriptionRepository, times(1)).findAll();
-        verify(subscriptionMapper, times(1)).toDtoList(subscriptions);
+        assertNotNull(result);
+        assertEquals(subscriptionDtos.size(), result.getItems().size());
+        assertNull(result.getNextCursor());
+        verify(subscriptionRepository, times(1)).findSubscriptionDtosAfterId(0L, Limit.of(3));
+        verifyNoInteractions(subscriptionMapper);
     }
 
     @Test
-    @DisplayName("Получение списка всех подписок для пользователя, если id существует")
-    void getUserSubscriptions_shouldReturnAllSubscriptions_WhenUserIdExists() {
+    @DisplayName("Получение страницы подписок по курсору, если есть следующая страница")
+    void findAllSubscriptions_shouldReturnNextCursor_WhenMoreRowsExist() {
         // Arrange
-        Long userId = 1L;
-        User existingUser = new User();
-        existingUser.setId(userId);
-        existingUser.setName("Updated User");
+        SubscriptionDto subscription1 = new SubscriptionDto();
+        subscription1.setId(11L);
+        SubscriptionDto subscription2 = new SubscriptionDto();
+        subscription2.setId(12L);
+        SubscriptionDto subscription3 = new SubscriptionDto();
+        subscription3.setId(13L);
 
-        Subscription subscription1 = new Subscription();
-        subscription1.setServiceTitle("Test subscription1");
-        subscription1.setUser(existingUser);
+        String cursorAfter10 = Base64.getUrlEncoder().withoutPadding().encodeToString("10".getBytes());
+        String cursorAfter12 = Base64.getUrlEncoder().withoutPadding().encodeToString("12".getBytes());
+
+        when(subscriptionRepository.findSubscriptionDtosAfterId(10L, Limit.of(3)))
+                .thenReturn(List.of(subscription1, subscription2, subscription3));
+
+        //Act
+        SubscriptionPageDto result = subscriptionService.findAllSubscriptions(cursorAfter10, 2);
+
+        //Assert
+        assertEquals(2, result.getItems().size());
+        assertEquals(cursorAfter12, result.getNextCursor());
+        verify(subscriptionRepository, times(1)).findSubscriptionDtosAfterId(10L, Limit.of(3));
+    }
+
+    @Test
+    @DisplayName("Выброс IllegalArgumentException при некорректном курсоре или limit")
+    void findAllSubscriptions_ShouldThrowIllegalArgumentException_WhenCursorOrLimitInvalid() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> subscriptionService.findAllSubscriptions("***", 10));
+        assertThrows(IllegalArgumentException.class, () -> subscriptionService.findAllSubscriptions(null, 0));
+        verify(subscriptionRepository, never()).findSubscriptionDtosAfterId(any(), any());
+    }
 
+    @Test
+    @DisplayName("Выгрузка всех подписок в NDJSON: одна строка на подписку, сущности отсоединяются")
+    void exportSubscriptions_ShouldWriteOneLinePerSubscription() throws Exception {
+        // Arrange
+        Subscription subscription1 = new Subscription();
+        subscription1.setId(1L);
         Subscription subscription2 = new Subscription();
-        subscription2.setServiceTitle("Test subscription2");
-        subscription2.setUser(existingUser);
+        subscription2.setId(2L);
+
+        when(subscriptionRepository.streamAllOrderById()).thenReturn(Stream.of(subscription1, subscription2));
+        when(subscriptionMapper.entityToSubscriptionDto(subscription1))
+                .thenReturn(new SubscriptionDto(1L, "Netflix", null, null, 1L));
+        when(subscriptionMapper.entityToSubscriptionDto(subscription2))
+                .thenReturn(new SubscriptionDto(2L, "Spotify", "Premium", null, 1L));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        //Act
+        long count = subscriptionService.exportSubscriptions(outputStream);
 
-        List<Subscription> subscriptions = Arrays.asList(subscription1, subscription2);
+        //Assert
+        String[] lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, count);
+        assertEquals(2, lines.length);
+        assertEquals("Netflix", objectMapper.readValue(lines[0], SubscriptionDto.class).getServiceTitle());
+        assertEquals("Spotify", objectMapper.readValue(lines[1], SubscriptionDto.class).getServiceTitle());
+        verify(entityManager, times(1)).detach(subscription1);
+        verify(entityManager, times(1)).detach(subscription2);
+    }
 
-        SubscriptionDto subscriptionDto1 = new SubscriptionDto();
-        subscriptionDto1.setServiceTitle("Test subscription1");
-        subscriptionDto1.setUserId(userId);
+    @Test
+    @DisplayName("Получение списка всех подписок для пользователя, если id существует")
+    void getUserSubscriptions_shouldReturnAllSubscriptions_WhenUserIdExists() {
+        // Arrange
+        Long userId = 1L;
 
-        SubscriptionDto subscriptionDto2 = new SubscriptionDto();
-        subscriptionDto2.setServiceTitle("Test subscription2");
-        subscriptionDto2.setUserId(userId);
+        SubscriptionDto subscriptionDto1 = new SubscriptionDto(1L, "Test subscription1", null, null, userId);
+        SubscriptionDto subscriptionDto2 = new SubscriptionDto(2L, "Test subscription2", null, null, userId);
 
         List<SubscriptionDto> subscriptionDtos = Arrays.asList(subscriptionDto1, subscriptionDto2);
 
-        when(userService.findUserOrThrow(userId)).thenReturn(existingUser);
-        when(subscriptionRepository.findByUserId(userId)).thenReturn(subscriptions);
-        when(subscriptionMapper.toDtoList(subscriptions)).thenReturn(subscriptionDtos);
+        when(subscriptionRepository.findUserSubscriptionRows(userId)).thenReturn(List.of(
+                new UserSubscriptionRow(1L, "Test subscription1", null, null, userId, UPDATED_AT),
+                new UserSubscriptionRow(2L, "Test subscription2", null, null, userId, UPDATED_AT.plusSeconds(1))));
 
         //Act
-        List<SubscriptionDto> resultDtos = subscriptionService.getUserSubscriptions(userId);
+        List<SubscriptionDto> resultDtos = subscriptionService.getUserSubscriptions(userId).getBody();
 
         //Assert
         assertNotNull(resultDtos);
-        assertEquals(subscriptions.size(), resultDtos.size());
-        verify(userService, times(1)).findUserOrThrow(userId);
-        verify(subscriptionRepository, times(1)).findByUserId(userId);
-        verify(subscriptionMapper, times(1)).toDtoList(subscriptions);
+        assertEquals(subscriptionDtos, resultDtos);
+        verify(subscriptionRepository, times(1)).findUserSubscriptionRows(userId);
+        verifyNoInteractions(userService, subscriptionMapper);
     }
 
     @Test
-    @DisplayName("Получение списка всех подписок для пользователя, если id существует")
+    @DisplayName("Получение пустого списка подписок для пользователя без подписок (строка LEFT JOIN без подписки)")
+    void getUserSubscriptions_shouldReturnEmptyList_WhenUserHasNoSubscriptions() {
+        // Arrange
+        Long userId = 1L;
+
+        when(subscriptionRepository.findUserSubscriptionRows(userId))
+                .thenReturn(List.of(new UserSubscriptionRow(null, null, null, null, userId, null)));
+
+        //Act
+        List<SubscriptionDto> resultDtos = subscriptionService.getUserSubscriptions(userId).getBody();
+
+        //Assert
+        assertTrue(resultDtos.isEmpty());
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("Выброс NotFoundException при получении подписок, если юзер с id не существует")
     void getUserSubscriptions_ShouldThrowNotFoundException_WhenUserIdNotExists() {
         //Arrange
         Long userId = 999L;
 
-        doThrow(new NotFoundException("Юзер с id = " + userId + " не найден"))
-                .when(userService).findUserOrThrow(userId);
+        when(subscriptionRepository.findUserSubscriptionRows(userId)).thenReturn(List.of());
 
         //Act & Assert
         assertThrows(NotFoundException.class, () -> subscriptionService.getUserSubscriptions(userId));
-        verify(userService, times(1)).findUserOrThrow(userId);
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("ETag списка подписок по загруженным строкам совпадает с ETag из запроса версий и меняется при удалении")
+    void getUserSubscriptionsETag_ShouldMatchLoadedListAndChangeOnDelete() {
+        // Arrange
+        Long userId = 1L;
+        when(subscriptionRepository.findUserSubscriptionRows(userId)).thenReturn(List.of(
+                new UserSubscriptionRow(1L, "Netflix", null, null, userId, UPDATED_AT),
+                new UserSubscriptionRow(2L, "Spotify", null, null, userId, UPDATED_AT.plusNanos(1_500))));
+
+        UserVersion version = mock(UserVersion.class);
+        when(version.getSubscriptionCount()).thenReturn(2L, 1L);
+        when(version.getSubscriptionsUpdatedAt()).thenReturn(UPDATED_AT.plusNanos(1_000));
+        when(userService.findUserVersionOrThrow(userId)).thenReturn(version);
+
+        // Act
+        String loadedETag = subscriptionService.getUserSubscriptions(userId).getETag();
+        String currentETag = subscriptionService.getUserSubscriptionsETag(userId);
+        String afterDeleteETag = subscriptionService.getUserSubscriptionsETag(userId);
+
+        // Assert
+        assertTrue(loadedETag.startsWith("W/\""));
+        assertEquals(loadedETag, currentETag);
+        assertNotEquals(currentETag, afterDeleteETag);
     }
 
     @Test
@@ -178,24 +346,20 @@ class SubscriptionServiceTest {
     void findSubscriptionById_shouldReturnSubscription_WhenIdExists() {
         //Arrange
         Long subscriptionId = 1L;
-        Subscription subscription = new Subscription();
-        subscription.setId(subscriptionId);
-        subscription.setServiceTitle("Test subscription");
 
         SubscriptionDto subscriptionDto = new SubscriptionDto();
         subscriptionDto.setServiceTitle("Test subscription1");
         subscriptionDto.setId(subscriptionId);
 
-        when(subscriptionRepository.findById(subscriptionId)).thenReturn(Optional.of(subscription));
-        when(subscriptionMapper.entityToSubscriptionDto(subscription)).thenReturn(subscriptionDto);
+        when(subscriptionRepository.findSubscriptionDtoById(subscriptionId)).thenReturn(Optional.of(subscriptionDto));
 
         //Act
         SubscriptionDto result = subscriptionService.findSubscriptionById(subscriptionId);
         //Assert
         assertNotNull(result);
-        assertEquals(subscription.getId(), result.getId());
-        verify(subscriptionRepository, times(1)).findById(subscriptionId);
-        verify(subscriptionMapper, times(1)).entityToSubscriptionDto(subscription);
+        assertEquals(subscriptionId, result.getId());
+        verify(subscriptionRepository, times(1)).findSubscriptionDtoById(subscriptionId);
+        verifyNoInteractions(subscriptionMapper);
     }
 
     @Test
@@ -204,11 +368,11 @@ class SubscriptionServiceTest {
         //Arrange
         Long subscriptionId = 999L;
 
-        when(subscriptionRepository.findById(subscriptionId)).thenReturn(Optional.empty());
+        when(subscriptionRepository.findSubscriptionDtoById(subscriptionId)).thenReturn(Optional.empty());
 
         // Act & Assert
         assertThrows(NotFoundException.class, () -> subscriptionService.findSubscriptionById(subscriptionId));
-        verify(subscriptionRepository, times(1)).findById(subscriptionId);
+        verify(subscriptionRepository, times(1)).findSubscriptionDtoById(subscriptionId);
     }
 
 
@@ -222,10 +386,15 @@ class SubscriptionServiceTest {
         User existingUser = new User();
         existingUser.setId(userId);
 
+        Long oldUserId = 2L;
+        User oldUser = new User();
+        oldUser.setId(oldUserId);
+
         Subscription subscription = new Subscription();
         subscription.setId(subscriptionId);
         subscription.setServiceTitle("Test subscription");
         subscription.setPlan(null);
+        subscription.setUser(oldUser);
 
 
         UpdateSubscriptionRequest updateDto = new UpdateSubscriptionRequest();
@@ -247,8 +416,8 @@ class SubscriptionServiceTest {
         updatedSubscriptionDto.setServiceTitle("Update subscription");
         updatedSubscriptionDto.setPlan("Update plan");
 
-        when(subscriptionRepository.findById(subscriptionId)).thenReturn(Optional.of(subscription));
-        when(userService.findUserOrThrow(userId)).thenReturn(existingUser);
+        when(subscriptionRepository.findByIdForUpdate(subscriptionId)).thenReturn(Optional.of(subscription));
+        when(entityManager.getReference(User.class, userId)).thenReturn(existingUser);
         when(subscriptionRepository.save(subscription)).thenReturn(updatedSubscription);
         when(subscriptionMapper.entityToSubscriptionDto(updatedSubscription)).thenReturn(updatedSubscriptionDto);
 
@@ -260,10 +429,11 @@ class SubscriptionServiceTest {
         assertEquals(userId, resultDto.getUserId());
         assertEquals(subscriptionId, resultDto.getId());
         assertEquals("Update subscription", resultDto.getServiceTitle());
-        verify(subscriptionRepository, times(1)).findById(subscriptionId);
-        verify(userService, times(1)).findUserOrThrow(userId);
+        verify(subscriptionRepository, times(1)).findByIdForUpdate(subscriptionId);
+        verify(userService, times(1)).moveSubscription(oldUserId, userId);
         verify(subscriptionRepository, times(1)).save(updatedSubscription);
         verify(subscriptionMapper, times(1)).entityToSubscriptionDto(updatedSubscription);
+        verify(subscriptionOutbox, times(1)).updated(resultDto);
     }
 
     @Test
@@ -271,11 +441,11 @@ class SubscriptionServiceTest {
     void updateSubscription_ShouldThrowNotFoundException_WhenSubIdNotExists() {
         //Arrange
         Long subscriptionId = 999L;
-        when(subscriptionRepository.findById(subscriptionId)).thenReturn(Optional.empty());
+        when(subscriptionRepository.findByIdForUpdate(subscriptionId)).thenReturn(Optional.empty());
 
         // Act & Assert
         assertThrows(NotFoundException.class, () -> subscriptionService.updateSubscription(any(), subscriptionId));
-        verify(subscriptionRepository).findById(subscriptionId);
+        verify(subscriptionRepository).findByIdForUpdate(subscriptionId);
     }
 
     @Test
@@ -284,22 +454,65 @@ class SubscriptionServiceTest {
         // Arrange
         Long subscriptionId = 1L;
         Long userId = 999L;
+        User oldUser = new User();
+        oldUser.setId(1L);
 
         Subscription subscription = new Subscription();
         subscription.setId(subscriptionId);
+        subscription.setUser(oldUser);
 
         UpdateSubscriptionRequest updateDto = new UpdateSubscriptionRequest();
         updateDto.setId(subscriptionId);
         updateDto.setUserId(userId);
 
-        when(subscriptionRepository.findById(subscriptionId)).thenReturn(Optional.of(subscription));
+        when(subscriptionRepository.findByIdForUpdate(subscriptionId)).thenReturn(Optional.of(subscription));
         doThrow(new NotFoundException("Юзер с id = " + userId + " не найден"))
-                .when(userService).findUserOrThrow(userId);
+                .when(userService).moveSubscription(1L, userId);
 
         // Act & Assert
         assertThrows(NotFoundException.class, () -> subscriptionService.updateSubscription(updateDto, subscriptionId));
-        verify(subscriptionRepository, times(1)).findById(subscriptionId);
-        verify(userService, times(1)).findUserOrThrow(userId);
+        verify(subscriptionRepository, times(1)).findByIdForUpdate(subscriptionId);
+        verify(userService, times(1)).moveSubscription(1L, userId);
+        verify(subscriptionRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("Частичное обновление подписки одним UPDATE, смена serviceTitle переносится в индекс популярности")
+    void patchSubscription_ShouldPatchAndMoveTitleInPopularityIndex() {
+        //Arrange
+        Long subscriptionId = 1L;
+        UpdateSubscriptionRequest changes = new UpdateSubscriptionRequest();
+        changes.setServiceTitle("Spotify");
+
+        SubscriptionDto patchedDto = new SubscriptionDto(subscriptionId, "Spotify", "Premium", null, 1L);
+        when(subscriptionRepository.patch(subscriptionId, changes))
+                .thenReturn(Optional.of(new PatchedSubscription(patchedDto, "Netflix", 1L)));
+
+        //Act
+        SubscriptionDto result = subscriptionService.patchSubscription(changes, subscriptionId);
+
+        //Assert
+        assertEquals(patchedDto, result);
+        verify(popularityIndex, times(1)).decrement("Netflix");
+        verify(popularityIndex, times(1)).increment("Spotify");
+        verify(subscriptionRepository, never()).findById(any());
+        verify(subscriptionOutbox, times(1)).updated(patchedDto);
+        verifyNoInteractions(userService, subscriptionMapper);
+    }
+
+    @Test
+    @DisplayName("Выброс NotFoundException при частичном обновлении подписки, если sub_id не существует")
+    void patchSubscription_ShouldThrowNotFoundException_WhenSubIdNotExists() {
+        //Arrange
+        Long subscriptionId = 999L;
+        UpdateSubscriptionRequest changes = new UpdateSubscriptionRequest();
+        changes.setPlan("Premium");
+
+        when(subscriptionRepository.patch(subscriptionId, changes)).thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertThrows(NotFoundException.class, () -> subscriptionService.patchSubscription(changes, subscriptionId));
+        verifyNoInteractions(popularityIndex, subscriptionOutbox);
     }
 
     @Test
@@ -309,25 +522,22 @@ class SubscriptionServiceTest {
         Long subscriptionId = 1L;
         Long userId = 1L;
 
-        User existingUser = new User();
-        existingUser.setId(userId);
-
-        Subscription existingSubscription = new Subscription();
-        existingSubscription.setId(subscriptionId);
-        existingSubscription.setServiceTitle("Test subscription");
-        existingSubscription.setUser(existingUser);
-
-        when(subscriptionRepository.findById(subscriptionId)).thenReturn(Optional.of(existingSubscription));
-        when(userService.findUserOrThrow(userId)).thenReturn(existingUser);
-        doNothing().when(subscriptionRepository).delete(existingSubscription);
+        DeletedSubscription deleted = mock(DeletedSubscription.class);
+        when(deleted.getServiceTitle()).thenReturn("Test subscription");
+        when(deleted.getSubscriptionCount()).thenReturn(2);
+        when(subscriptionRepository.deleteByIdAndUserIdReturningServiceTitle(subscriptionId, userId))
+                .thenReturn(List.of(deleted));
 
         //Act
         subscriptionService.deleteSubscriptionFromUser(subscriptionId, userId);
 
         //Assert
-        verify(subscriptionRepository, times(1)).findById(subscriptionId);
-        verify(userService, times(1)).findUserOrThrow(userId);
-        verify(subscriptionRepository, times(1)).delete(existingSubscription);
+        verify(subscriptionRepository, times(1)).deleteByIdAndUserIdReturningServiceTitle(subscriptionId, userId);
+        verify(popularityIndex, times(1)).decrement("Test subscription");
+        verify(subscriptionOutbox, times(1)).deleted(subscriptionId, userId, "Test subscription");
+        verify(subscriptionRepository, never()).existsById(any());
+        verify(userService, times(1)).subscriptionCountChanged(userId, 2);
+        verifyNoMoreInteractions(userService);
     }
 
     @Test
@@ -335,12 +545,15 @@ class SubscriptionServiceTest {
     void deleteSubscriptionFromUser_ShouldThrowNotFoundException_WhenSubIdNotExists() {
         //Arrange
         Long subscriptionId = 999L;
+        Long userId = 1L;
 
-        when(subscriptionRepository.findById(subscriptionId)).thenReturn(Optional.empty());
+        when(subscriptionRepository.deleteByIdAndUserIdReturningServiceTitle(subscriptionId, userId)).thenReturn(List.of());
+        when(subscriptionRepository.existsById(subscriptionId)).thenReturn(false);
 
         // Act & Assert
-        assertThrows(NotFoundException.class, () -> subscriptionService.deleteSubscriptionFromUser(subscriptionId, any()));
-        verify(subscriptionRepository).findById(subscriptionId);
+        assertThrows(NotFoundException.class, () -> subscriptionService.deleteSubscriptionFromUser(subscriptionId, userId));
+        verify(subscriptionRepository).existsById(subscriptionId);
+        verifyNoInteractions(userService, popularityIndex, subscriptionOutbox);
     }
 
     @Test
@@ -353,22 +566,16 @@ class SubscriptionServiceTest {
         User existingUser = new User();
         existingUser.setId(invalidUserId);
 
-        User user = new User();
-        user.setId(5L);
-
-        Subscription existingSubscription = new Subscription();
-        existingSubscription.setId(subscriptionId);
-        existingSubscription.setServiceTitle("Test subscription");
-        existingSubscription.setUser(user);
-
-        when(subscriptionRepository.findById(subscriptionId)).thenReturn(Optional.of(existingSubscription));
+        when(subscriptionRepository.deleteByIdAndUserIdReturningServiceTitle(subscriptionId, invalidUserId))
+                .thenReturn(List.of());
+        when(subscriptionRepository.existsById(subscriptionId)).thenReturn(true);
         when(userService.findUserOrThrow(invalidUserId)).thenReturn(existingUser);
 
         //Act//Assert
         assertThrows(IllegalArgumentException.class, () -> subscriptionService.deleteSubscriptionFromUser(subscriptionId, invalidUserId));
-        verify(subscriptionRepository, times(1)).findById(subscriptionId);
+        verify(subscriptionRepository, times(1)).existsById(subscriptionId);
         verify(userService, times(1)).findUserOrThrow(invalidUserId);
-        verify(subscriptionRepository, never()).delete(any());
+        verifyNoInteractions(popularityIndex);
     }
 
     @Test
@@ -378,55 +585,189 @@ class SubscriptionServiceTest {
         Long subscriptionId = 1L;
         Long userId = 999L;
 
-        Subscription existingSubscription = new Subscription();
-        existingSubscription.setId(subscriptionId);
-        existingSubscription.setServiceTitle("Test subscription");
-
-        when(subscriptionRepository.findById(subscriptionId)).thenReturn(Optional.of(existingSubscription));
+        when(subscriptionRepository.deleteByIdAndUserIdReturningServiceTitle(subscriptionId, userId)).thenReturn(List.of());
+        when(subscriptionRepository.existsById(subscriptionId)).thenReturn(true);
 
         doThrow(new NotFoundException("Юзер с id = " + userId + " не найден"))
                 .when(userService).findUserOrThrow(userId);
 
         // Act & Assert
         assertThrows(NotFoundException.class, () -> subscriptionService.deleteSubscriptionFromUser(subscriptionId, userId));
-        verify(subscriptionRepository, times(1)).findById(subscriptionId);
-        verify(subscriptionRepository, never()).delete(any());
+        verify(userService, times(1)).findUserOrThrow(userId);
+        verifyNoInteractions(popularityIndex);
     }
 
     @Test
-    @DisplayName("ТОП-3 популярных подписок")
-    void getTop3PopularSubscriptions_ShouldReturnTop3Subscriptions() {
+    @DisplayName("ТОП-N популярных подписок отдается из индекса популярности")
+    void getTopPopularSubscriptions_ShouldReturnTopFromIndex() {
         // Arrange
-        List<Object[]> popularSubscriptions = Arrays.asList(
-                new Object[]{"Netflix", 1L},
-                new Object[]{"Spotify", 2L},
-                new Object[]{"YouTube Premium", 3L}
+        List<PopularSubscriptionDto> popularSubscriptions = List.of(
+                new PopularSubscriptionDto("YouTube Premium", 3L),
+                new PopularSubscriptionDto("Spotify", 2L),
+                new PopularSubscriptionDto("Netflix", 1L)
         );
 
-        when(subscriptionRepository.findTop3PopularSubscriptions()).thenReturn(popularSubscriptions);
+        when(popularityIndex.top(3)).thenReturn(popularSubscriptions);
 
         // Act
-        List<Object[]> result = subscriptionService.getTop3PopularSubscriptions();
+        List<PopularSubscriptionDto> result = subscriptionService.getTopPopularSubscriptions(3);
 
         // Assert
         assertEquals(3, result.size());
-        assertEquals("Netflix", result.get(0)[0]);
-        assertEquals("Spotify", result.get(1)[0]);
-        assertEquals("YouTube Premium", result.get(2)[0]);
-        verify(subscriptionRepository, times(1)).findTop3PopularSubscriptions();
+        assertEquals("YouTube Premium", result.get(0).getServiceTitle());
+        assertEquals(3L, result.get(0).getCount());
+        verify(popularityIndex, times(1)).top(3);
+        verifyNoInteractions(subscriptionRepository);
+    }
+
+    @Test
+    @DisplayName("Выброс IllegalArgumentException при некорректном размере ТОП-N")
+    void getTopPopularSubscriptions_ShouldThrowIllegalArgumentException_WhenLimitInvalid() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> subscriptionService.getTopPopularSubscriptions(0));
+        verify(popularityIndex, never()).top(anyInt());
+    }
+
+    @Test
+    @DisplayName("Поиск по части названия экранирует спецсимволы LIKE")
+    void searchSubscriptions_ShouldEscapeLikeWildcards() {
+        // Arrange
+        List<SubscriptionDto> found = List.of(new SubscriptionDto(1L, "100% Music_Plus", null, null, 1L));
+        when(subscriptionRepository.searchByServiceTitle("%0!% Music!_%", Limit.of(20))).thenReturn(found);
+
+        // Act
+        List<SubscriptionDto> result = subscriptionService.searchSubscriptions(" 0% Music_ ", 20);
+
+        // Assert
+        assertEquals(found, result);
+        assertEquals("%you%", SubscriptionService.containsPattern("you"));
+        assertEquals("%a!!b%", SubscriptionService.containsPattern("a!b"));
+    }
+
+    @Test
+    @DisplayName("Выброс IllegalArgumentException при слишком короткой строке поиска")
+    void searchSubscriptions_ShouldThrowIllegalArgumentException_WhenQueryTooShort() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> subscriptionService.searchSubscriptions("Yo ", 20));
+        assertThrows(IllegalArgumentException.class, () -> subscriptionService.searchSubscriptions(null, 20));
+        assertThrows(IllegalArgumentException.class, () -> subscriptionService.searchSubscriptions("You", 0));
+        verifyNoInteractions(subscriptionRepository);
+    }
+
+    @Test
+    @DisplayName("Подсказки названий отдаются из индекса в памяти без запросов в БД")
+    void suggestServiceTitles_ShouldReturnTitlesFromIndex() {
+        // Arrange
+        when(popularityIndex.suggestTitles("You", 10)).thenReturn(List.of("YouTube", "YouTube Music"));
+
+        // Act
+        List<String> result = subscriptionService.suggestServiceTitles("You", 10);
+
+        // Assert
+        assertEquals(List.of("YouTube", "YouTube Music"), result);
+        verifyNoInteractions(subscriptionRepository);
+        assertThrows(IllegalArgumentException.class, () -> subscriptionService.suggestServiceTitles("You", 0));
     }
 
     @Test
-    @DisplayName("ТОП-3 популярных подписок, если лист пустой")
-    void getTop3PopularSubscriptions_ShouldHandleEmptyResult() {
+    @DisplayName("Статистика подписок читается из rollup-а за диапазон [from, to)")
+    void getSubscriptionStats_ShouldReadSeriesFromRollup() {
         // Arrange
-        when(subscriptionRepository.findTop3PopularSubscriptions()).thenReturn(List.of());
+        LocalDateTime from = LocalDateTime.of(2025, 5, 1, 0, 0);
+        LocalDateTime to = from.plusDays(7);
+        List<SubscriptionStatsDto> series = List.of(new SubscriptionStatsDto(from, "Netflix", "Premium", 5L));
+
+        when(subscriptionStats.findSeries(StatsGranularity.DAY, from, to, "Netflix", null)).thenReturn(series);
 
         // Act
-        List<Object[]> result = subscriptionService.getTop3PopularSubscriptions();
+        List<SubscriptionStatsDto> result =
+                subscriptionService.getSubscriptionStats(StatsGranularity.DAY, from, to, "Netflix", null);
 
         // Assert
-        assertEquals(0, result.size());
-        verify(subscriptionRepository, times(1)).findTop3PopularSubscriptions();
+        assertEquals(series, result);
+        verifyNoInteractions(subscriptionRepository);
+    }
+
+    @Test
+    @DisplayName("Выброс IllegalArgumentException при пустом или слишком длинном диапазоне статистики")
+    void getSubscriptionStats_ShouldThrowIllegalArgumentException_WhenRangeInvalid() {
+        // Arrange
+        LocalDateTime from = LocalDateTime.of(2025, 5, 1, 0, 0);
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () ->
+                subscriptionService.getSubscriptionStats(StatsGranularity.DAY, from, from, null, null));
+        assertThrows(IllegalArgumentException.class, () ->
+                subscriptionService.getSubscriptionStatsTotals(StatsGranularity.DAY, from, from.minusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> subscriptionService.getSubscriptionStats(
+                StatsGranularity.HOUR, from, from.plusHours(SubscriptionService.MAX_STATS_BUCKETS + 1), null, null));
+        verifyNoInteractions(subscriptionStats);
+    }
+
+    @Test
+    @DisplayName("Смена serviceTitle при обновлении подписки переносит ее в индексе популярности")
+    void updateSubscription_ShouldMoveCountInPopularityIndex_WhenTitleChanged() {
+        //Arrange
+        Long subscriptionId = 1L;
+        User user = new User();
+        user.setId(1L);
+        Subscription subscription = new Subscription();
+        subscription.setId(subscriptionId);
+        subscription.setServiceTitle("Netflix");
+        subscription.setUser(user);
+
+        UpdateSubscriptionRequest updateDto = new UpdateSubscriptionRequest();
+        updateDto.setServiceTitle("Spotify");
+        updateDto.setUserId(1L);
+
+        when(subscriptionRepository.findByIdForUpdate(subscriptionId)).thenReturn(Optional.of(subscription));
+        when(subscriptionRepository.save(subscription)).thenReturn(subscription);
+
+        //Act
+        subscriptionService.updateSubscription(updateDto, subscriptionId);
+
+        //Assert
+        verify(popularityIndex, times(1)).decrement("Netflix");
+        verify(popularityIndex, times(1)).increment("Spotify");
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    @DisplayName("Перенос подписки к другому юзеру через PATCH переносит и счетчик подписок")
+    void patchSubscription_ShouldMoveSubscriptionCount_WhenUserChanged() {
+        //Arrange
+        Long subscriptionId = 1L;
+        UpdateSubscriptionRequest changes = new UpdateSubscriptionRequest();
+        changes.setUserId(2L);
+
+        SubscriptionDto patchedDto = new SubscriptionDto(subscriptionId, "Netflix", null, null, 2L);
+        when(subscriptionRepository.patch(subscriptionId, changes))
+                .thenReturn(Optional.of(new PatchedSubscription(patchedDto, "Netflix", 1L)));
+
+        //Act
+        subscriptionService.patchSubscription(changes, subscriptionId);
+
+        //Assert
+        verify(userService, never()).findUserOrThrow(any());
+        verify(userService, times(1)).moveSubscription(1L, 2L);
+        verifyNoInteractions(popularityIndex);
+    }
+
+    @Test
+    @DisplayName("Выброс NotFoundException при переносе подписки через PATCH к несуществующему юзеру")
+    void patchSubscription_ShouldThrowNotFoundException_WhenNewUserNotExists() {
+        //Arrange
+        Long subscriptionId = 1L;
+        UpdateSubscriptionRequest changes = new UpdateSubscriptionRequest();
+        changes.setUserId(999L);
+
+        when(subscriptionRepository.patch(subscriptionId, changes))
+                .thenThrow(new DataIntegrityViolationException("subscriptions_user_id_fkey"));
+
+        // Act & Assert
+        NotFoundException exception = assertThrows(NotFoundException.class,
+                () -> subscriptionService.patchSubscription(changes, subscriptionId));
+        assertEquals("Юзер с id = 999 не найден", exception.getMessage());
+        verifyNoInteractions(userService, popularityIndex, subscriptionOutbox);
     }
 }
\ No newline at end of file
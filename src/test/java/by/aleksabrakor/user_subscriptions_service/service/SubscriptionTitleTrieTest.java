@@ -0,0 +1,44 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubscriptionTitleTrieTest {
+    private SubscriptionTitleTrie titleTrie;
+
+    @BeforeEach
+    void setUp() {
+        titleTrie = new SubscriptionTitleTrie();
+        List.of("YouTube Premium", "Yandex Plus", "YouTube", "Youtube Kids", "Netflix", "Yandex Music")
+                .forEach(titleTrie::add);
+    }
+
+    @Test
+    @DisplayName("Подсказки по префиксу без учета регистра, в алфавитном порядке и не больше limit")
+    void suggest_ShouldReturnTitlesByPrefixInOrder() {
+        assertEquals(List.of("YouTube", "Youtube Kids", "YouTube Premium"), titleTrie.suggest("YOUT", 10));
+        assertEquals(List.of("Yandex Music", "Yandex Plus"), titleTrie.suggest("yand", 10));
+        assertEquals(List.of("Yandex Music", "Yandex Plus", "YouTube"), titleTrie.suggest("y", 3));
+        assertEquals(6, titleTrie.suggest("", 10).size());
+        assertTrue(titleTrie.suggest("Spotify", 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Удаление убирает только указанное название и не задевает названия с общим префиксом")
+    void remove_ShouldKeepTitlesWithCommonPrefix() {
+        // Act
+        titleTrie.remove("YouTube");
+        titleTrie.remove("Youtube Kids");
+        titleTrie.remove("YouTube Kids");
+        titleTrie.add("Netflix");
+
+        // Assert
+        assertEquals(List.of("YouTube Premium"), titleTrie.suggest("you", 10));
+        assertEquals(4, titleTrie.size());
+    }
+}
@@ -0,0 +1,81 @@
+package by.aleksabrakor.user_subscriptions_service.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserEmailFilterTest {
+    private static final int EMAILS = 10_000;
+    private static final double FPP = 0.01;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private UserEmailFilter userEmailFilter;
+
+    @BeforeEach
+    void setUp() {
+        userEmailFilter = new UserEmailFilter(null, EMAILS, FPP, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("До загрузки фильтр считает любой email возможно существующим")
+    void mightContain_ShouldReturnTrue_BeforeLoad() {
+        assertTrue(userEmailFilter.mightContain("test@test.com"));
+    }
+
+    @Test
+    @DisplayName("Нет ложноотрицательных ответов, доля ложноположительных около целевой")
+    void mightContain_ShouldHaveNoFalseNegativesAndBoundedFalsePositives() {
+        // Arrange
+        userEmailFilter.load(IntStream.range(0, EMAILS).mapToObj(i -> "User" + i + "@Example.com"), EMAILS);
+
+        // Act
+        long falseNegatives = IntStream.range(0, EMAILS)
+                .filter(i -> !userEmailFilter.mightContain("user" + i + "@example.com"))
+                .count();
+        long falsePositives = IntStream.range(EMAILS, EMAILS * 11)
+                .filter(i -> userEmailFilter.mightContain("user" + i + "@example.com"))
+                .count();
+
+        // Assert
+        assertEquals(0, falseNegatives);
+        assertTrue(falsePositives < EMAILS * 10 * FPP * 2, "ложноположительных: " + falsePositives);
+        assertEquals(FPP, meterRegistry.get("users.email.filter.fpp").tag("type", "estimated").gauge().value(), FPP / 2);
+    }
+
+    @Test
+    @DisplayName("Удаление email применяется только после коммита, добавление откатывается вместе с транзакцией")
+    void addAndRemove_ShouldFollowTransactionOutcome() {
+        // Arrange
+        userEmailFilter.load(Stream.of("old@test.com"), EMAILS);
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        userEmailFilter.add("new@test.com");
+        userEmailFilter.remove("old@test.com");
+
+        // Assert
+        assertTrue(userEmailFilter.mightContain("new@test.com"));
+        assertTrue(userEmailFilter.mightContain("old@test.com"));
+
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        assertFalse(userEmailFilter.mightContain("new@test.com"));
+        assertTrue(userEmailFilter.mightContain("old@test.com"));
+    }
+}
@@ -2,20 +2,30 @@ package by.aleksabrakor.user_subscriptions_service.service;
 
 import by.aleksabrakor.user_subscriptions_service.dto.UpdateUserRequest;
 import by.aleksabrakor.user_subscriptions_service.dto.UserDto;
+import by.aleksabrakor.user_subscriptions_service.exception.NotCreatedException;
 import by.aleksabrakor.user_subscriptions_service.exception.NotFoundException;
 import by.aleksabrakor.user_subscriptions_service.mapper.UserMapper;
 import by.aleksabrakor.user_subscriptions_service.model.User;
+import by.aleksabrakor.user_subscriptions_service.repository.SubscriptionRepository;
+import by.aleksabrakor.user_subscriptions_service.repository.UserPatchRepository.PatchedUser;
 import by.aleksabrakor.user_subscriptions_service.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.InOrder;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -27,6 +37,14 @@ class UserServiceTest {
     private UserRepository userRepository;
     @Mock
     private UserMapper userMapper;
+    @Mock
+    private SubscriptionRepository subscriptionRepository;
+    @Mock
+    private SubscriptionPopularityIndex popularityIndex;
+    @Spy
+    private UserCache userCache = new UserCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+    @Spy
+    private UserEmailFilter userEmailFilter = new UserEmailFilter(null, 100, 0.01, new SimpleMeterRegistry());
     @InjectMocks
     private UserService userService;
 
@@ -53,7 +71,7 @@ class UserServiceTest {
         savedUserDto.setId(1L);
 
         when(userMapper.userDtoToEntity(userDto)).thenReturn(user);
-        when(userRepository.save(user)).thenReturn(savedUser);
+        when(userRepository.saveAndFlush(user)).thenReturn(savedUser);
         when(userMapper.entityToUserDto(savedUser)).thenReturn(savedUserDto);
 
         //Act
@@ -66,26 +84,116 @@ class UserServiceTest {
         assertEquals(savedUserDto.getId(), result.getId());
         verify(userMapper, times(1)).userDtoToEntity(userDto);
         verify(userMapper, times(1)).entityToUserDto(savedUser);
-        verify(userRepository, times(1)).save(user);
+        verify(userRepository, times(1)).saveAndFlush(user);
+    }
+
+    @Test
+    @DisplayName("Сохранение юзера без запроса existsByEmail, если фильтр email говорит, что email свободен")
+    void saveUser_ShouldSkipExistsQuery_WhenEmailFilterSaysAbsent() {
+        // Arrange
+        userEmailFilter.load(Stream.of("other@test.com"), 100);
+
+        UserDto userDto = new UserDto();
+        userDto.setEmail("test@test.com");
+        User user = new User();
+        user.setEmail("test@test.com");
+
+        when(userMapper.userDtoToEntity(userDto)).thenReturn(user);
+        when(userRepository.saveAndFlush(user)).thenReturn(user);
+
+        //Act
+        userService.saveUser(userDto);
+
+        //Assert
+        verify(userRepository, never()).existsByEmail(any());
+        assertTrue(userEmailFilter.mightContain("TEST@test.com"));
+    }
+
+    @Test
+    @DisplayName("Выброс NotCreatedException, если дубль email пойман unique-ограничением в БД")
+    void saveUser_ShouldThrowNotCreatedException_WhenUniqueConstraintViolated() {
+        // Arrange
+        userEmailFilter.load(Stream.empty(), 100);
+
+        UserDto userDto = new UserDto();
+        userDto.setEmail("test@test.com");
+        User user = new User();
+        user.setEmail("test@test.com");
+
+        when(userMapper.userDtoToEntity(userDto)).thenReturn(user);
+        when(userRepository.saveAndFlush(user)).thenThrow(new DataIntegrityViolationException("users_email_key"));
+
+        // Act & Assert
+        assertThrows(NotCreatedException.class, () -> userService.saveUser(userDto));
+        assertFalse(userEmailFilter.mightContain("test@test.com"));
     }
 
     @Test
-    @DisplayName("Поиск списка всех юзеров")
+    @DisplayName("Поиск списка всех юзеров без подписок")
     void findAllUsers() {
         // Arrange
         List<User> users = Arrays.asList(new User(), new User());
         List<UserDto> usersDto = Arrays.asList(new UserDto(), new UserDto());
 
         when(userRepository.findAll()).thenReturn(users);
-        when(userMapper.toDtoList(users)).thenReturn(usersDto);
+        when(userMapper.toDtoListWithoutSubscriptions(users)).thenReturn(usersDto);
 
         //Act
-        List<UserDto> result = userService.findAllUsers();
+        List<UserDto> result = userService.findAllUsers(false);
 
         //Assert
         assertNotNull(result);
         assertEquals(usersDto.size(), result.size());
         verify(userRepository, times(1)).findAll();
+        verify(userRepository, never()).findAllWithSubscriptions();
+    }
+
+    @Test
+    @DisplayName("Поиск списка всех юзеров вместе с подписками")
+    void findAllUsers_WithSubscriptions() {
+        // Arrange
+        List<User> users = Arrays.asList(new User(), new User());
+        List<UserDto> usersDto = Arrays.asList(new UserDto(), new UserDto());
+
+        when(userRepository.findAllWithSubscriptions()).thenReturn(users);
+        when(userMapper.toDtoList(users)).thenReturn(usersDto);
+
+        //Act
+        List<UserDto> result = userService.findAllUsers(true);
+
+        //Assert
+        assertEquals(usersDto.size(), result.size());
+        verify(userRepository, times(1)).findAllWithSubscriptions();
+        verify(userRepository, never()).findAll();
+    }
+
+    @Test
+    @DisplayName("Повторный поиск юзера по id берется из кеша, после обновления юзера читается из БД заново")
+    void findUserById_ShouldUseCache_UntilUserUpdated() {
+        // Arrange
+        Long userId = 1L;
+
+        User user = new User();
+        user.setId(userId);
+        user.setName("Test User");
+        user.setEmail("test@test.com");
+
+        UpdateUserRequest updateDto = new UpdateUserRequest();
+        updateDto.setName("Updated Name");
+
+        when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+        when(userMapper.entityToUserDtoWithoutSubscriptions(any(User.class))).thenReturn(new UserDto());
+
+        //Act
+        userService.findUserById(userId, false);
+        userService.findUserById(userId, false);
+        userService.updateUser(updateDto, userId);
+        userService.findUserById(userId, false);
+
+        //Assert
+        // 1 - первый поиск, 2 - updateUser, 3 - поиск после evict
+        verify(userRepository, times(3)).findById(userId);
+        verify(userCache, times(1)).evict(userId);
     }
 
     @Test
@@ -105,20 +213,42 @@ class UserServiceTest {
         userDto.setId(userId);
 
         when(userRepository.findById(userId)).thenReturn(Optional.of(user));
-        when(userMapper.entityToUserDto(user)).thenReturn(userDto);
+        when(userMapper.entityToUserDtoWithoutSubscriptions(user)).thenReturn(userDto);
 
         //Act
-        UserDto result = userService.findUserById(userId);
+        UserDto result = userService.findUserById(userId, false);
 
         //Assert
         assertNotNull(result);
         assertEquals(userDto.getName(), result.getName());
         assertEquals(userDto.getEmail(), result.getEmail());
         assertEquals(userDto.getId(), result.getId());
-        verify(userMapper, times(1)).entityToUserDto(user);
+        verify(userMapper, times(1)).entityToUserDtoWithoutSubscriptions(user);
         verify(userRepository, times(1)).findById(userId);
     }
 
+    @Test
+    @DisplayName("Поиск юзера по существующему id вместе с подписками")
+    void findUserById_WithSubscriptions_ShouldUseFetchPlan() {
+        // Arrange
+        Long userId = 1L;
+        User user = new User();
+        user.setId(userId);
+        UserDto userDto = new UserDto();
+        userDto.setId(userId);
+
+        when(userRepository.findWithSubscriptionsById(userId)).thenReturn(Optional.of(user));
+        when(userMapper.entityToUserDto(user)).thenReturn(userDto);
+
+        //Act
+        UserDto result = userService.findUserById(userId, true);
+
+        //Assert
+        assertEquals(userId, result.getId());
+        verify(userRepository, times(1)).findWithSubscriptionsById(userId);
+        verify(userRepository, never()).findById(userId);
+    }
+
     @Test
     @DisplayName("Выброс NotFoundException при поиске юзера, если id не существует")
     void findUserById_ShouldThrowNotFoundException_WhenUserIdNotExists() {
@@ -128,7 +258,7 @@ class UserServiceTest {
         when(userRepository.findById(userId)).thenReturn(Optional.empty());
 
         // Act & Assert
-        assertThrows(NotFoundException.class, () -> userService.findUserById(userId));
+        assertThrows(NotFoundException.class, () -> userService.findUserById(userId, false));
         verify(userRepository, times(1)).findById(userId);
     }
 
@@ -160,7 +290,7 @@ class UserServiceTest {
 
 
         when(userRepository.findById(userId)).thenReturn(Optional.of(existingUser));
-        when(userRepository.save(any(User.class))).thenReturn(updatedUser);
+        when(userRepository.saveAndFlush(any(User.class))).thenReturn(updatedUser);
         when(userMapper.entityToUserDto(updatedUser)).thenReturn(updatedUserDto);
 
         //Act
@@ -172,7 +302,7 @@ class UserServiceTest {
         assertNotEquals(updateDto.getEmail(), resultUserDto.getEmail());
         assertEquals(userId, resultUserDto.getId());
         verify(userRepository, times(1)).findById(userId);
-        verify(userRepository, times(1)).save(existingUser);
+        verify(userRepository, times(1)).saveAndFlush(existingUser);
         verify(userMapper, times(1)).entityToUserDto(updatedUser);
     }
 
@@ -191,12 +321,38 @@ class UserServiceTest {
         assertThrows(NotFoundException.class, () -> userService.updateUser(updateDto, userId));
 
         verify(userRepository, times(1)).findById(userId);
-        verify(userRepository, never()).save(any(User.class));
+        verify(userRepository, never()).saveAndFlush(any(User.class));
         verify(userMapper, never()).entityToUserDto(any(User.class));
     }
 
     @Test
-    @DisplayName("Удаление юзера,  по существующему id")
+    @DisplayName("Частичное обновление юзера одним UPDATE: кеш сбрасывается, email в фильтре заменяется")
+    void patchUser_ShouldPatchAndEvictCache() {
+        // Arrange
+        Long userId = 1L;
+        userEmailFilter.load(Stream.of("old@test.com"), 100);
+
+        UpdateUserRequest changes = new UpdateUserRequest();
+        changes.setEmail("new@test.com");
+
+        UserDto patchedDto = new UserDto(userId, "Test User", "new@test.com", null, null);
+        when(userRepository.patch(userId, null, "new@test.com"))
+                .thenReturn(Optional.of(new PatchedUser(patchedDto, "old@test.com")));
+
+        //Act
+        UserDto result = userService.patchUser(changes, userId);
+
+        //Assert
+        assertEquals(patchedDto, result);
+        verify(userRepository, never()).existsByEmailAndIdNot(any(), any());
+        verify(userRepository, never()).findById(any());
+        verify(userCache, times(1)).evict(userId);
+        assertTrue(userEmailFilter.mightContain("new@test.com"));
+        assertFalse(userEmailFilter.mightContain("old@test.com"));
+    }
+
+    @Test
+    @DisplayName("Удаление юзера,  по существующему id, вместе с подписками и их счетчиками популярности")
     void deleteUser_ShouldDeleteUser_WhenUserIdExists() {
         // Arrange
         Long userId = 1L;
@@ -205,6 +361,8 @@ class UserServiceTest {
         existingUser.setId(userId);
 
         when(userRepository.findById(userId)).thenReturn(Optional.of(existingUser));
+        when(subscriptionRepository.deleteByUserIdReturningServiceTitle(userId))
+                .thenReturn(List.of("Netflix", "Netflix", "Spotify"));
         doNothing().when(userRepository).deleteById(userId);
 
         //Act
@@ -212,6 +370,65 @@ class UserServiceTest {
 
         //Assert
         verify(userRepository, times(1)).findById(userId);
-        verify(userRepository, times(1)).deleteById(userId);
+        InOrder inOrder = inOrder(subscriptionRepository, userRepository);
+        inOrder.verify(subscriptionRepository).deleteByUserIdReturningServiceTitle(userId);
+        inOrder.verify(userRepository).deleteById(userId);
+        verify(popularityIndex, times(2)).decrement("Netflix");
+        verify(popularityIndex, times(1)).decrement("Spotify");
+    }
+
+    @Test
+    @DisplayName("Счетчик подписок увеличивается одним UPDATE с квотой, копия юзера в кеше получает новое значение")
+    void reserveSubscriptions_ShouldIncrementCountWithQuota() {
+        // Arrange
+        Long userId = 1L;
+        ReflectionTestUtils.setField(userService, "maxSubscriptionsPerUser", 10);
+        when(userRepository.findById(userId)).thenReturn(Optional.of(
+                new User(userId, "Test User", "test@test.com", null, null, 1, null)));
+        when(userRepository.incrementSubscriptionCount(userId, 3, 10)).thenReturn(Optional.of(4));
+        userService.findUserOrThrow(userId);
+
+        // Act
+        userService.reserveSubscriptions(userId, 3);
+
+        // Assert
+        assertEquals(4, userService.findUserOrThrow(userId).getSubscriptionCount());
+        verify(userRepository, times(1)).findById(userId);
+        verify(userCache, never()).evict(any());
+        verify(userRepository, never()).existsById(any());
+    }
+
+    @Test
+    @DisplayName("Выброс NotCreatedException, если квота подписок превышена, и NotFoundException, если юзера нет")
+    void reserveSubscriptions_ShouldThrow_WhenQuotaExceededOrUserNotExists() {
+        // Arrange
+        ReflectionTestUtils.setField(userService, "maxSubscriptionsPerUser", 10);
+        when(userRepository.incrementSubscriptionCount(anyLong(), eq(1), eq(10))).thenReturn(Optional.empty());
+        when(userRepository.existsById(1L)).thenReturn(true);
+        when(userRepository.existsById(999L)).thenReturn(false);
+
+        // Act & Assert
+        assertThrows(NotCreatedException.class, () -> userService.reserveSubscriptions(1L, 1));
+        assertThrows(NotFoundException.class, () -> userService.reserveSubscriptions(999L, 1));
+        verify(userCache, never()).updateSubscriptionCount(any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("Перенос подписки меняет счетчики обоих юзеров в порядке id")
+    void moveSubscription_ShouldUpdateCountsInIdOrder() {
+        // Arrange
+        ReflectionTestUtils.setField(userService, "maxSubscriptionsPerUser", 10);
+        when(userRepository.incrementSubscriptionCount(anyLong(), eq(1), eq(10))).thenReturn(Optional.of(1));
+        when(userRepository.decrementSubscriptionCount(5L, 1)).thenReturn(Optional.of(0));
+
+        // Act
+        userService.moveSubscription(5L, 2L);
+
+        // Assert
+        InOrder inOrder = inOrder(userRepository);
+        inOrder.verify(userRepository).incrementSubscriptionCount(2L, 1, 10);
+        inOrder.verify(userRepository).decrementSubscriptionCount(5L, 1);
+        verify(userCache, times(1)).updateSubscriptionCount(2L, 1);
+        verify(userCache, times(1)).updateSubscriptionCount(5L, 0);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package by.aleksabrakor.user_subscriptions_service.integrationTests.contract;
+
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+/**
+ * Контракт API на реактивном стеке (WebFlux + R2DBC), запуск: mvn test -P reactive.
+ * JDBC (Flyway, JPA) и R2DBC должны смотреть в одну БД, поэтому контейнер поднимается явно,
+ * а не через jdbc:tc: из профиля test.
+ */
+@ActiveProfiles({"test", "reactive"})
+class ReactiveApiContractTest extends AbstractApiContractTest {
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15");
+
+    static {
+        POSTGRES.start();
+    }
+
+    @DynamicPropertySource
+    static void databaseProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+        registry.add("spring.datasource.driver-class-name", POSTGRES::getDriverClassName);
+        registry.add("spring.datasource.username", POSTGRES::getUsername);
+        registry.add("spring.datasource.password", POSTGRES::getPassword);
+        registry.add("spring.r2dbc.url", () -> "r2dbc:postgresql://" + POSTGRES.getHost() + ":"
+                                              + POSTGRES.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT)
+                                              + "/" + POSTGRES.getDatabaseName());
+        registry.add("spring.r2dbc.username", POSTGRES::getUsername);
+        registry.add("spring.r2dbc.password", POSTGRES::getPassword);
+    }
+}